@@ -17,13 +17,16 @@ package com.google.cloud.flink.bigquery;
 
 import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
 import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowAllocators;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowCompressionFactory;
+import com.google.cloud.flink.bigquery.util.arrow.ByteBufferReadableChannel;
+import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import org.apache.arrow.memory.BufferAllocator;
-import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.FieldVector;
 import org.apache.arrow.vector.VectorLoader;
 import org.apache.arrow.vector.VectorSchemaRoot;
@@ -32,7 +35,6 @@ import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
 import org.apache.arrow.vector.ipc.message.MessageSerializer;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.table.data.RowData;
@@ -40,13 +42,17 @@ import org.apache.flink.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Deserializing arrow format data received from BigQuery storage API. */
+/**
+ * Deserializing arrow format data received from BigQuery storage API. Record batches whose buffers
+ * the read session compressed with {@code LZ4_FRAME} or {@code ZSTD} are decompressed on load.
+ */
 public class ArrowDeserializationSchema<T> implements DeserializationSchema<T>, Serializable {
 
   private static final long serialVersionUID = 1L;
   final Logger logger = LoggerFactory.getLogger(ArrowDeserializationSchema.class);
 
   private BufferAllocator allocator;
+  private boolean ownsAllocator;
   private TypeInformation<RowData> typeInfo;
   private VectorSchemaRoot root;
   private VectorLoader loader;
@@ -73,38 +79,100 @@ public class ArrowDeserializationSchema<T> implements DeserializationSchema<T>,
   public T deserialize(byte[] responseByteMessage) throws IOException {
 
     ReadRowsResponse response = ReadRowsResponse.parseFrom(responseByteMessage);
-    byte[] arrowRecordBatchMessage =
-        response.getArrowRecordBatch().getSerializedRecordBatch().toByteArray();
+    return deserializeRecordBatch(response.getArrowRecordBatch().getSerializedRecordBatch());
+  }
 
-    if (arrowRecordBatchMessage == null) {
+  /** Loads a serialized record batch, read in place from the buffer backing the ByteString. */
+  public T deserializeRecordBatch(ByteString serializedRecordBatch) throws IOException {
+    if (serializedRecordBatch == null) {
       throw new FlinkBigQueryException("Deserializing message is empty");
     }
     if (this.schema == null) {
       this.schema = Schema.fromJSON(schemaJsonString);
     }
     initializeArrow();
-    ArrowRecordBatch deserializedBatch =
-        MessageSerializer.deserializeRecordBatch(
-            new ReadChannel(new ByteArrayReadableSeekableByteChannel(arrowRecordBatchMessage)),
-            allocator);
-    loader.load(deserializedBatch);
-    deserializedBatch.close();
+    loadRecordBatch(serializedRecordBatch, loader);
     return (T) root;
   }
 
+  /**
+   * Loads a serialized record batch into a new {@link VectorSchemaRoot} rather than the one reused
+   * across batches, so the vectors stay valid while later batches are read. The caller owns the
+   * returned root and has to close it.
+   */
+  public VectorSchemaRoot deserializeRecordBatchToNewRoot(ByteString serializedRecordBatch)
+      throws IOException {
+    if (serializedRecordBatch == null) {
+      throw new FlinkBigQueryException("Deserializing message is empty");
+    }
+    if (this.schema == null) {
+      this.schema = Schema.fromJSON(schemaJsonString);
+    }
+    ensureAllocator();
+    VectorSchemaRoot batchRoot = VectorSchemaRoot.create(schema, allocator);
+    try {
+      loadRecordBatch(
+          serializedRecordBatch, new VectorLoader(batchRoot, ArrowCompressionFactory.INSTANCE));
+    } catch (IOException | RuntimeException ex) {
+      batchRoot.close();
+      throw ex;
+    }
+    return batchRoot;
+  }
+
+  private void loadRecordBatch(ByteString serializedRecordBatch, VectorLoader batchLoader)
+      throws IOException {
+    try (ArrowRecordBatch deserializedBatch =
+        MessageSerializer.deserializeRecordBatch(
+            new ReadChannel(
+                new ByteBufferReadableChannel(serializedRecordBatch.asReadOnlyByteBuffer())),
+            allocator)) {
+      batchLoader.load(deserializedBatch);
+    }
+  }
+
   private void initializeArrow() {
     Preconditions.checkNotNull(schema);
     if (root != null) {
       return;
     }
-    if (allocator == null) {
-      this.allocator = new RootAllocator(Long.MAX_VALUE);
-    }
+    ensureAllocator();
     for (Field field : schema.getFields()) {
       vectors.add(field.createVector(allocator));
     }
     root = new VectorSchemaRoot(vectors);
-    this.loader = new VectorLoader(root);
+    this.loader = new VectorLoader(root, ArrowCompressionFactory.INSTANCE);
+  }
+
+  /**
+   * Allocates the buffers of the decoded batches from {@code allocator} rather than from an
+   * unbounded allocator of this schema. Has to be called before the first batch is decoded, the
+   * allocator stays owned by the caller.
+   */
+  public void setAllocator(BufferAllocator allocator) {
+    Preconditions.checkState(this.allocator == null, "Arrow allocator is already set.");
+    this.allocator = allocator;
+  }
+
+  private void ensureAllocator() {
+    if (allocator == null) {
+      this.allocator = ArrowAllocators.newChildAllocator("arrow-deserializer", Long.MAX_VALUE);
+      this.ownsAllocator = true;
+    }
+  }
+
+  /** Releases the vectors reused across batches and the allocator, when this schema created it. */
+  public void close() {
+    if (root != null) {
+      root.close();
+      root = null;
+      vectors.clear();
+    }
+    if (ownsAllocator) {
+      ArrowAllocators.close(allocator);
+      allocator = null;
+      ownsAllocator = false;
+    }
   }
 
   @Override
@@ -57,7 +57,8 @@ public class ArrowFormatFactory
     if (selectedFields != null) {
       selectedFieldList = Arrays.asList(selectedFields.split(","));
     }
-    return new BigQueryArrowFormat(selectedFieldList, arrowFieldList);
+    boolean columnarRead = Boolean.parseBoolean(options.get("arrowColumnarRead"));
+    return new BigQueryArrowFormat(selectedFieldList, arrowFieldList, columnarRead);
   }
 
   @Override
@@ -15,45 +15,92 @@
  */
 package com.google.cloud.flink.bigquery;
 
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
 import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.util.NestedFieldProjection;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowColumnVectors;
 import com.google.cloud.flink.bigquery.util.arrow.ArrowSchemaConverter;
 import com.google.cloud.flink.bigquery.util.arrow.ArrowToRowDataConverters;
+import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ValueVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.StructVector;
 import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.table.data.ColumnarRowData;
 import org.apache.flink.table.data.GenericRowData;
 import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.vector.ColumnVector;
+import org.apache.flink.table.data.vector.VectorizedColumnBatch;
 import org.apache.flink.table.types.logical.LogicalType;
 import org.apache.flink.table.types.logical.RowType;
 import org.apache.flink.util.Collector;
 
 /** Reading the deserialized arrow data and converting into flink RowData */
 public class ArrowRowDataDeserializationSchema
-    implements DeserializationSchema<RowData>, Serializable {
+    implements ReadRowsResponseDeserializationSchema, Serializable {
 
   public static final long serialVersionUID = 1L;
   private TypeInformation<RowData> typeInfo;
-  private DeserializationSchema<VectorSchemaRoot> nestedSchema;
+  private ArrowDeserializationSchema<VectorSchemaRoot> nestedSchema;
   private ArrowToRowDataConverters.ArrowToRowDataConverter runtimeConverter;
   final List<String> readSessionFieldNames = new ArrayList<String>();
   private String arrowSchemaJson;
+  private final RowType rowType;
+  private final boolean columnarRead;
+  private final int[] columnPlan;
+  @Nullable private final NestedFieldProjection nestedFieldProjection;
 
   public ArrowRowDataDeserializationSchema(
       RowType rowType,
       TypeInformation<RowData> typeInfo,
       List<String> selectedFieldList,
       List<String> arrowFieldList) {
+    this(rowType, typeInfo, selectedFieldList, arrowFieldList, false);
+  }
+
+  /**
+   * Field {@code i} of {@code rowType} is read from the BigQuery field {@code
+   * selectedFieldList.get(i)}, which is a dotted path for a sub-field of a {@code STRUCT} column.
+   * {@code arrowFieldList} lists the dotted paths of all fields of the read session schema, in
+   * schema order.
+   *
+   * <p>With {@code columnarRead}, rows read from a {@link ReadRowsResponse} are {@link
+   * ColumnarRowData} views over the Arrow vectors of their batch instead of copies. They are only
+   * valid until the batch is released, which is fine as long as object reuse is disabled or no
+   * operator chained to the source holds on to rows.
+   */
+  public ArrowRowDataDeserializationSchema(
+      RowType rowType,
+      TypeInformation<RowData> typeInfo,
+      List<String> selectedFieldList,
+      List<String> arrowFieldList,
+      boolean columnarRead) {
     this.typeInfo = typeInfo;
-    Schema arrowSchema =
-        ArrowSchemaConverter.convertToSchema(
-            getRowTypeForArrowSchema(rowType, selectedFieldList, arrowFieldList));
+    this.rowType = rowType;
+    this.columnarRead = columnarRead;
+    RowType readSessionRowType;
+    if (NestedFieldProjection.isNested(selectedFieldList)) {
+      this.nestedFieldProjection =
+          NestedFieldProjection.create(rowType, selectedFieldList, arrowFieldList);
+      readSessionRowType = nestedFieldProjection.getReadSessionRowType();
+    } else {
+      this.nestedFieldProjection = null;
+      List<String> arrowColumns =
+          arrowFieldList.stream()
+              .filter(field -> !field.contains("."))
+              .collect(Collectors.toList());
+      readSessionRowType = getRowTypeForArrowSchema(rowType, selectedFieldList, arrowColumns);
+    }
+    Schema arrowSchema = ArrowSchemaConverter.convertToSchema(readSessionRowType);
     arrowSchema.getFields().stream()
         .forEach(
             field -> {
@@ -61,8 +108,12 @@ public class ArrowRowDataDeserializationSchema
             });
     this.arrowSchemaJson = arrowSchema.toJson().toString();
     this.nestedSchema = ArrowDeserializationSchema.forGeneric(arrowSchemaJson, typeInfo);
+    // nested fields are read from rows of the read session type, then projected
+    RowType convertedRowType = nestedFieldProjection == null ? rowType : readSessionRowType;
+    this.columnPlan =
+        ArrowToRowDataConverters.createColumnPlan(convertedRowType, readSessionFieldNames);
     this.runtimeConverter =
-        ArrowToRowDataConverters.createRowConverter(rowType, readSessionFieldNames);
+        ArrowToRowDataConverters.createRowConverter(convertedRowType, readSessionFieldNames);
   }
 
   private RowType getRowTypeForArrowSchema(
@@ -108,11 +159,27 @@ public class ArrowRowDataDeserializationSchema
     VectorSchemaRoot root = null;
     try {
       root = nestedSchema.deserialize(responseByteMessage);
-      List<GenericRowData> rowdatalist = (List<GenericRowData>) runtimeConverter.convert(root);
-      for (int i = 0; i < rowdatalist.size(); i++) {
-        out.collect(rowdatalist.get(i));
+      collectRows(root, out);
+    } catch (Exception ex) {
+      throw new FlinkBigQueryException("Error while deserializing Arrow type", ex);
+    } finally {
+      if (root != null) {
+        root.close();
       }
+    }
+  }
 
+  @Override
+  public Runnable deserialize(ReadRowsResponse response, Collector<RowData> out)
+      throws IOException {
+    ByteString serializedRecordBatch = response.getArrowRecordBatch().getSerializedRecordBatch();
+    if (columnarRead) {
+      return collectColumnarRows(serializedRecordBatch, out);
+    }
+    VectorSchemaRoot root = null;
+    try {
+      root = nestedSchema.deserializeRecordBatch(serializedRecordBatch);
+      collectRows(root, out);
     } catch (Exception ex) {
       throw new FlinkBigQueryException("Error while deserializing Arrow type", ex);
     } finally {
@@ -120,6 +187,75 @@ public class ArrowRowDataDeserializationSchema
         root.close();
       }
     }
+    return () -> {};
+  }
+
+  /**
+   * Emits {@link ColumnarRowData} views over the vectors of the batch, in the field order of the
+   * produced row type. The vectors are released by the returned action.
+   */
+  private Runnable collectColumnarRows(ByteString serializedRecordBatch, Collector<RowData> out) {
+    VectorSchemaRoot root = null;
+    try {
+      root = nestedSchema.deserializeRecordBatchToNewRoot(serializedRecordBatch);
+      VectorizedColumnBatch batch;
+      if (nestedFieldProjection == null) {
+        ValueVector[] vectors = new ValueVector[columnPlan.length];
+        for (int i = 0; i < vectors.length; i++) {
+          vectors[i] = root.getVector(columnPlan[i]);
+        }
+        batch = ArrowColumnVectors.createColumnBatch(vectors, rowType);
+      } else {
+        batch = createNestedColumnBatch(root);
+      }
+      batch.setNumRows(root.getRowCount());
+      for (int i = 0; i < root.getRowCount(); i++) {
+        out.collect(new ColumnarRowData(batch, i));
+      }
+    } catch (Exception ex) {
+      if (root != null) {
+        root.close();
+      }
+      throw new FlinkBigQueryException("Error while deserializing Arrow type", ex);
+    }
+    return root::close;
+  }
+
+  /** Creates the columns of the produced fields from the vectors of the nested fields. */
+  private VectorizedColumnBatch createNestedColumnBatch(VectorSchemaRoot root) {
+    ColumnVector[] columns = new ColumnVector[rowType.getFieldCount()];
+    for (int i = 0; i < columns.length; i++) {
+      int[] indexPath = nestedFieldProjection.getIndexPath(i);
+      ValueVector[] parents = new ValueVector[indexPath.length - 1];
+      ValueVector vector = root.getVector(indexPath[0]);
+      for (int depth = 1; depth < indexPath.length; depth++) {
+        parents[depth - 1] = vector;
+        vector = ((StructVector) vector).getChildByOrdinal(indexPath[depth]);
+      }
+      columns[i] =
+          ArrowColumnVectors.createNestedColumnVector(parents, vector, rowType.getTypeAt(i));
+    }
+    return new VectorizedColumnBatch(columns);
+  }
+
+  @Override
+  public void setAllocator(BufferAllocator allocator) {
+    nestedSchema.setAllocator(allocator);
+  }
+
+  @Override
+  public void close() {
+    nestedSchema.close();
+  }
+
+  private void collectRows(VectorSchemaRoot root, Collector<RowData> out) {
+    List<GenericRowData> rowdatalist = (List<GenericRowData>) runtimeConverter.convert(root);
+    for (int i = 0; i < rowdatalist.size(); i++) {
+      out.collect(
+          nestedFieldProjection == null
+              ? rowdatalist.get(i)
+              : nestedFieldProjection.project(rowdatalist.get(i)));
+    }
   }
 
   @Override
@@ -15,33 +15,39 @@
  */
 package com.google.cloud.flink.bigquery;
 
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
 import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
-import com.google.cloud.flink.bigquery.util.avro.AvroToRowDataConverters;
+import com.google.cloud.flink.bigquery.util.NestedFieldProjection;
+import com.google.cloud.flink.bigquery.util.avro.AvroRowDataReader;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
 import org.apache.avro.Schema;
-import org.apache.avro.Schema.Parser;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.table.data.GenericRowData;
 import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.types.logical.RowType;
 import org.apache.flink.util.Collector;
 
-/** Reading the deserialized avro data and converting into flink RowData */
+/**
+ * Reading the avro data of the read session and converting it into flink RowData, decoding every
+ * row straight from the serialized rows with an {@link AvroRowDataReader}.
+ */
 public class AvroRowDataDeserializationSchema
-    implements DeserializationSchema<RowData>, Serializable {
+    implements ReadRowsResponseDeserializationSchema, Serializable {
 
   public static final long serialVersionUID = 1L;
   private final TypeInformation<RowData> typeInfo;
-  private final DeserializationSchema<GenericRecord> nestedSchema;
-  private final AvroToRowDataConverters.AvroToRowDataConverter runtimeConverter;
-  private final List<String> readSessionFieldNames = new ArrayList<String>();
+  private final RowType rowType;
+  private final List<String> selectedFieldList;
+  private final String readAvroSchema;
+  @Nullable private final NestedFieldProjection nestedFieldProjection;
+  private transient AvroRowDataReader rowReader;
+  private transient BinaryDecoder decoder;
 
   public AvroRowDataDeserializationSchema(
       RowType rowType,
@@ -51,17 +57,30 @@ public class AvroRowDataDeserializationSchema
       String readAvroSchema) {
 
     this.typeInfo = typeInfo;
-    Parser avroSchemaParser = new Schema.Parser();
-    Schema avroSchema = avroSchemaParser.parse(readAvroSchema);
-    avroSchema.getFields().stream()
-        .forEach(
-            field -> {
-              this.readSessionFieldNames.add(field.name());
-            });
-    this.nestedSchema = AvroDeserializationSchema.forGeneric(avroSchema);
-    this.runtimeConverter =
-        AvroToRowDataConverters.createRowConverter(
-            rowType, readSessionFieldNames, selectedFieldList);
+    this.rowType = rowType;
+    this.selectedFieldList = selectedFieldList;
+    this.readAvroSchema = readAvroSchema;
+    this.nestedFieldProjection =
+        NestedFieldProjection.isNested(selectedFieldList)
+            ? NestedFieldProjection.create(rowType, selectedFieldList, avroFieldList)
+            : null;
+    // fails the planning already when the read session schema misses a selected field
+    this.rowReader = createRowReader();
+  }
+
+  private AvroRowDataReader createRowReader() {
+    Schema schema = new Schema.Parser().parse(readAvroSchema);
+    if (nestedFieldProjection == null) {
+      return AvroRowDataReader.create(rowType, selectedFieldList, schema);
+    }
+    // nested fields are read from rows of the read session type, then projected
+    RowType readSessionRowType = nestedFieldProjection.getReadSessionRowType();
+    return AvroRowDataReader.create(readSessionRowType, readSessionRowType.getFieldNames(), schema);
+  }
+
+  private RowData readRow() throws IOException {
+    GenericRowData row = rowReader.read(decoder);
+    return nestedFieldProjection == null ? row : nestedFieldProjection.project(row);
   }
 
   @Override
@@ -71,25 +90,33 @@ public class AvroRowDataDeserializationSchema
 
   @Override
   public void open(InitializationContext context) throws Exception {
-    this.nestedSchema.open(context);
+    if (rowReader == null) {
+      this.rowReader = createRowReader();
+    }
   }
 
   @Override
-  public void deserialize(@Nullable byte[] message, Collector<RowData> out) throws IOException {
-    if (message == null) {
-      throw new FlinkBigQueryException("Deserializing message is empty");
-    }
-    GenericRecord root = null;
+  public Runnable deserialize(ReadRowsResponse response, Collector<RowData> out)
+      throws IOException {
     try {
-      root = nestedSchema.deserialize(message);
-      List<GenericRowData> rowdatalist = (List<GenericRowData>) runtimeConverter.convert(root);
-      for (int i = 0; i < rowdatalist.size(); i++) {
-        out.collect(rowdatalist.get(i));
+      decoder =
+          DecoderFactory.get()
+              .binaryDecoder(response.getAvroRows().getSerializedBinaryRows().newInput(), decoder);
+      for (long i = 0; i < response.getRowCount(); i++) {
+        out.collect(readRow());
       }
-
     } catch (Exception ex) {
       throw new FlinkBigQueryException("Error while deserializing avro type", ex);
     }
+    return () -> {};
+  }
+
+  @Override
+  public void deserialize(@Nullable byte[] message, Collector<RowData> out) throws IOException {
+    if (message == null) {
+      throw new FlinkBigQueryException("Deserializing message is empty");
+    }
+    out.collect(deserialize(message));
   }
 
   @Override
@@ -99,8 +126,8 @@ public class AvroRowDataDeserializationSchema
     }
     RowData rowData;
     try {
-      GenericRecord root = nestedSchema.deserialize(message);
-      rowData = (RowData) runtimeConverter.convert(root);
+      decoder = DecoderFactory.get().binaryDecoder(message, decoder);
+      rowData = readRow();
     } catch (Exception ex) {
       throw new FlinkBigQueryException("Error while deserializing avro type", ex);
     }
@@ -116,12 +143,14 @@ public class AvroRowDataDeserializationSchema
       return false;
     }
     AvroRowDataDeserializationSchema that = (AvroRowDataDeserializationSchema) o;
-    return nestedSchema.equals(that.nestedSchema) && typeInfo.equals(that.typeInfo);
+    return readAvroSchema.equals(that.readAvroSchema)
+        && selectedFieldList.equals(that.selectedFieldList)
+        && typeInfo.equals(that.typeInfo);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(nestedSchema, typeInfo);
+    return Objects.hash(readAvroSchema, selectedFieldList, typeInfo);
   }
 
   @Override
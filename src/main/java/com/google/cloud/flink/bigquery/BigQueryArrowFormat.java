@@ -29,10 +29,17 @@ import org.apache.flink.table.types.logical.RowType;
 public class BigQueryArrowFormat implements DecodingFormat<DeserializationSchema<RowData>> {
   private List<String> selectedFieldList;
   private List<String> arrowFieldList;
+  private boolean columnarRead;
 
   public BigQueryArrowFormat(List<String> selectedFieldList, List<String> arrowFieldList) {
+    this(selectedFieldList, arrowFieldList, false);
+  }
+
+  public BigQueryArrowFormat(
+      List<String> selectedFieldList, List<String> arrowFieldList, boolean columnarRead) {
     this.selectedFieldList = selectedFieldList;
     this.arrowFieldList = arrowFieldList;
+    this.columnarRead = columnarRead;
   }
 
   @Override
@@ -48,6 +55,6 @@ public class BigQueryArrowFormat implements DecodingFormat<DeserializationSchema
     final TypeInformation<RowData> rowDataTypeInfo =
         context.createTypeInformation(producedDataType);
     return new ArrowRowDataDeserializationSchema(
-        rowType, rowDataTypeInfo, selectedFieldList, arrowFieldList);
+        rowType, rowDataTypeInfo, selectedFieldList, arrowFieldList, columnarRead);
   }
 }
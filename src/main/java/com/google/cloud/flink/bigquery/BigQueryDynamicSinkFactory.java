@@ -17,13 +17,10 @@ package com.google.cloud.flink.bigquery;
 
 import static com.google.cloud.flink.bigquery.util.ProtobufUtils.getFields;
 
-import com.google.cloud.bigquery.BigQuery;
-import com.google.cloud.bigquery.BigQueryOptions;
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.FieldList;
 import com.google.cloud.bigquery.Schema;
 import com.google.cloud.bigquery.TableId;
-import com.google.cloud.bigquery.TableInfo;
 import com.google.cloud.bigquery.connector.common.BigQueryClient;
 import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
 import com.google.cloud.bigquery.connector.common.BigQueryCredentialsSupplier;
@@ -32,15 +29,13 @@ import com.google.cloud.flink.bigquery.common.UserAgentHeaderProvider;
 import com.google.cloud.flink.bigquery.common.WriterCommitMessageContext;
 import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
 import com.google.cloud.flink.bigquery.util.FlinkBigQueryConfig;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 import net.sf.jsqlparser.JSQLParserException;
 import org.apache.flink.api.common.accumulators.ListAccumulator;
 import org.apache.flink.configuration.ConfigOption;
@@ -186,23 +181,13 @@ public final class BigQueryDynamicSinkFactory implements DynamicTableSinkFactory
   void createBigQueryTable() throws JSQLParserException {
     TableId tableId = bqConfig.getTableId();
     if (bigQueryClient == null) {
-      final BigQuery bigquery =
-          BigQueryOptions.newBuilder()
-              .setCredentials(bqConfig.createCredentials())
-              .build()
-              .getService();
-      Cache<String, TableInfo> destinationTableCache =
-          CacheBuilder.newBuilder()
-              .expireAfterWrite(bqConfig.getCacheExpirationTimeInMinutes(), TimeUnit.MINUTES)
-              .maximumSize(1000)
-              .build();
       bigQueryClient =
-          new BigQueryClient(
-              bigquery,
+          BigQueryMetadataCache.getClient(
+              bqConfig.createCredentials(),
               Optional.of(bqConfig.getTableId().getProject()),
               Optional.of(bqConfig.getTableId().getDataset()),
-              destinationTableCache,
-              ImmutableMap.of());
+              ImmutableMap.of(),
+              Duration.ofMinutes(bqConfig.getCacheExpirationTimeInMinutes()));
     }
     boolean destTableExists = bigQueryClient.tableExists(tableId);
     if (!destTableExists) {
@@ -18,36 +18,32 @@ package com.google.cloud.flink.bigquery;
 import com.google.auth.Credentials;
 import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
 import com.google.cloud.bigquery.connector.common.BigQueryCredentialsSupplier;
-import com.google.cloud.bigquery.storage.v1.DataFormat;
 import com.google.cloud.bigquery.storage.v1.ReadSession;
-import com.google.cloud.bigquery.storage.v1.ReadStream;
 import com.google.cloud.flink.bigquery.common.FlinkBigQueryConnectorUserAgentProvider;
 import com.google.cloud.flink.bigquery.common.UserAgentHeaderProvider;
 import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupOptions;
+import com.google.cloud.flink.bigquery.source.BigQueryContinuousReadOptions;
 import com.google.cloud.flink.bigquery.util.FlinkBigQueryConfig;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
 import net.sf.jsqlparser.JSQLParserException;
-import org.apache.arrow.vector.ipc.ReadChannel;
-import org.apache.arrow.vector.ipc.message.MessageSerializer;
-import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.configuration.ConfigOption;
 import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.MemorySize;
 import org.apache.flink.configuration.ReadableConfig;
 import org.apache.flink.runtime.util.EnvironmentInformation;
 import org.apache.flink.table.catalog.CatalogTable;
-import org.apache.flink.table.connector.format.DecodingFormat;
 import org.apache.flink.table.connector.source.DynamicTableSource;
-import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.factories.DynamicTableSourceFactory;
 import org.apache.flink.table.factories.FactoryUtil;
 import org.apache.flink.table.types.DataType;
@@ -96,6 +92,14 @@ public final class BigQueryDynamicTableFactory implements DynamicTableSourceFact
       ConfigOptions.key("bqEncodedCreateReadSessionRequest").stringType().noDefaultValue();
   public static final ConfigOption<String> BQ_BACKGROUND_THREADS_PER_STREAM =
       ConfigOptions.key("bqBackgroundThreadsPerStream").stringType().noDefaultValue();
+  public static final ConfigOption<Integer> BQ_NUM_STREAMS_PER_PARTITION =
+      ConfigOptions.key("bqNumStreamsPerPartition").intType().defaultValue(1);
+  public static final ConfigOption<Boolean> ARROW_COLUMNAR_READ =
+      ConfigOptions.key("arrowColumnarRead").booleanType().defaultValue(false);
+  public static final ConfigOption<MemorySize> ARROW_MEMORY_LIMIT =
+      ConfigOptions.key("arrowMemoryLimit")
+          .memoryType()
+          .defaultValue(FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT);
   public static final ConfigOption<String> MATERIALIZATION_PROJECT =
       ConfigOptions.key("materializationProject").stringType().noDefaultValue();
   public static final ConfigOption<String> MATERIALIZATION_DATASET =
@@ -110,11 +114,41 @@ public final class BigQueryDynamicTableFactory implements DynamicTableSourceFact
       ConfigOptions.key("partitionExpirationMs").stringType().defaultValue("");
   public static final ConfigOption<String> PARTITION_REQUIRE_FILTER =
       ConfigOptions.key("partitionRequireFilter").stringType().defaultValue("");
+  public static final ConfigOption<Long> LOOKUP_CACHE_MAX_ROWS =
+      ConfigOptions.key("lookupCacheMaxRows")
+          .longType()
+          .defaultValue(BigQueryLookupOptions.DEFAULT.getCacheMaxRows());
+  public static final ConfigOption<Duration> LOOKUP_CACHE_TTL =
+      ConfigOptions.key("lookupCacheTtl").durationType().defaultValue(Duration.ofMinutes(10));
+  public static final ConfigOption<Integer> LOOKUP_MAX_CONCURRENT_REQUESTS =
+      ConfigOptions.key("lookupMaxConcurrentRequests")
+          .intType()
+          .defaultValue(BigQueryLookupOptions.DEFAULT.getMaxConcurrentRequests());
+  public static final ConfigOption<Duration> LOOKUP_FULL_CACHE_RELOAD_INTERVAL =
+      ConfigOptions.key("lookupFullCacheReloadInterval")
+          .durationType()
+          .defaultValue(BigQueryLookupOptions.DEFAULT.getFullCacheReloadInterval());
+  public static final ConfigOption<Integer> LOOKUP_BATCH_SIZE =
+      ConfigOptions.key("lookupBatchSize")
+          .intType()
+          .defaultValue(BigQueryLookupOptions.DEFAULT.getBatchSize());
+  public static final ConfigOption<Duration> LOOKUP_BATCH_WINDOW =
+      ConfigOptions.key("lookupBatchWindow").durationType().defaultValue(Duration.ofMillis(10));
+  public static final ConfigOption<String> CONTINUOUS_READ_COLUMN =
+      ConfigOptions.key("continuousReadColumn").stringType().defaultValue("");
+  public static final ConfigOption<Duration> CONTINUOUS_READ_DISCOVERY_INTERVAL =
+      ConfigOptions.key("continuousReadDiscoveryInterval")
+          .durationType()
+          .defaultValue(BigQueryContinuousReadOptions.DISABLED.getDiscoveryInterval());
+  public static final ConfigOption<Duration> CONTINUOUS_READ_LAG =
+      ConfigOptions.key("continuousReadLag").durationType().defaultValue(Duration.ofMinutes(1));
+  public static final ConfigOption<Boolean> CONTINUOUS_READ_BACKFILL =
+      ConfigOptions.key("continuousReadBackfill").booleanType().defaultValue(true);
+  public static final ConfigOption<Duration> READ_SESSION_CACHE_EXPIRATION =
+      ConfigOptions.key("readSessionCacheExpiration").durationType().defaultValue(Duration.ZERO);
   public static ConfigOption<String> READ_SESSION_ARROW_SCHEMA_FIELDS;
 
   private String flinkVersion = EnvironmentInformation.getVersion();
-  private String arrowFields = "";
-  private String avroFields = "";
 
   @Override
   public String factoryIdentifier() {
@@ -147,19 +181,30 @@ public final class BigQueryDynamicTableFactory implements DynamicTableSourceFact
     options.add(PROXY_PASSWORD);
     options.add(BQ_ENCODED_CREATER_READSESSION_REQUEST);
     options.add(BQ_BACKGROUND_THREADS_PER_STREAM);
+    options.add(BQ_NUM_STREAMS_PER_PARTITION);
     options.add(PARALLELISM);
     options.add(MAX_PARALLELISM);
     options.add(ARROW_COMPRESSION_CODEC);
+    options.add(ARROW_COLUMNAR_READ);
+    options.add(ARROW_MEMORY_LIMIT);
     options.add(PARTITION_FIELD);
     options.add(PARTITION_TYPE);
     options.add(PARTITION_EXPIRATION_MS);
     options.add(PARTITION_REQUIRE_FILTER);
+    options.add(LOOKUP_CACHE_MAX_ROWS);
+    options.add(LOOKUP_CACHE_TTL);
+    options.add(LOOKUP_MAX_CONCURRENT_REQUESTS);
+    options.add(LOOKUP_FULL_CACHE_RELOAD_INTERVAL);
+    options.add(LOOKUP_BATCH_SIZE);
+    options.add(LOOKUP_BATCH_WINDOW);
+    options.add(CONTINUOUS_READ_COLUMN);
+    options.add(CONTINUOUS_READ_DISCOVERY_INTERVAL);
+    options.add(CONTINUOUS_READ_LAG);
+    options.add(CONTINUOUS_READ_BACKFILL);
+    options.add(READ_SESSION_CACHE_EXPIRATION);
     return options;
   }
 
-  DecodingFormat<DeserializationSchema<RowData>> decodingFormat;
-  private org.apache.avro.Schema avroSchema;
-
   /** */
   @Override
   public DynamicTableSource createDynamicTableSource(Context context) {
@@ -175,100 +220,134 @@ public final class BigQueryDynamicTableFactory implements DynamicTableSourceFact
         throw new IllegalArgumentException(exceptionString);
       }
     }
-    ArrayList<String> readStreams = getReadStreamNames(options);
-    context.getCatalogTable().getOptions().put("selectedFields", bqConfig.getSelectedFields());
-    if (bqConfig.getReadDataFormat().equals(DataFormat.ARROW)) {
-      context
-          .getCatalogTable()
-          .getOptions()
-          .put("arrowFields", arrowFields.substring(0, arrowFields.length() - 1));
-      decodingFormat = helper.discoverDecodingFormat(ArrowFormatFactory.class, FactoryUtil.FORMAT);
-    } else {
-      context
-          .getCatalogTable()
-          .getOptions()
-          .put("avroFields", avroFields.substring(0, avroFields.length() - 1));
-      context.getCatalogTable().getOptions().put("avroSchema", avroSchema.toString());
-
-      decodingFormat = helper.discoverDecodingFormat(AvroFormatFactory.class, FactoryUtil.FORMAT);
-    }
+    ReadSessionProvider readSessionProvider = createReadSessionProvider(options);
+    FlinkBigQueryConfig config = bqConfig;
+    PartitionProvider partitionProvider =
+        column -> BigQueryPartitions.listPartitionIds(config.createCredentials(), config, column);
 
     final DataType producedDataType =
         context.getCatalogTable().getResolvedSchema().toPhysicalRowDataType();
     return new BigQueryDynamicTableSource(
-        decodingFormat, producedDataType, readStreams, bigQueryReadClientFactory, catalogTable);
+        producedDataType,
+        Arrays.asList(bqConfig.getSelectedFields().split(",")),
+        readSessionProvider,
+        partitionProvider,
+        bigQueryReadClientFactory,
+        bqConfig.getNumStreamsPerPartition(),
+        bqConfig.getArrowMemoryLimitBytes(),
+        options.get(ARROW_COLUMNAR_READ),
+        catalogTable,
+        new BigQueryLookupOptions(
+            options.get(LOOKUP_CACHE_MAX_ROWS),
+            options.get(LOOKUP_CACHE_TTL),
+            options.get(LOOKUP_MAX_CONCURRENT_REQUESTS),
+            options.get(LOOKUP_FULL_CACHE_RELOAD_INTERVAL),
+            options.get(LOOKUP_BATCH_SIZE),
+            options.get(LOOKUP_BATCH_WINDOW)),
+        new BigQueryContinuousReadOptions(
+            options.get(CONTINUOUS_READ_COLUMN),
+            options.get(CONTINUOUS_READ_DISCOVERY_INTERVAL),
+            options.get(CONTINUOUS_READ_LAG),
+            options.get(CONTINUOUS_READ_BACKFILL)));
   }
 
-  private ArrayList<String> getReadStreamNames(ReadableConfig options) {
+  /**
+   * Parses the options and sets up the clients. The read session itself is created by the table
+   * source, once the planner has pushed the projection and filters down.
+   */
+  private ReadSessionProvider createReadSessionProvider(ReadableConfig options) {
     bigQueryReadClientFactory = null;
     UserAgentHeaderProvider userAgentHeaderProvider;
     BigQueryCredentialsSupplier bigQueryCredentialsSupplier;
-    ArrayList<String> readStreamNames = new ArrayList<String>();
-    try {
+    ImmutableMap<String, String> defaultOptions =
+        ImmutableMap.of("flinkVersion", EnvironmentInformation.getVersion());
+
+    bqConfig =
+        FlinkBigQueryConfig.from(
+            requiredOptions(),
+            optionalOptions(),
+            options,
+            defaultOptions,
+            new org.apache.hadoop.conf.Configuration(),
+            options.get(DEFAULT_PARALLELISM),
+            new org.apache.flink.configuration.Configuration(),
+            flinkVersion,
+            Optional.empty());
 
-      ImmutableMap<String, String> defaultOptions =
-          ImmutableMap.of("flinkVersion", EnvironmentInformation.getVersion());
+    Credentials credentials = bqConfig.createCredentials();
+    bigQueryCredentialsSupplier =
+        new BigQueryCredentialsSupplier(
+            bqConfig.getAccessToken(),
+            bqConfig.getCredentialsKey(),
+            bqConfig.getCredentialsFile(),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty());
 
-      bqConfig =
-          FlinkBigQueryConfig.from(
-              requiredOptions(),
-              optionalOptions(),
-              options,
-              defaultOptions,
-              new org.apache.hadoop.conf.Configuration(),
-              options.get(DEFAULT_PARALLELISM),
-              new org.apache.flink.configuration.Configuration(),
-              flinkVersion,
-              Optional.empty());
+    FlinkBigQueryConnectorUserAgentProvider agentProvider =
+        new FlinkBigQueryConnectorUserAgentProvider(flinkVersion);
+    userAgentHeaderProvider = new UserAgentHeaderProvider(agentProvider.getUserAgent());
+    bigQueryReadClientFactory =
+        new BigQueryClientFactory(bigQueryCredentialsSupplier, userAgentHeaderProvider, bqConfig);
 
-      Credentials credentials = bqConfig.createCredentials();
-      bigQueryCredentialsSupplier =
-          new BigQueryCredentialsSupplier(
-              bqConfig.getAccessToken(),
-              bqConfig.getCredentialsKey(),
-              bqConfig.getCredentialsFile(),
-              Optional.empty(),
-              Optional.empty(),
-              Optional.empty());
+    // sessions read the table as of their creation, so reusing them is opt-in
+    return readSessionProvider(
+        credentials,
+        bqConfig,
+        bigQueryReadClientFactory,
+        options.get(READ_SESSION_CACHE_EXPIRATION));
+  }
 
-      FlinkBigQueryConnectorUserAgentProvider agentProvider =
-          new FlinkBigQueryConnectorUserAgentProvider(flinkVersion);
-      userAgentHeaderProvider = new UserAgentHeaderProvider(agentProvider.getUserAgent());
-      bigQueryReadClientFactory =
-          new BigQueryClientFactory(bigQueryCredentialsSupplier, userAgentHeaderProvider, bqConfig);
+  /**
+   * Returns the provider of the read sessions of a table, which reuses the sessions created no
+   * longer than {@code readSessionCacheExpiration} ago, unless a new one is asked for.
+   */
+  private static ReadSessionProvider readSessionProvider(
+      Credentials credentials,
+      FlinkBigQueryConfig config,
+      BigQueryClientFactory clientFactory,
+      Duration readSessionCacheExpiration) {
+    return new ReadSessionProvider() {
 
-      // Create read session
-      ReadSession readSession =
-          BigQueryReadSession.getReadsession(credentials, bqConfig, bigQueryReadClientFactory);
-      List<ReadStream> readsessionList = readSession.getStreamsList();
-      for (ReadStream stream : readsessionList) {
-        readStreamNames.add(stream.getName());
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public ReadSession createReadSession(
+          List<String> selectedFields,
+          Optional<String> rowRestriction,
+          OptionalInt maxStreamCount) {
+        return getReadSession(
+            selectedFields, rowRestriction, maxStreamCount, readSessionCacheExpiration);
       }
-      if (bqConfig.getReadDataFormat().equals(DataFormat.ARROW)) {
-        Schema arrowSchema =
-            MessageSerializer.deserializeSchema(
-                new ReadChannel(
-                    new ByteArrayReadableSeekableByteChannel(
-                        readSession.getArrowSchema().getSerializedSchema().toByteArray())));
-        arrowSchema.getFields().stream()
-            .forEach(
-                field -> {
-                  this.arrowFields = arrowFields + field.getName() + ",";
-                });
-      } else if (bqConfig.getReadDataFormat().equals(DataFormat.AVRO)) {
-        avroSchema =
-            new org.apache.avro.Schema.Parser().parse(readSession.getAvroSchema().getSchema());
-        avroSchema.getFields().stream()
-            .forEach(
-                field -> {
-                  this.avroFields = avroFields + field.name() + ",";
-                });
+
+      @Override
+      public ReadSession createNewReadSession(
+          List<String> selectedFields,
+          Optional<String> rowRestriction,
+          OptionalInt maxStreamCount) {
+        return getReadSession(selectedFields, rowRestriction, maxStreamCount, Duration.ZERO);
       }
-    } catch (JSQLParserException | IOException ex) {
-      log.error("Error while reading big query session", ex);
-      throw new FlinkBigQueryException("Error while reading big query session:", ex);
-    }
-    return readStreamNames;
+
+      private ReadSession getReadSession(
+          List<String> selectedFields,
+          Optional<String> rowRestriction,
+          OptionalInt maxStreamCount,
+          Duration cacheExpiration) {
+        try {
+          return BigQueryReadSession.getReadsession(
+              credentials,
+              config,
+              clientFactory,
+              selectedFields,
+              rowRestriction,
+              maxStreamCount,
+              cacheExpiration);
+        } catch (JSQLParserException | IOException ex) {
+          log.error("Error while reading big query session", ex);
+          throw new FlinkBigQueryException("Error while reading big query session:", ex);
+        }
+      }
+    };
   }
 
   private String ensureExpectedException(String exceptionString, ReadableConfig options) {
@@ -16,86 +16,334 @@
 package com.google.cloud.flink.bigquery;
 
 import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.cloud.flink.bigquery.lookup.BigQueryAsyncLookupFunction;
+import com.google.cloud.flink.bigquery.lookup.BigQueryFullCacheLookupFunction;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupOptions;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupReader;
+import com.google.cloud.flink.bigquery.source.BigQueryContinuousReadOptions;
+import com.google.cloud.flink.bigquery.source.BigQuerySource;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySplitDiscoverer;
+import com.google.cloud.flink.bigquery.util.RowRestrictionTranslator;
+import com.google.common.math.LongMath;
+import java.math.RoundingMode;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
-import org.apache.flink.streaming.api.functions.source.SourceFunction;
+import org.apache.flink.api.connector.source.Boundedness;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.table.catalog.CatalogTable;
 import org.apache.flink.table.connector.ChangelogMode;
-import org.apache.flink.table.connector.format.DecodingFormat;
+import org.apache.flink.table.connector.source.AsyncTableFunctionProvider;
+import org.apache.flink.table.connector.source.DataStreamScanProvider;
 import org.apache.flink.table.connector.source.DynamicTableSource;
+import org.apache.flink.table.connector.source.LookupTableSource;
 import org.apache.flink.table.connector.source.ScanTableSource;
-import org.apache.flink.table.connector.source.SourceFunctionProvider;
+import org.apache.flink.table.connector.source.SourceProvider;
+import org.apache.flink.table.connector.source.TableFunctionProvider;
 import org.apache.flink.table.connector.source.abilities.SupportsFilterPushDown;
 import org.apache.flink.table.connector.source.abilities.SupportsLimitPushDown;
 import org.apache.flink.table.connector.source.abilities.SupportsPartitionPushDown;
 import org.apache.flink.table.connector.source.abilities.SupportsProjectionPushDown;
+import org.apache.flink.table.connector.source.abilities.SupportsWatermarkPushDown;
 import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.expressions.ResolvedExpression;
 import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.LogicalTypeRoot;
+import org.apache.flink.table.types.logical.RowType;
+import org.apache.flink.table.types.logical.utils.LogicalTypeChecks;
+import org.apache.flink.table.types.utils.DataTypeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-/** Source that provides runtime implementation for reading data from BigQuery */
+/**
+ * Source that provides runtime implementation for reading data from BigQuery. The read session is
+ * created when the runtime provider is requested, after the planner pushed the projection and the
+ * filters down, so only the projected columns of the matching rows are read from the Storage API.
+ */
 public final class BigQueryDynamicTableSource
     implements ScanTableSource,
+        LookupTableSource,
         SupportsProjectionPushDown,
         SupportsLimitPushDown,
         SupportsPartitionPushDown,
-        SupportsFilterPushDown {
+        SupportsFilterPushDown,
+        SupportsWatermarkPushDown {
+
+  /** Rows a limited scan expects from each stream, a small limit is read from a single stream. */
+  private static final long ROWS_PER_LIMITED_STREAM = 100_000;
+
+  private static final Logger log = LoggerFactory.getLogger(BigQueryDynamicTableSource.class);
 
-  private final DecodingFormat<DeserializationSchema<RowData>> decodingFormat;
   private DataType producedDataType;
-  private ArrayList<String> readStreamNames;
+  private List<String> selectedFields;
+  private List<String> readSessionFields;
+  private final ReadSessionProvider readSessionProvider;
+  private final PartitionProvider partitionProvider;
+  private final BigQueryLookupOptions lookupOptions;
+  private final BigQueryContinuousReadOptions continuousReadOptions;
   private BigQueryClientFactory bigQueryReadClientFactory;
+  private int numStreamsPerPartition;
+  private long arrowMemoryLimitBytes;
+  private boolean arrowColumnarRead;
   private CatalogTable catalogTable;
   private int[][] projectedFields;
-  private long limit;
+  private long limit = Long.MAX_VALUE;
   private List<Map<String, String>> remainingPartitions;
   private ArrayList<ResolvedExpression> filters;
+  private List<String> rowRestrictions = Collections.emptyList();
+  @Nullable private WatermarkStrategy<RowData> watermarkStrategy;
 
+  /**
+   * {@code selectedFields} names the BigQuery column read into each field of {@code
+   * producedDataType}.
+   */
   public BigQueryDynamicTableSource(
-      DecodingFormat<DeserializationSchema<RowData>> decodingFormat,
       DataType producedDataType,
-      ArrayList<String> readStreamNames,
+      List<String> selectedFields,
+      ReadSessionProvider readSessionProvider,
+      PartitionProvider partitionProvider,
       BigQueryClientFactory bigQueryReadClientFactory,
+      int numStreamsPerPartition,
+      long arrowMemoryLimitBytes,
+      boolean arrowColumnarRead,
       CatalogTable catalogTable) {
+    this(
+        producedDataType,
+        selectedFields,
+        readSessionProvider,
+        partitionProvider,
+        bigQueryReadClientFactory,
+        numStreamsPerPartition,
+        arrowMemoryLimitBytes,
+        arrowColumnarRead,
+        catalogTable,
+        BigQueryLookupOptions.DEFAULT);
+  }
+
+  public BigQueryDynamicTableSource(
+      DataType producedDataType,
+      List<String> selectedFields,
+      ReadSessionProvider readSessionProvider,
+      PartitionProvider partitionProvider,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      int numStreamsPerPartition,
+      long arrowMemoryLimitBytes,
+      boolean arrowColumnarRead,
+      CatalogTable catalogTable,
+      BigQueryLookupOptions lookupOptions) {
+    this(
+        producedDataType,
+        selectedFields,
+        readSessionProvider,
+        partitionProvider,
+        bigQueryReadClientFactory,
+        numStreamsPerPartition,
+        arrowMemoryLimitBytes,
+        arrowColumnarRead,
+        catalogTable,
+        lookupOptions,
+        BigQueryContinuousReadOptions.DISABLED);
+  }
+
+  public BigQueryDynamicTableSource(
+      DataType producedDataType,
+      List<String> selectedFields,
+      ReadSessionProvider readSessionProvider,
+      PartitionProvider partitionProvider,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      int numStreamsPerPartition,
+      long arrowMemoryLimitBytes,
+      boolean arrowColumnarRead,
+      CatalogTable catalogTable,
+      BigQueryLookupOptions lookupOptions,
+      BigQueryContinuousReadOptions continuousReadOptions) {
 
-    this.bigQueryReadClientFactory = bigQueryReadClientFactory;
-    this.decodingFormat = decodingFormat;
     this.producedDataType = producedDataType;
-    this.readStreamNames = readStreamNames;
+    this.selectedFields = selectedFields;
+    this.readSessionFields = selectedFields;
+    this.readSessionProvider = readSessionProvider;
+    this.partitionProvider = partitionProvider;
+    this.bigQueryReadClientFactory = bigQueryReadClientFactory;
+    this.numStreamsPerPartition = numStreamsPerPartition;
+    this.arrowMemoryLimitBytes = arrowMemoryLimitBytes;
+    this.arrowColumnarRead = arrowColumnarRead;
     this.catalogTable = catalogTable;
+    this.lookupOptions = lookupOptions;
+    this.continuousReadOptions = continuousReadOptions;
   }
 
   @Override
   public ChangelogMode getChangelogMode() {
-    return decodingFormat.getChangelogMode();
+    return ChangelogMode.insertOnly();
   }
 
+  /**
+   * Reads the rows in the table when the scan starts. A continuous read backfills the rows up to a
+   * high-water mark first, if enabled, and then keeps reading the rows appended past it.
+   */
   @Override
   public ScanRuntimeProvider getScanRuntimeProvider(ScanContext runtimeProviderContext) {
+    BigQuerySplitDiscoverer splitDiscoverer = null;
+    Instant highWaterMark = null;
+    ReadSession readSession;
+    if (continuousReadOptions.isEnabled()) {
+      splitDiscoverer =
+          new BigQuerySplitDiscoverer(
+              readSessionProvider, readSessionFields, rowRestrictions, continuousReadOptions);
+      highWaterMark = splitDiscoverer.nextHighWaterMark();
+      // without backfill the initial session reads no rows, only the schema is needed
+      readSession =
+          splitDiscoverer.createReadSession(
+              continuousReadOptions.isBackfill() ? Optional.empty() : Optional.of(highWaterMark),
+              highWaterMark);
+    } else {
+      Optional<String> rowRestriction =
+          rowRestrictions.isEmpty()
+              ? Optional.empty()
+              : Optional.of(String.join(" AND ", rowRestrictions));
+      readSession =
+          readSessionProvider.createReadSession(
+              readSessionFields, rowRestriction, maxStreamCount(limit));
+    }
+    // the estimate accounts for the pushed projection and filters, the table statistics do not
+    log.info(
+        "Read session {} has {} streams and scans an estimated {} bytes",
+        readSession.getName(),
+        readSession.getStreamsCount(),
+        readSession.getEstimatedTotalBytesScanned());
+    BigQueryMetadataCache.logCounts();
+    ArrayList<String> readStreamNames =
+        readSession.getStreamsList().stream()
+            .map(ReadStream::getName)
+            .collect(Collectors.toCollection(ArrayList::new));
     // create runtime classes that are shipped to the cluster
     final DeserializationSchema<RowData> deserializer =
-        decodingFormat.createRuntimeDecoder(runtimeProviderContext, producedDataType);
-    final SourceFunction<RowData> sourceFunction =
-        new BigQuerySourceFunction(deserializer, readStreamNames, bigQueryReadClientFactory);
-    return SourceFunctionProvider.of(sourceFunction, false);
+        createDeserializer(runtimeProviderContext, readSession);
+    final BigQuerySource source =
+        new BigQuerySource(
+            deserializer,
+            readStreamNames,
+            bigQueryReadClientFactory,
+            numStreamsPerPartition,
+            arrowMemoryLimitBytes,
+            limit,
+            splitDiscoverer,
+            highWaterMark);
+    if (watermarkStrategy == null) {
+      return SourceProvider.of(source);
+    }
+    WatermarkStrategy<RowData> sourceWatermarkStrategy = watermarkStrategy;
+    return new DataStreamScanProvider() {
+      @Override
+      public DataStream<RowData> produceDataStream(StreamExecutionEnvironment execEnv) {
+        return execEnv.fromSource(source, sourceWatermarkStrategy, asSummaryString());
+      }
+
+      @Override
+      public boolean isBounded() {
+        return source.getBoundedness() == Boundedness.BOUNDED;
+      }
+    };
+  }
+
+  /** The streams of a limited scan, more would only start reads the limit cuts short. */
+  static OptionalInt maxStreamCount(long limit) {
+    if (limit == Long.MAX_VALUE) {
+      return OptionalInt.empty();
+    }
+    long streams = LongMath.divide(limit, ROWS_PER_LIMITED_STREAM, RoundingMode.CEILING);
+    return OptionalInt.of((int) Math.max(1, Math.min(Integer.MAX_VALUE, streams)));
+  }
+
+  /** Creates the decoder of the produced rows, following the column order of the read session. */
+  private DeserializationSchema<RowData> createDeserializer(
+      ScanContext runtimeProviderContext, ReadSession readSession) {
+    if (selectedFields.isEmpty()) {
+      return new EmptyRowDeserializationSchema(
+          runtimeProviderContext.createTypeInformation(producedDataType));
+    }
+    return ReadSessionDeserializers.create(
+        readSession,
+        (RowType) producedDataType.getLogicalType(),
+        runtimeProviderContext.createTypeInformation(producedDataType),
+        selectedFields,
+        arrowColumnarRead);
+  }
+
+  /**
+   * Looks the rows of a key up with a read session of their own, restricted to the key, or in the
+   * whole table loaded into memory if the full cache is enabled. The keys have to be top-level
+   * columns of a type BigQuery has literals of.
+   */
+  @Override
+  public LookupRuntimeProvider getLookupRuntimeProvider(LookupContext context) {
+    List<DataType> fieldTypes = producedDataType.getChildren();
+    List<String> keyColumns = new ArrayList<>();
+    List<DataType> keyTypes = new ArrayList<>();
+    int[] keyIndexes = new int[context.getKeys().length];
+    for (int i = 0; i < keyIndexes.length; i++) {
+      int[] key = context.getKeys()[i];
+      if (key.length != 1) {
+        throw new UnsupportedOperationException(
+            "BigQuery tables can only be looked up by top-level columns.");
+      }
+      keyIndexes[i] = key[0];
+      DataType keyType = fieldTypes.get(key[0]);
+      keyColumns.add(selectedFields.get(key[0]));
+      keyTypes.add(keyType);
+    }
+    RowType rowType = (RowType) producedDataType.getLogicalType();
+    BigQueryLookupReader reader =
+        new BigQueryLookupReader(
+            readSessionProvider,
+            bigQueryReadClientFactory,
+            rowType,
+            context.createTypeInformation(producedDataType),
+            selectedFields,
+            rowRestrictions);
+    if (lookupOptions.isFullCacheEnabled()) {
+      return TableFunctionProvider.of(
+          new BigQueryFullCacheLookupFunction(reader, rowType, keyIndexes, lookupOptions));
+    }
+    return AsyncTableFunctionProvider.of(
+        new BigQueryAsyncLookupFunction(reader, keyIndexes, keyColumns, keyTypes, lookupOptions));
   }
 
   @Override
   public DynamicTableSource copy() {
     BigQueryDynamicTableSource source =
         new BigQueryDynamicTableSource(
-            decodingFormat,
             producedDataType,
-            readStreamNames,
+            selectedFields,
+            readSessionProvider,
+            partitionProvider,
             bigQueryReadClientFactory,
-            catalogTable);
+            numStreamsPerPartition,
+            arrowMemoryLimitBytes,
+            arrowColumnarRead,
+            catalogTable,
+            lookupOptions,
+            continuousReadOptions);
+    source.readSessionFields = readSessionFields;
     source.projectedFields = projectedFields;
     source.remainingPartitions = remainingPartitions;
     source.filters = filters;
+    source.rowRestrictions = rowRestrictions;
     source.limit = limit;
+    source.watermarkStrategy = watermarkStrategy;
     return source;
   }
 
@@ -104,28 +352,102 @@ public final class BigQueryDynamicTableSource
     return "BigQuery Table Source";
   }
 
+  /**
+   * Generates the watermarks in the source readers instead of after the source. The readers track
+   * the watermark of every read stream on its own, and emit the smallest of them, so the streams
+   * read at once do not make each other's rows late. Streams idle for the idle timeout of the
+   * strategy, if any, are ignored.
+   */
+  @Override
+  public void applyWatermark(WatermarkStrategy<RowData> watermarkStrategy) {
+    this.watermarkStrategy = watermarkStrategy;
+  }
+
+  /**
+   * Accepts the filters that translate to a row restriction of the read session, which BigQuery
+   * evaluates in place of Flink. The others remain with Flink.
+   */
   @Override
   public Result applyFilters(List<ResolvedExpression> filters) {
-    this.filters = new ArrayList<>(filters);
-    return Result.of(new ArrayList<>(filters), new ArrayList<>(filters));
+    Map<String, String> columns = getColumns();
+    List<ResolvedExpression> acceptedFilters = new ArrayList<>();
+    List<ResolvedExpression> remainingFilters = new ArrayList<>();
+    List<String> acceptedRowRestrictions = new ArrayList<>(rowRestrictions);
+    for (ResolvedExpression filter : filters) {
+      Optional<String> rowRestriction = RowRestrictionTranslator.translate(filter, columns);
+      if (rowRestriction.isPresent()) {
+        acceptedFilters.add(filter);
+        acceptedRowRestrictions.add(rowRestriction.get());
+      } else {
+        remainingFilters.add(filter);
+      }
+    }
+    this.filters = new ArrayList<>(acceptedFilters);
+    this.rowRestrictions = acceptedRowRestrictions;
+    return Result.of(acceptedFilters, remainingFilters);
+  }
+
+  /** Returns the BigQuery column read into each field of the produced rows, by field name. */
+  private Map<String, String> getColumns() {
+    List<String> fieldNames = LogicalTypeChecks.getFieldNames(producedDataType.getLogicalType());
+    Map<String, String> columns = new HashMap<>();
+    for (int i = 0; i < fieldNames.size(); i++) {
+      columns.put(fieldNames.get(i), selectedFields.get(i));
+    }
+    return columns;
   }
 
+  /**
+   * Lists the daily partitions of the table, for a table declared with its {@code DATE} partition
+   * column as the only partition key.
+   */
   @Override
   public Optional<List<Map<String, String>>> listPartitions() {
-    // TODO Auto-generated method stub
-    return null;
+    String partitionKey = getPartitionKey();
+    return Optional.of(
+        BigQueryPartitions.toPartitionSpecs(
+            partitionKey, partitionProvider.listPartitionIds(getColumns().get(partitionKey))));
   }
 
+  /** Restricts the read session to the rows of the partitions left after pruning. */
   @Override
   public void applyPartitions(List<Map<String, String>> remainingPartitions) {
-    if (catalogTable.getPartitionKeys() != null && catalogTable.getPartitionKeys().size() != 0) {
-      this.remainingPartitions = remainingPartitions;
-    } else {
+    String partitionKey = getPartitionKey();
+    this.remainingPartitions = remainingPartitions;
+    List<String> restrictions = new ArrayList<>(rowRestrictions);
+    restrictions.add(
+        BigQueryPartitions.partitionRestriction(
+            getColumns().get(partitionKey), partitionKey, remainingPartitions));
+    this.rowRestrictions = restrictions;
+  }
+
+  private String getPartitionKey() {
+    List<String> partitionKeys = catalogTable.getPartitionKeys();
+    if (partitionKeys == null || partitionKeys.isEmpty()) {
       throw new UnsupportedOperationException(
           "Should not apply partitions to a non-partitioned table.");
     }
+    if (partitionKeys.size() != 1) {
+      throw new UnsupportedOperationException(
+          "A BigQuery table is partitioned by a single column, got partition keys "
+              + partitionKeys);
+    }
+    String partitionKey = partitionKeys.get(0);
+    RowType rowType = (RowType) producedDataType.getLogicalType();
+    LogicalType partitionKeyType = rowType.getTypeAt(rowType.getFieldIndex(partitionKey));
+    if (partitionKeyType.getTypeRoot() != LogicalTypeRoot.DATE) {
+      throw new UnsupportedOperationException(
+          String.format(
+              "The partition key %s has to be a DATE, got %s.", partitionKey, partitionKeyType));
+    }
+    return partitionKey;
   }
 
+  /**
+   * The planner keeps its own limit on top of the source, so every reader stops once it has emitted
+   * {@code limit} rows itself. A smaller share per reader could return too few rows when the
+   * matching rows are not spread evenly across the streams.
+   */
   @Override
   public void applyLimit(long limit) {
     this.limit = limit;
@@ -133,11 +455,47 @@ public final class BigQueryDynamicTableSource
 
   @Override
   public boolean supportsNestedProjection() {
-    return false;
+    return true;
   }
 
+  /**
+   * A field projected from a {@code STRUCT} column is read from the dotted path of its sub-field,
+   * so the read session only returns the sub-fields the query uses.
+   */
   @Override
   public void applyProjection(int[][] projectedFields) {
+    RowType rowType = (RowType) producedDataType.getLogicalType();
     this.projectedFields = projectedFields;
+    this.producedDataType = DataTypeUtils.projectRow(producedDataType, projectedFields);
+    List<String> projectedSelectedFields = new ArrayList<>();
+    for (int[] fieldPath : projectedFields) {
+      StringBuilder selectedField = new StringBuilder(selectedFields.get(fieldPath[0]));
+      LogicalType type = rowType.getTypeAt(fieldPath[0]);
+      for (int depth = 1; depth < fieldPath.length; depth++) {
+        RowType nestedType = (RowType) type;
+        selectedField.append('.').append(nestedType.getFieldNames().get(fieldPath[depth]));
+        type = nestedType.getTypeAt(fieldPath[depth]);
+      }
+      projectedSelectedFields.add(selectedField.toString());
+    }
+    // a read session returns at least one column, even when the query uses none
+    this.readSessionFields =
+        projectedSelectedFields.isEmpty()
+            ? Collections.singletonList(selectedFields.get(0))
+            : getReadSessionFields(projectedSelectedFields);
+    this.selectedFields = projectedSelectedFields;
+  }
+
+  /** Returns the fields to select, without those read with a selected parent field. */
+  static List<String> getReadSessionFields(List<String> selectedFields) {
+    List<String> readSessionFields = new ArrayList<>();
+    for (String field : selectedFields) {
+      boolean readWithParent =
+          selectedFields.stream().anyMatch(parent -> field.startsWith(parent + "."));
+      if (!readWithParent && !readSessionFields.contains(field)) {
+        readSessionFields.add(field);
+      }
+    }
+    return readSessionFields;
   }
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import com.google.auth.Credentials;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.TableInfo;
+import com.google.cloud.bigquery.connector.common.BigQueryClient;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the BigQuery services and clients, the table metadata and the read sessions of the whole
+ * JVM, so planning many statements over the same tables does not set them up and fetch them again
+ * for each table source. Every lookup passes how old an entry it accepts, an older entry is fetched
+ * again. Missing tables are not cached.
+ *
+ * <p>Every entry is keyed by the credentials it was fetched with, so callers with other credentials
+ * never see it and BigQuery checks their access on their own. Services and clients no job used for
+ * an hour are dropped, so the credentials of finished jobs are not kept for the life of the JVM. A
+ * reused read session reads the table as of the time the session was created, unless it asks for a
+ * snapshot, so sessions are only reused by table options that accept that, and only while BigQuery
+ * keeps them for at least another hour.
+ */
+public final class BigQueryMetadataCache {
+
+  private static final Logger log = LoggerFactory.getLogger(BigQueryMetadataCache.class);
+
+  private static final int MAXIMUM_SIZE = 1000;
+
+  /** Read sessions expire after six hours, no entry is kept longer. */
+  private static final long MAXIMUM_AGE_HOURS = 6;
+
+  private static final long MAXIMUM_IDLE_HOURS = 1;
+
+  /** How long a reused read session has to stay valid, for the job reusing it to read it. */
+  static final Duration READ_SESSION_EXPIRATION_MARGIN = Duration.ofHours(1);
+
+  private static final Cache<List<Object>, BigQuery> SERVICES =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAXIMUM_SIZE)
+          .expireAfterAccess(MAXIMUM_IDLE_HOURS, TimeUnit.HOURS)
+          .build();
+  private static final Cache<List<Object>, BigQueryClient> CLIENTS =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAXIMUM_SIZE)
+          .expireAfterAccess(MAXIMUM_IDLE_HOURS, TimeUnit.HOURS)
+          .build();
+  private static final Entries<List<Object>, TableInfo> TABLES = new Entries<>();
+  private static final Entries<List<Object>, ReadSession> READ_SESSIONS = new Entries<>();
+
+  private BigQueryMetadataCache() {}
+
+  public static long getTableHitCount() {
+    return TABLES.hits.sum();
+  }
+
+  public static long getTableMissCount() {
+    return TABLES.misses.sum();
+  }
+
+  public static long getReadSessionHitCount() {
+    return READ_SESSIONS.hits.sum();
+  }
+
+  public static long getReadSessionMissCount() {
+    return READ_SESSIONS.misses.sum();
+  }
+
+  /** Reports the hit and miss counts of the cache of this JVM as gauges of {@code group}. */
+  public static void registerMetrics(MetricGroup group) {
+    group.gauge("metadataCacheTableHits", (Gauge<Long>) BigQueryMetadataCache::getTableHitCount);
+    group.gauge("metadataCacheTableMisses", (Gauge<Long>) BigQueryMetadataCache::getTableMissCount);
+    group.gauge(
+        "metadataCacheReadSessionHits",
+        (Gauge<Long>) BigQueryMetadataCache::getReadSessionHitCount);
+    group.gauge(
+        "metadataCacheReadSessionMisses",
+        (Gauge<Long>) BigQueryMetadataCache::getReadSessionMissCount);
+  }
+
+  /** Logs the hit and miss counts of the cache of this JVM, where no metric group exists. */
+  static void logCounts() {
+    log.info(
+        "Metadata cache hits and misses: {}/{} of tables, {}/{} of read sessions",
+        getTableHitCount(),
+        getTableMissCount(),
+        getReadSessionHitCount(),
+        getReadSessionMissCount());
+  }
+
+  /**
+   * Returns the service of {@code credentials}, running jobs in {@code projectId}, or in the
+   * default project if empty.
+   */
+  public static BigQuery getBigQuery(Credentials credentials, Optional<String> projectId) {
+    return get(
+        SERVICES,
+        Arrays.asList(credentials, projectId),
+        () -> {
+          BigQueryOptions.Builder options =
+              BigQueryOptions.newBuilder().setCredentials(credentials);
+          projectId.ifPresent(options::setProjectId);
+          return options.build().getService();
+        });
+  }
+
+  /**
+   * Returns the client of {@code credentials}, whose table lookups, including the one before a read
+   * session is created, go through the cache and accept entries up to {@code maxAge} old. The
+   * tables it materializes queries into are reused for as long.
+   */
+  public static BigQueryClient getClient(
+      Credentials credentials,
+      Optional<String> materializationProject,
+      Optional<String> materializationDataset,
+      Map<String, String> labels,
+      Duration maxAge) {
+    return get(
+        CLIENTS,
+        Arrays.asList(credentials, materializationProject, materializationDataset, labels, maxAge),
+        () ->
+            createClient(
+                getBigQuery(credentials, Optional.empty()),
+                materializationProject,
+                materializationDataset,
+                labels,
+                maxAge));
+  }
+
+  static BigQueryClient createClient(
+      BigQuery bigQuery,
+      Optional<String> materializationProject,
+      Optional<String> materializationDataset,
+      Map<String, String> labels,
+      Duration maxAge) {
+    Cache<String, TableInfo> destinationTableCache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(maxAge.toMillis(), TimeUnit.MILLISECONDS)
+            .maximumSize(MAXIMUM_SIZE)
+            .build();
+    return new BigQueryClient(
+        bigQuery, materializationProject, materializationDataset, destinationTableCache, labels) {
+      @Override
+      public TableInfo getTable(TableId tableId) {
+        return BigQueryMetadataCache.getTable(bigQuery, tableId, maxAge);
+      }
+    };
+  }
+
+  /**
+   * Returns the metadata of {@code tableId} fetched by {@code bigQuery} no longer than {@code
+   * maxAge} ago, or null if the table does not exist.
+   */
+  @Nullable
+  public static TableInfo getTable(BigQuery bigQuery, TableId tableId, Duration maxAge) {
+    // the same table may be named with or without the project of the client
+    TableId fullTableId =
+        tableId.getProject() != null
+            ? tableId
+            : TableId.of(
+                bigQuery.getOptions().getProjectId(), tableId.getDataset(), tableId.getTable());
+    return TABLES.get(
+        Arrays.asList(bigQuery.getOptions().getCredentials(), fullTableId),
+        maxAge,
+        () -> bigQuery.getTable(tableId));
+  }
+
+  /**
+   * Returns the read session cached under {@code key} created no longer than {@code maxAge} ago and
+   * expiring no sooner than {@link #READ_SESSION_EXPIRATION_MARGIN} from now, or null if there is
+   * none. The key has to hold the credentials the session was created with.
+   */
+  @Nullable
+  static ReadSession getReadSession(List<Object> key, Duration maxAge) {
+    Instant expireBy = Instant.now().plus(READ_SESSION_EXPIRATION_MARGIN);
+    return READ_SESSIONS.getIfPresent(
+        key,
+        maxAge,
+        readSession ->
+            readSession.hasExpireTime()
+                && Instant.ofEpochSecond(
+                        readSession.getExpireTime().getSeconds(),
+                        readSession.getExpireTime().getNanos())
+                    .isAfter(expireBy));
+  }
+
+  /** Caches {@code readSession}, created at {@link System#nanoTime()} {@code createdNanos}. */
+  static void putReadSession(List<Object> key, ReadSession readSession, long createdNanos) {
+    READ_SESSIONS.put(key, readSession, createdNanos);
+  }
+
+  private static <V> V get(Cache<List<Object>, V> cache, List<Object> key, Callable<V> loader) {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new FlinkBigQueryException("Error while creating a BigQuery client:", ex.getCause());
+    }
+  }
+
+  private static class Entries<K, V> {
+
+    private final Cache<K, Entry<V>> cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .expireAfterWrite(MAXIMUM_AGE_HOURS, TimeUnit.HOURS)
+            .build();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    V get(K key, Duration maxAge, Supplier<V> loader) {
+      V value = getIfPresent(key, maxAge, v -> true);
+      if (value == null) {
+        long createdNanos = System.nanoTime();
+        value = loader.get();
+        if (value != null) {
+          put(key, value, createdNanos);
+        }
+      }
+      return value;
+    }
+
+    @Nullable
+    V getIfPresent(K key, Duration maxAge, Predicate<V> usable) {
+      Entry<V> entry = cache.getIfPresent(key);
+      if (entry != null
+          && System.nanoTime() - entry.createdNanos < maxAge.toNanos()
+          && usable.test(entry.value)) {
+        hits.increment();
+        return entry.value;
+      }
+      misses.increment();
+      return null;
+    }
+
+    void put(K key, V value, long createdNanos) {
+      cache.put(key, new Entry<>(value, createdNanos));
+    }
+  }
+
+  private static class Entry<V> {
+
+    private final V value;
+    private final long createdNanos;
+
+    Entry(V value, long createdNanos) {
+      this.value = value;
+      this.createdNanos = createdNanos;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import com.google.auth.Credentials;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import com.google.cloud.bigquery.QueryParameterValue;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.StandardTableDefinition;
+import com.google.cloud.bigquery.TableDefinition;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.TableInfo;
+import com.google.cloud.bigquery.TimePartitioning;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.util.FlinkBigQueryConfig;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Lists the partitions of a BigQuery table and restricts a read session to some of them.
+ *
+ * <p>The planner drops the predicates it prunes partitions with, so the listing has to name the
+ * exact value of the partition column in every row of a partition. That only holds for tables
+ * partitioned by day on a {@code DATE} column, which are the only ones supported.
+ */
+public final class BigQueryPartitions {
+
+  /** Partition of the rows whose partition column is NULL. */
+  static final String NULL_PARTITION_ID = "__NULL__";
+
+  /** Partition of the rows still in the streaming buffer, whose partition is not known yet. */
+  static final String UNPARTITIONED_PARTITION_ID = "__UNPARTITIONED__";
+
+  private static final String LIST_PARTITIONS_QUERY =
+      "SELECT partition_id FROM `%s.%s.INFORMATION_SCHEMA.PARTITIONS` WHERE table_name = @table";
+
+  private BigQueryPartitions() {}
+
+  /**
+   * Returns the partition ids of the configured table, which has to be partitioned by day on the
+   * {@code DATE} column {@code column}.
+   */
+  public static List<String> listPartitionIds(
+      Credentials credentials, FlinkBigQueryConfig bqConfig, String column) {
+    if (bqConfig.getQuery().isPresent()) {
+      throw new UnsupportedOperationException(
+          "Partitions can only be listed for a table, not for a query.");
+    }
+    BigQuery bigQuery =
+        BigQueryMetadataCache.getBigQuery(credentials, Optional.of(bqConfig.getParentProjectId()));
+    TableId tableId = bqConfig.getTableIdWithoutThePartition();
+    TableInfo table =
+        BigQueryMetadataCache.getTable(
+            bigQuery, tableId, Duration.ofMinutes(bqConfig.getCacheExpirationTimeInMinutes()));
+    if (table == null) {
+      throw new FlinkBigQueryException("Table " + tableId + " does not exist.");
+    }
+    checkPartitioning(table.getDefinition(), column);
+    String project =
+        tableId.getProject() != null ? tableId.getProject() : bqConfig.getParentProjectId();
+    QueryJobConfiguration query =
+        QueryJobConfiguration.newBuilder(
+                String.format(LIST_PARTITIONS_QUERY, project, tableId.getDataset()))
+            .addNamedParameter("table", QueryParameterValue.string(tableId.getTable()))
+            .setUseLegacySql(false)
+            .build();
+    List<String> partitionIds = new ArrayList<>();
+    try {
+      for (FieldValueList row : bigQuery.query(query).iterateAll()) {
+        partitionIds.add(row.get("partition_id").getStringValue());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FlinkBigQueryException("Interrupted while listing the partitions of " + tableId);
+    }
+    return partitionIds;
+  }
+
+  static void checkPartitioning(TableDefinition tableDefinition, String column) {
+    if (!(tableDefinition instanceof StandardTableDefinition)) {
+      throw new UnsupportedOperationException(
+          "Partition pruning needs a table, got a " + tableDefinition.getType());
+    }
+    StandardTableDefinition definition = (StandardTableDefinition) tableDefinition;
+    TimePartitioning partitioning = definition.getTimePartitioning();
+    if (partitioning == null
+        || partitioning.getType() != TimePartitioning.Type.DAY
+        || !column.equals(partitioning.getField())) {
+      throw new UnsupportedOperationException(
+          String.format(
+              "Partition pruning needs a table partitioned by day on column %s, got %s.",
+              column, partitioning));
+    }
+    Field field = definition.getSchema().getFields().get(column);
+    if (field.getType().getStandardType() != StandardSQLTypeName.DATE) {
+      throw new UnsupportedOperationException(
+          String.format(
+              "Partition pruning needs a DATE partition column, %s is a %s.",
+              column, field.getType().getStandardType()));
+    }
+  }
+
+  /**
+   * Returns the Flink partition specs of daily partition ids, mapping {@code partitionKey} to the
+   * ISO date of each partition, or to null for the partition of NULL dates.
+   */
+  public static List<Map<String, String>> toPartitionSpecs(
+      String partitionKey, List<String> partitionIds) {
+    List<Map<String, String>> partitions = new ArrayList<>();
+    for (String partitionId : partitionIds) {
+      if (UNPARTITIONED_PARTITION_ID.equals(partitionId)) {
+        throw new FlinkBigQueryException(
+            "The table has streamed rows that are not assigned to a partition yet, so its"
+                + " partitions cannot be listed exhaustively. Retry once the streaming buffer is"
+                + " flushed, or declare the table without partition keys.");
+      }
+      String value;
+      try {
+        value =
+            NULL_PARTITION_ID.equals(partitionId)
+                ? null
+                : LocalDate.parse(partitionId, DateTimeFormatter.BASIC_ISO_DATE).toString();
+      } catch (DateTimeParseException ex) {
+        throw new FlinkBigQueryException("Not a daily partition id: " + partitionId, ex);
+      }
+      partitions.add(Collections.singletonMap(partitionKey, value));
+    }
+    return partitions;
+  }
+
+  /** Returns the row restriction that reads only the rows of {@code partitions}. */
+  public static String partitionRestriction(
+      String column, String partitionKey, List<Map<String, String>> partitions) {
+    List<String> dates =
+        partitions.stream()
+            .map(partition -> partition.get(partitionKey))
+            .filter(Objects::nonNull)
+            .map(date -> "DATE '" + LocalDate.parse(date) + "'")
+            .collect(Collectors.toList());
+    List<String> restrictions = new ArrayList<>();
+    if (!dates.isEmpty()) {
+      restrictions.add("`" + column + "` IN (" + String.join(", ", dates) + ")");
+    }
+    if (partitions.stream().anyMatch(partition -> partition.get(partitionKey) == null)) {
+      restrictions.add("`" + column + "` IS NULL");
+    }
+    return restrictions.isEmpty() ? "FALSE" : "(" + String.join(" OR ", restrictions) + ")";
+  }
+}
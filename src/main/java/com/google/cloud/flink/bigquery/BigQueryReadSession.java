@@ -16,8 +16,6 @@
 package com.google.cloud.flink.bigquery;
 
 import com.google.auth.Credentials;
-import com.google.cloud.bigquery.BigQuery;
-import com.google.cloud.bigquery.BigQueryOptions;
 import com.google.cloud.bigquery.TableId;
 import com.google.cloud.bigquery.TableInfo;
 import com.google.cloud.bigquery.connector.common.BigQueryClient;
@@ -25,16 +23,21 @@ import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
 import com.google.cloud.bigquery.connector.common.ReadSessionCreator;
 import com.google.cloud.bigquery.connector.common.ReadSessionCreatorConfig;
 import com.google.cloud.bigquery.connector.common.ReadSessionResponse;
+import com.google.cloud.bigquery.storage.v1.CreateReadSessionRequest;
 import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadSession.TableModifiers;
 import com.google.cloud.flink.bigquery.util.FlinkBigQueryConfig;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Timestamp;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.OptionalInt;
 import net.sf.jsqlparser.JSQLParserException;
 
 /** Instantiating big query read session */
@@ -45,28 +48,98 @@ public class BigQueryReadSession {
       FlinkBigQueryConfig bqConfig,
       BigQueryClientFactory bigQueryReadClientFactory)
       throws FileNotFoundException, IOException, JSQLParserException {
+    return getReadsession(
+        credentials,
+        bqConfig,
+        bigQueryReadClientFactory,
+        Arrays.asList(bqConfig.getSelectedFields().split(",")),
+        Optional.empty(),
+        OptionalInt.empty());
+  }
+
+  /**
+   * Creates a read session of the configured table or query, reading only {@code selectedFields} of
+   * the rows that match both the configured filter and {@code rowRestriction}, in at most {@code
+   * maxStreamCount} streams if present.
+   */
+  public static ReadSession getReadsession(
+      Credentials credentials,
+      FlinkBigQueryConfig bqConfig,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      List<String> selectedFields,
+      Optional<String> rowRestriction,
+      OptionalInt maxStreamCount)
+      throws FileNotFoundException, IOException, JSQLParserException {
+    return getReadsession(
+        credentials,
+        bqConfig,
+        bigQueryReadClientFactory,
+        selectedFields,
+        rowRestriction,
+        maxStreamCount,
+        Duration.ZERO);
+  }
+
+  /**
+   * Like {@link #getReadsession(Credentials, FlinkBigQueryConfig, BigQueryClientFactory, List,
+   * Optional, OptionalInt)}, but returns the same session created no longer than {@code
+   * readSessionCacheExpiration} ago, if any, instead of creating a new one.
+   */
+  public static ReadSession getReadsession(
+      Credentials credentials,
+      FlinkBigQueryConfig bqConfig,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      List<String> selectedFields,
+      Optional<String> rowRestriction,
+      OptionalInt maxStreamCount,
+      Duration readSessionCacheExpiration)
+      throws FileNotFoundException, IOException, JSQLParserException {
+
+    OptionalInt maxParallelism = bqConfig.getMaxParallelism();
+    if (maxStreamCount.isPresent()) {
+      maxParallelism =
+          OptionalInt.of(
+              Math.min(
+                  maxParallelism.orElse(bqConfig.getDefaultParallelism()),
+                  maxStreamCount.getAsInt()));
+    }
+    Optional<String> filter = combineFilters(bqConfig.getFilter(), rowRestriction);
+    ReadSessionCreatorConfig readSessionCreatorConfig =
+        bqConfig.toReadSessionCreatorConfig(maxParallelism);
+    boolean reuse = !readSessionCacheExpiration.isZero();
+    List<Object> key =
+        readSessionKey(
+            credentials,
+            bqConfig,
+            readSessionCreatorConfig,
+            selectedFields,
+            filter,
+            maxParallelism);
+    if (reuse) {
+      ReadSession cached = BigQueryMetadataCache.getReadSession(key, readSessionCacheExpiration);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long createdNanos = System.nanoTime();
 
-    final BigQuery bigQuery =
-        BigQueryOptions.newBuilder().setCredentials(credentials).build().getService();
     Optional<String> materializationProject =
         bqConfig.getQuery().isPresent()
             ? Optional.of(bqConfig.getParentProjectId())
             : Optional.empty();
     Optional<String> materializationDataset =
         bqConfig.getQuery().isPresent() ? bqConfig.getMaterializationDataset() : Optional.empty();
-    Cache<String, TableInfo> destinationTableCache =
-        CacheBuilder.newBuilder()
-            .expireAfterWrite(bqConfig.getCacheExpirationTimeInMinutes(), TimeUnit.MINUTES)
-            .maximumSize(1000)
-            .build();
+    // a materialized query is not reused once its table expires
     BigQueryClient bigQueryClient =
-        new BigQueryClient(
-            bigQuery,
+        BigQueryMetadataCache.getClient(
+            credentials,
             materializationProject,
             materializationDataset,
-            destinationTableCache,
-            bqConfig.getBigQueryJobLabels());
-    ReadSessionCreatorConfig readSessionCreatorConfig = bqConfig.toReadSessionCreatorConfig();
+            bqConfig.getBigQueryJobLabels(),
+            Duration.ofMinutes(
+                Math.min(
+                    bqConfig.getCacheExpirationTimeInMinutes(),
+                    bqConfig.getMaterializationExpirationTimeInMinutes())));
     ReadSessionCreator readSessionCreator =
         new ReadSessionCreator(readSessionCreatorConfig, bigQueryClient, bigQueryReadClientFactory);
 
@@ -81,11 +154,58 @@ public class BigQueryReadSession {
     }
 
     TableId tableId = bqConfig.getQuery().isPresent() ? tabId : bqConfig.getTableId();
-    ImmutableList<String> selectedFields =
-        ImmutableList.copyOf(Arrays.asList(bqConfig.getSelectedFields().split(",")));
-    Optional<String> filter =
-        bqConfig.getFilter().isPresent() ? bqConfig.getFilter() : Optional.empty();
-    ReadSessionResponse response = readSessionCreator.create(tableId, selectedFields, filter);
-    return response.getReadSession();
+    ReadSessionResponse response =
+        readSessionCreator.create(tableId, ImmutableList.copyOf(selectedFields), filter);
+    ReadSession readSession = response.getReadSession();
+    if (reuse) {
+      BigQueryMetadataCache.putReadSession(key, readSession, createdNanos);
+    }
+    return readSession;
+  }
+
+  /**
+   * Returns what tells apart the read sessions of a table, including who created them and the
+   * snapshot they read, if any.
+   */
+  static List<Object> readSessionKey(
+      Credentials credentials,
+      FlinkBigQueryConfig bqConfig,
+      ReadSessionCreatorConfig readSessionCreatorConfig,
+      List<String> selectedFields,
+      Optional<String> filter,
+      OptionalInt maxParallelism)
+      throws IOException {
+    Optional<String> encodedRequest = readSessionCreatorConfig.getRequestEncodedBase();
+    Optional<Timestamp> snapshotTime = Optional.empty();
+    if (encodedRequest.isPresent()) {
+      TableModifiers modifiers =
+          CreateReadSessionRequest.parseFrom(Base64.getDecoder().decode(encodedRequest.get()))
+              .getReadSession()
+              .getTableModifiers();
+      if (modifiers.hasSnapshotTime()) {
+        snapshotTime = Optional.of(modifiers.getSnapshotTime());
+      }
+    }
+    return Arrays.asList(
+        credentials,
+        bqConfig.getQuery().isPresent() ? bqConfig.getQuery().get() : bqConfig.getTableId(),
+        bqConfig.getParentProjectId(),
+        new ArrayList<>(selectedFields),
+        filter,
+        maxParallelism,
+        bqConfig.getReadDataFormat(),
+        bqConfig.getArrowCompressionCodec(),
+        snapshotTime,
+        encodedRequest);
+  }
+
+  static Optional<String> combineFilters(Optional<String> filter, Optional<String> rowRestriction) {
+    if (!filter.isPresent() || filter.get().trim().isEmpty()) {
+      return rowRestriction;
+    }
+    if (!rowRestriction.isPresent()) {
+      return filter;
+    }
+    return Optional.of("(" + filter.get() + ") AND " + rowRestriction.get());
   }
 }
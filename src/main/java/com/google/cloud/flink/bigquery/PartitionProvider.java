@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import java.util.List;
+
+/** Lists the partitions of the table a table source reads, for the planner to prune them. */
+@FunctionalInterface
+public interface PartitionProvider {
+
+  /**
+   * Returns the partition ids of the table, as {@code INFORMATION_SCHEMA.PARTITIONS} lists them.
+   *
+   * @throws UnsupportedOperationException if the table is not partitioned by day on {@code column}
+   */
+  List<String> listPartitionIds(String column);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import java.io.IOException;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.util.Collector;
+
+/**
+ * Deserialization schema that decodes the rows of a {@link ReadRowsResponse} straight from the
+ * payload held by the response, instead of a re-serialized copy of the whole response.
+ */
+public interface ReadRowsResponseDeserializationSchema extends DeserializationSchema<RowData> {
+
+  /**
+   * Collects the rows of the response. The returned action releases the memory backing the
+   * collected rows, the caller runs it once none of these rows is accessed anymore.
+   */
+  Runnable deserialize(ReadRowsResponse response, Collector<RowData> out) throws IOException;
+
+  /**
+   * Allocates the Arrow buffers of the decoded batches from {@code allocator}, which stays owned by
+   * the caller. Called once, before the first response is deserialized.
+   */
+  default void setAllocator(BufferAllocator allocator) {}
+
+  /** Releases the buffers kept across responses, once no more responses are deserialized. */
+  default void close() {}
+}
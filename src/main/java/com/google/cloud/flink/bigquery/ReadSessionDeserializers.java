@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.types.logical.RowType;
+
+/** Creates the decoder of the rows of a read session, for the data format and schema it has. */
+public final class ReadSessionDeserializers {
+
+  private ReadSessionDeserializers() {}
+
+  /**
+   * Creates the decoder of {@code rowType} rows from the responses of {@code readSession}, reading
+   * field {@code i} from the BigQuery field {@code selectedFields.get(i)}.
+   */
+  public static ReadRowsResponseDeserializationSchema create(
+      ReadSession readSession,
+      RowType rowType,
+      TypeInformation<RowData> typeInfo,
+      List<String> selectedFields,
+      boolean arrowColumnarRead) {
+    if (readSession.getDataFormat() == DataFormat.AVRO) {
+      org.apache.avro.Schema avroSchema =
+          new org.apache.avro.Schema.Parser().parse(readSession.getAvroSchema().getSchema());
+      List<String> avroFields =
+          avroSchema.getFields().stream()
+              .map(org.apache.avro.Schema.Field::name)
+              .collect(Collectors.toList());
+      return new AvroRowDataDeserializationSchema(
+          rowType, typeInfo, selectedFields, avroFields, avroSchema.toString());
+    }
+    return new ArrowRowDataDeserializationSchema(
+        rowType, typeInfo, selectedFields, getArrowFields(readSession), arrowColumnarRead);
+  }
+
+  /** Returns the dotted paths of the fields of the Arrow schema of the session, depth first. */
+  static List<String> getArrowFields(ReadSession readSession) {
+    List<Field> fields;
+    try {
+      fields =
+          MessageSerializer.deserializeSchema(
+                  new ReadChannel(
+                      new ByteArrayReadableSeekableByteChannel(
+                          readSession.getArrowSchema().getSerializedSchema().toByteArray())))
+              .getFields();
+    } catch (IOException ex) {
+      throw new FlinkBigQueryException("Error while reading the Arrow schema of the session:", ex);
+    }
+    List<String> fieldPaths = new ArrayList<>();
+    addFieldPaths("", fields, fieldPaths);
+    return fieldPaths;
+  }
+
+  private static void addFieldPaths(String prefix, List<Field> fields, List<String> fieldPaths) {
+    for (Field field : fields) {
+      fieldPaths.add(prefix + field.getName());
+      if (field.getType().getTypeID() == ArrowType.ArrowTypeID.Struct) {
+        addFieldPaths(prefix + field.getName() + ".", field.getChildren(), fieldPaths);
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * Creates the read session of a table scan. The table source calls it only once the planner has
+ * pushed its projection and filters down, so the session reads nothing but the columns and rows the
+ * query uses. Lookup functions create read sessions at runtime, so the provider is shipped to the
+ * cluster with them.
+ */
+@FunctionalInterface
+public interface ReadSessionProvider extends Serializable {
+
+  /**
+   * Creates a read session returning {@code selectedFields}, in the column order of the table, of
+   * the rows matching {@code rowRestriction} as well as the filter of the table options. The
+   * session has no more than {@code maxStreamCount} streams, if present, nor than the configured
+   * parallelism.
+   */
+  ReadSession createReadSession(
+      List<String> selectedFields, Optional<String> rowRestriction, OptionalInt maxStreamCount);
+
+  /**
+   * Like {@link #createReadSession(List, Optional, OptionalInt)}, but never returns a session
+   * created before, so the session reads the table as of now. Lookups, which read the table again
+   * to see its changes, create their sessions this way.
+   */
+  default ReadSession createNewReadSession(
+      List<String> selectedFields, Optional<String> rowRestriction, OptionalInt maxStreamCount) {
+    return createReadSession(selectedFields, rowRestriction, maxStreamCount);
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.lookup;
+
+import com.google.cloud.flink.bigquery.BigQueryMetadataCache;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.util.RowRestrictionTranslator;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.conversion.DataStructureConverter;
+import org.apache.flink.table.data.conversion.DataStructureConverters;
+import org.apache.flink.table.functions.AsyncTableFunction;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.util.Preconditions;
+
+/**
+ * Looks the rows of a key up with a read session restricted to the key, running several reads at
+ * once. The rows of recently looked up keys are kept in a cache bounded in size and time to live,
+ * if enabled; the function reports the hits and misses of the cache as metrics.
+ *
+ * <p>If batching is enabled, the keys missing from the cache are collected until the batch is full
+ * or its window has passed, and the batch is looked up by a single read session restricted to all
+ * its keys. The rows read are then handed to the lookups of their key. Flink bounds the lookups in
+ * flight by {@code table.exec.async-lookup.buffer-capacity}, a batch larger than that only fills
+ * when the window passes.
+ */
+public class BigQueryAsyncLookupFunction extends AsyncTableFunction<RowData> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final BigQueryLookupReader reader;
+  private final int[] keyIndexes;
+  private final List<String> keyColumns;
+  private final List<DataType> keyTypes;
+  private final BigQueryLookupOptions options;
+  private transient List<DataStructureConverter<Object, Object>> keyConverters;
+  private transient ExecutorService executor;
+  @Nullable private transient Cache<RowData, List<RowData>> cache;
+  private transient Counter cacheHits;
+  private transient Counter cacheMisses;
+  private transient RowData.FieldGetter[] keyGetters;
+  @Nullable private transient ScheduledExecutorService batchTimer;
+  private transient List<PendingLookup> batch;
+  @Nullable private transient ScheduledFuture<?> batchFlush;
+
+  /**
+   * @param keyIndexes the position of every lookup key in the rows read
+   * @param keyColumns the BigQuery column of every lookup key
+   * @param keyTypes the type of every lookup key
+   */
+  public BigQueryAsyncLookupFunction(
+      BigQueryLookupReader reader,
+      int[] keyIndexes,
+      List<String> keyColumns,
+      List<DataType> keyTypes,
+      BigQueryLookupOptions options) {
+    Preconditions.checkArgument(
+        keyIndexes.length == keyColumns.size() && keyColumns.size() == keyTypes.size(),
+        "Every lookup key needs a position, a column and a type.");
+    this.reader = reader;
+    this.keyIndexes = keyIndexes;
+    this.keyColumns = keyColumns;
+    this.keyTypes = keyTypes;
+    this.options = options;
+  }
+
+  @Override
+  public void open(FunctionContext context) throws Exception {
+    super.open(context);
+    List<DataStructureConverter<Object, Object>> keyConverters = new ArrayList<>();
+    for (DataType keyType : keyTypes) {
+      DataStructureConverter<Object, Object> keyConverter =
+          DataStructureConverters.getConverter(keyType);
+      keyConverter.open(Thread.currentThread().getContextClassLoader());
+      keyConverters.add(keyConverter);
+    }
+    this.keyConverters = keyConverters;
+    this.executor =
+        Executors.newFixedThreadPool(
+            options.getMaxConcurrentRequests(),
+            new ThreadFactoryBuilder().setNameFormat("bigquery-lookup-%d").setDaemon(true).build());
+    if (options.isCacheEnabled()) {
+      Cache<RowData, List<RowData>> cache =
+          CacheBuilder.newBuilder()
+              .maximumSize(options.getCacheMaxRows())
+              .expireAfterWrite(options.getCacheTtl().toMillis(), TimeUnit.MILLISECONDS)
+              .build();
+      this.cache = cache;
+      context.getMetricGroup().gauge("lookupCacheSize", (Gauge<Long>) cache::size);
+    }
+    this.cacheHits = context.getMetricGroup().counter("lookupCacheHits");
+    this.cacheMisses = context.getMetricGroup().counter("lookupCacheMisses");
+    BigQueryMetadataCache.registerMetrics(context.getMetricGroup());
+    this.keyGetters = new RowData.FieldGetter[keyIndexes.length];
+    for (int i = 0; i < keyIndexes.length; i++) {
+      keyGetters[i] = RowData.createFieldGetter(keyTypes.get(i).getLogicalType(), keyIndexes[i]);
+    }
+    this.batch = new ArrayList<>();
+    if (options.isBatchEnabled()) {
+      this.batchTimer =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder()
+                  .setNameFormat("bigquery-lookup-batch")
+                  .setDaemon(true)
+                  .build());
+    }
+  }
+
+  /** Completes {@code future} with the rows whose key columns equal {@code keys}. */
+  public void eval(CompletableFuture<Collection<RowData>> future, Object... keys) {
+    RowData key = GenericRowData.of(keys);
+    if (cache != null) {
+      List<RowData> rows = cache.getIfPresent(key);
+      if (rows != null) {
+        cacheHits.inc();
+        future.complete(rows);
+        return;
+      }
+      cacheMisses.inc();
+    }
+    for (Object keyField : keys) {
+      if (keyField == null) {
+        // a NULL key equals no row
+        future.complete(Collections.emptyList());
+        return;
+      }
+    }
+    if (options.isBatchEnabled()) {
+      addToBatch(new PendingLookup(key, keys, future));
+      return;
+    }
+    String rowRestriction;
+    try {
+      rowRestriction = keyRestriction(keys);
+    } catch (RuntimeException ex) {
+      future.completeExceptionally(ex);
+      return;
+    }
+    CompletableFuture.supplyAsync(() -> reader.read(rowRestriction), executor)
+        .whenComplete(
+            (rows, error) -> {
+              if (error != null) {
+                future.completeExceptionally(error);
+                return;
+              }
+              if (cache != null) {
+                cache.put(key, rows);
+              }
+              future.complete(rows);
+            });
+  }
+
+  private synchronized void addToBatch(PendingLookup lookup) {
+    batch.add(lookup);
+    if (batch.size() >= options.getBatchSize()) {
+      flushBatch();
+    } else if (batch.size() == 1) {
+      batchFlush =
+          batchTimer.schedule(
+              this::flushBatch, options.getBatchWindow().toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private synchronized void flushBatch() {
+    if (batchFlush != null) {
+      batchFlush.cancel(false);
+      batchFlush = null;
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<PendingLookup> lookups = batch;
+    this.batch = new ArrayList<>();
+    executor.execute(() -> readBatch(lookups));
+  }
+
+  /** Looks all keys of {@code lookups} up with one read, and completes every lookup. */
+  private void readBatch(List<PendingLookup> lookups) {
+    Map<RowData, List<PendingLookup>> lookupsByKey = new LinkedHashMap<>();
+    for (PendingLookup lookup : lookups) {
+      lookupsByKey.computeIfAbsent(lookup.key, k -> new ArrayList<>()).add(lookup);
+    }
+    Map<RowData, List<RowData>> rowsByKey = new HashMap<>();
+    try {
+      List<RowData> rows = reader.read(batchRestriction(lookupsByKey.values()));
+      for (RowData row : rows) {
+        GenericRowData key = new GenericRowData(keyGetters.length);
+        for (int i = 0; i < keyGetters.length; i++) {
+          key.setField(i, keyGetters[i].getFieldOrNull(row));
+        }
+        rowsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+      }
+    } catch (RuntimeException ex) {
+      lookups.forEach(lookup -> lookup.future.completeExceptionally(ex));
+      return;
+    }
+    for (Map.Entry<RowData, List<PendingLookup>> entry : lookupsByKey.entrySet()) {
+      List<RowData> rows = rowsByKey.getOrDefault(entry.getKey(), Collections.emptyList());
+      if (cache != null) {
+        cache.put(entry.getKey(), rows);
+      }
+      entry.getValue().forEach(lookup -> lookup.future.complete(rows));
+    }
+  }
+
+  /** Returns the restriction to the rows of any key of {@code lookups}, by key. */
+  private String batchRestriction(Collection<List<PendingLookup>> lookups) {
+    if (keyColumns.size() == 1) {
+      List<Object> values = new ArrayList<>();
+      for (List<PendingLookup> keyLookups : lookups) {
+        values.add(keyConverters.get(0).toExternal(keyLookups.get(0).keys[0]));
+      }
+      String column = keyColumns.get(0);
+      DataType type = keyTypes.get(0);
+      return RowRestrictionTranslator.in(column, values, type)
+          .orElseThrow(() -> unsupportedKey(column, type));
+    }
+    List<String> restrictions = new ArrayList<>();
+    for (List<PendingLookup> keyLookups : lookups) {
+      restrictions.add("(" + keyRestriction(keyLookups.get(0).keys) + ")");
+    }
+    return "(" + String.join(" OR ", restrictions) + ")";
+  }
+
+  /** Returns the restriction to the rows of {@code keys}, none of them NULL. */
+  private String keyRestriction(Object[] keys) {
+    List<String> restrictions = new ArrayList<>();
+    for (int i = 0; i < keys.length; i++) {
+      String column = keyColumns.get(i);
+      DataType type = keyTypes.get(i);
+      restrictions.add(
+          RowRestrictionTranslator.equalTo(column, keyConverters.get(i).toExternal(keys[i]), type)
+              .orElseThrow(() -> unsupportedKey(column, type)));
+    }
+    return String.join(" AND ", restrictions);
+  }
+
+  private static FlinkBigQueryException unsupportedKey(String column, DataType type) {
+    return new FlinkBigQueryException(
+        String.format(
+            "Cannot look up column %s, BigQuery has no literal of type %s.", column, type));
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (batchTimer != null) {
+      batchTimer.shutdownNow();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+    super.close();
+  }
+
+  /** A lookup waiting for its batch to be read. */
+  private static class PendingLookup {
+
+    private final RowData key;
+    private final Object[] keys;
+    private final CompletableFuture<Collection<RowData>> future;
+
+    private PendingLookup(
+        RowData key, Object[] keys, CompletableFuture<Collection<RowData>> future) {
+      this.key = key;
+      this.keys = keys;
+      this.future = future;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.lookup;
+
+import com.google.cloud.flink.bigquery.BigQueryMetadataCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.TableFunction;
+import org.apache.flink.table.types.logical.RowType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks keys up in an index of the whole table held in memory. The table is loaded when the
+ * function opens, and reloaded in the background every reload interval. A reload builds a new index
+ * and swaps it in once complete, lookups keep using the previous one meanwhile, and keep it when
+ * the reload fails.
+ */
+public class BigQueryFullCacheLookupFunction extends TableFunction<RowData> {
+
+  private static final long serialVersionUID = 1L;
+  private static final Logger log = LoggerFactory.getLogger(BigQueryFullCacheLookupFunction.class);
+
+  private final BigQueryLookupReader reader;
+  private final int[] keyIndexes;
+  private final RowData.FieldGetter[] keyGetters;
+  private final BigQueryLookupOptions options;
+  private transient volatile Map<RowData, List<RowData>> index;
+  private transient ExecutorService readExecutor;
+  private transient ScheduledExecutorService reloadExecutor;
+  private transient Counter reloadFailures;
+
+  /**
+   * @param rowType the type of the rows of the table
+   * @param keyIndexes the position of every lookup key in the rows of the table
+   */
+  public BigQueryFullCacheLookupFunction(
+      BigQueryLookupReader reader,
+      RowType rowType,
+      int[] keyIndexes,
+      BigQueryLookupOptions options) {
+    this.reader = reader;
+    this.keyIndexes = keyIndexes;
+    this.keyGetters = new RowData.FieldGetter[keyIndexes.length];
+    for (int i = 0; i < keyIndexes.length; i++) {
+      keyGetters[i] = RowData.createFieldGetter(rowType.getTypeAt(keyIndexes[i]), keyIndexes[i]);
+    }
+    this.options = options;
+  }
+
+  @Override
+  public void open(FunctionContext context) throws Exception {
+    super.open(context);
+    this.readExecutor =
+        Executors.newFixedThreadPool(
+            options.getMaxConcurrentRequests(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("bigquery-lookup-load-%d")
+                .setDaemon(true)
+                .build());
+    this.reloadExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("bigquery-lookup-reload")
+                .setDaemon(true)
+                .build());
+    // lookups need the table from the first probe on
+    this.index = load();
+    long reloadIntervalMillis = options.getFullCacheReloadInterval().toMillis();
+    reloadExecutor.scheduleWithFixedDelay(
+        this::reload, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+    context.getMetricGroup().gauge("lookupCacheSize", (Gauge<Integer>) () -> index.size());
+    this.reloadFailures = context.getMetricGroup().counter("lookupCacheReloadFailures");
+    BigQueryMetadataCache.registerMetrics(context.getMetricGroup());
+  }
+
+  /** Collects the rows whose key columns equal {@code keys}. */
+  public void eval(Object... keys) {
+    for (Object key : keys) {
+      if (key == null) {
+        // a NULL key equals no row
+        return;
+      }
+    }
+    for (RowData row : index.getOrDefault(GenericRowData.of(keys), Collections.emptyList())) {
+      collect(row);
+    }
+  }
+
+  private void reload() {
+    try {
+      this.index = load();
+    } catch (RuntimeException ex) {
+      reloadFailures.inc();
+      log.warn("Failed to reload the lookup table, keep looking up the previous one", ex);
+    }
+  }
+
+  private Map<RowData, List<RowData>> load() {
+    long start = System.nanoTime();
+    List<RowData> rows =
+        reader.read(Optional.empty(), options.getMaxConcurrentRequests(), readExecutor);
+    Map<RowData, List<RowData>> index = new HashMap<>();
+    for (RowData row : rows) {
+      GenericRowData key = new GenericRowData(keyIndexes.length);
+      boolean nullKey = false;
+      for (int i = 0; i < keyIndexes.length; i++) {
+        Object value = keyGetters[i].getFieldOrNull(row);
+        nullKey |= value == null;
+        key.setField(i, value);
+      }
+      // rows with a NULL key are never looked up
+      if (!nullKey) {
+        index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+      }
+    }
+    log.info(
+        "Loaded {} rows of {} keys into the lookup table in {} ms",
+        rows.size(),
+        index.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return index;
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (reloadExecutor != null) {
+      reloadExecutor.shutdownNow();
+    }
+    if (readExecutor != null) {
+      readExecutor.shutdownNow();
+    }
+    index = null;
+    super.close();
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.lookup;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Objects;
+import org.apache.flink.util.Preconditions;
+
+/** Settings of the lookups of a BigQuery table in a lookup join. */
+public class BigQueryLookupOptions implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Lookups without cache, running up to four reads at once. */
+  public static final BigQueryLookupOptions DEFAULT =
+      new BigQueryLookupOptions(-1, Duration.ZERO, 4);
+
+  private final long cacheMaxRows;
+  private final Duration cacheTtl;
+  private final int maxConcurrentRequests;
+  private final Duration fullCacheReloadInterval;
+  private final int batchSize;
+  private final Duration batchWindow;
+
+  public BigQueryLookupOptions(long cacheMaxRows, Duration cacheTtl, int maxConcurrentRequests) {
+    this(cacheMaxRows, cacheTtl, maxConcurrentRequests, Duration.ZERO);
+  }
+
+  public BigQueryLookupOptions(
+      long cacheMaxRows,
+      Duration cacheTtl,
+      int maxConcurrentRequests,
+      Duration fullCacheReloadInterval) {
+    this(cacheMaxRows, cacheTtl, maxConcurrentRequests, fullCacheReloadInterval, 1, Duration.ZERO);
+  }
+
+  /**
+   * @param cacheMaxRows the number of keys whose rows are cached, least recently used first out;
+   *     the cache is disabled when it is not positive
+   * @param cacheTtl how long the rows of a key stay cached after they were read
+   * @param maxConcurrentRequests the number of reads running at once in every lookup function
+   * @param fullCacheReloadInterval how often the whole table is reloaded into memory, where lookups
+   *     are served from instead of reads of their own; the full cache is disabled when it is not
+   *     positive
+   * @param batchSize the number of keys looked up together by a single read; keys are looked up one
+   *     by one when it is 1
+   * @param batchWindow how long a key waits for the batch to fill before the batch is read anyway
+   */
+  public BigQueryLookupOptions(
+      long cacheMaxRows,
+      Duration cacheTtl,
+      int maxConcurrentRequests,
+      Duration fullCacheReloadInterval,
+      int batchSize,
+      Duration batchWindow) {
+    Preconditions.checkArgument(
+        cacheMaxRows <= 0 || !cacheTtl.isNegative() && !cacheTtl.isZero(),
+        "A lookup cache needs a positive time to live, got %s.",
+        cacheTtl);
+    Preconditions.checkArgument(
+        maxConcurrentRequests > 0,
+        "The lookup needs at least one concurrent request, got %s.",
+        maxConcurrentRequests);
+    Preconditions.checkArgument(
+        batchSize > 0, "A lookup batch needs at least one key, got %s.", batchSize);
+    Preconditions.checkArgument(
+        batchSize == 1 || !batchWindow.isNegative() && !batchWindow.isZero(),
+        "A lookup batch needs a positive window, got %s.",
+        batchWindow);
+    this.cacheMaxRows = cacheMaxRows;
+    this.cacheTtl = cacheTtl;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.fullCacheReloadInterval = fullCacheReloadInterval;
+    this.batchSize = batchSize;
+    this.batchWindow = batchWindow;
+  }
+
+  public boolean isCacheEnabled() {
+    return cacheMaxRows > 0;
+  }
+
+  public boolean isBatchEnabled() {
+    return batchSize > 1;
+  }
+
+  public boolean isFullCacheEnabled() {
+    return !fullCacheReloadInterval.isNegative() && !fullCacheReloadInterval.isZero();
+  }
+
+  public long getCacheMaxRows() {
+    return cacheMaxRows;
+  }
+
+  public Duration getCacheTtl() {
+    return cacheTtl;
+  }
+
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public Duration getFullCacheReloadInterval() {
+    return fullCacheReloadInterval;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public Duration getBatchWindow() {
+    return batchWindow;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    BigQueryLookupOptions that = (BigQueryLookupOptions) o;
+    return cacheMaxRows == that.cacheMaxRows
+        && cacheTtl.equals(that.cacheTtl)
+        && maxConcurrentRequests == that.maxConcurrentRequests
+        && fullCacheReloadInterval.equals(that.fullCacheReloadInterval)
+        && batchSize == that.batchSize
+        && batchWindow.equals(that.batchWindow);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        cacheMaxRows,
+        cacheTtl,
+        maxConcurrentRequests,
+        fullCacheReloadInterval,
+        batchSize,
+        batchWindow);
+  }
+
+  @Override
+  public String toString() {
+    return "BigQueryLookupOptions{cacheMaxRows="
+        + cacheMaxRows
+        + ", cacheTtl="
+        + cacheTtl
+        + ", maxConcurrentRequests="
+        + maxConcurrentRequests
+        + ", fullCacheReloadInterval="
+        + fullCacheReloadInterval
+        + ", batchSize="
+        + batchSize
+        + ", batchWindow="
+        + batchWindow
+        + "}";
+  }
+}
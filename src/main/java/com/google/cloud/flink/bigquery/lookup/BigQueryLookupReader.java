@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.lookup;
+
+import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.bigquery.connector.common.ReadRowsHelper;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.flink.bigquery.ReadRowsResponseDeserializationSchema;
+import com.google.cloud.flink.bigquery.ReadSessionDeserializers;
+import com.google.cloud.flink.bigquery.ReadSessionProvider;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.types.logical.RowType;
+
+/**
+ * Reads the rows of a table that match a row restriction, or all of them, through a read session of
+ * their own. The rows are copies, they stay valid after the read.
+ */
+public class BigQueryLookupReader implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ReadSessionProvider readSessionProvider;
+  private final BigQueryClientFactory bigQueryReadClientFactory;
+  private final RowType rowType;
+  private final TypeInformation<RowData> typeInfo;
+  private final List<String> selectedFields;
+  private final List<String> rowRestrictions;
+
+  /**
+   * @param rowRestrictions restrictions every read applies on top of its own, such as the filters
+   *     pushed into the table source
+   */
+  public BigQueryLookupReader(
+      ReadSessionProvider readSessionProvider,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      RowType rowType,
+      TypeInformation<RowData> typeInfo,
+      List<String> selectedFields,
+      List<String> rowRestrictions) {
+    this.readSessionProvider = readSessionProvider;
+    this.bigQueryReadClientFactory = bigQueryReadClientFactory;
+    this.rowType = rowType;
+    this.typeInfo = typeInfo;
+    this.selectedFields = selectedFields;
+    this.rowRestrictions = new ArrayList<>(rowRestrictions);
+  }
+
+  /** Reads the rows matching {@code rowRestriction} from a single stream. */
+  public List<RowData> read(String rowRestriction) {
+    return read(Optional.of(rowRestriction), 1, Runnable::run);
+  }
+
+  /**
+   * Reads the rows matching {@code rowRestriction}, or all rows if it is empty, from up to {@code
+   * maxStreamCount} streams read in parallel on {@code executor}.
+   */
+  public List<RowData> read(
+      Optional<String> rowRestriction, int maxStreamCount, Executor executor) {
+    List<String> restrictions = new ArrayList<>(rowRestrictions);
+    rowRestriction.ifPresent(restrictions::add);
+    ReadSession readSession =
+        readSessionProvider.createNewReadSession(
+            selectedFields,
+            restrictions.isEmpty()
+                ? Optional.empty()
+                : Optional.of(String.join(" AND ", restrictions)),
+            OptionalInt.of(maxStreamCount));
+    // BigQuery returns no stream when no row matches
+    List<CompletableFuture<List<RowData>>> streamRows =
+        readSession.getStreamsList().stream()
+            .map(
+                stream ->
+                    CompletableFuture.supplyAsync(
+                        () -> readStream(readSession, stream.getName()), executor))
+            .collect(Collectors.toList());
+    List<RowData> rows = new ArrayList<>();
+    try {
+      for (CompletableFuture<List<RowData>> future : streamRows) {
+        rows.addAll(future.join());
+      }
+    } catch (CompletionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new FlinkBigQueryException("Error while reading the read session:", ex.getCause());
+    }
+    return rows;
+  }
+
+  private List<RowData> readStream(ReadSession readSession, String streamName) {
+    // decoders keep state across responses, every stream gets its own
+    ReadRowsResponseDeserializationSchema deserializer =
+        ReadSessionDeserializers.create(readSession, rowType, typeInfo, selectedFields, false);
+    ReadRowsHelper readRowsHelper =
+        new ReadRowsHelper(
+            bigQueryReadClientFactory,
+            ReadRowsRequest.newBuilder().setReadStream(streamName),
+            new ReadRowsHelper.Options(
+                /* maxReadRowsRetries= */ 5,
+                Optional.of("endpoint"),
+                /* backgroundParsingThreads= */ 1,
+                1));
+    List<RowData> rows = new ArrayList<>();
+    try {
+      Iterator<ReadRowsResponse> responses = readRowsHelper.readRows();
+      while (responses.hasNext()) {
+        // rows decoded without columnar read are copies, nothing to release
+        deserializer.deserialize(responses.next(), new ListCollector<>(rows)).run();
+      }
+    } catch (IOException ex) {
+      throw new FlinkBigQueryException("Error while deserialization:", ex);
+    } finally {
+      readRowsHelper.close();
+      deserializer.close();
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Objects;
+import org.apache.flink.util.Preconditions;
+
+/**
+ * Settings of a continuous read, which keeps reading the rows appended to the table after the scan
+ * started. The rows are tracked by a BigQuery {@code TIMESTAMP} column holding the time a row was
+ * appended, such as an ingestion time column; the read is bounded when there is no column. The read
+ * starts with a backfill of the rows already in the table, unless it only tails the table.
+ */
+public class BigQueryContinuousReadOptions implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** A bounded read of the rows in the table when the scan starts. */
+  public static final BigQueryContinuousReadOptions DISABLED =
+      new BigQueryContinuousReadOptions("", Duration.ofMinutes(1), Duration.ZERO);
+
+  private final String column;
+  private final Duration discoveryInterval;
+  private final Duration lag;
+  private final boolean backfill;
+
+  public BigQueryContinuousReadOptions(String column, Duration discoveryInterval, Duration lag) {
+    this(column, discoveryInterval, lag, true);
+  }
+
+  /**
+   * @param column the {@code TIMESTAMP} column of the time a row was appended, the read is bounded
+   *     when it is empty
+   * @param discoveryInterval how often a read session of the rows appended since the last one is
+   *     created
+   * @param lag how long before a read session the rows it reads must have been appended; a row
+   *     appended later than that with an older time is not read
+   * @param backfill whether the read starts with the rows already in the table, or only with the
+   *     rows appended after the scan started
+   */
+  public BigQueryContinuousReadOptions(
+      String column, Duration discoveryInterval, Duration lag, boolean backfill) {
+    Preconditions.checkArgument(
+        !discoveryInterval.isNegative() && !discoveryInterval.isZero(),
+        "A continuous read needs a positive discovery interval, got %s.",
+        discoveryInterval);
+    Preconditions.checkArgument(
+        !lag.isNegative(), "A continuous read needs a non negative lag, got %s.", lag);
+    this.column = column;
+    this.discoveryInterval = discoveryInterval;
+    this.lag = lag;
+    this.backfill = backfill;
+  }
+
+  public boolean isEnabled() {
+    return !column.isEmpty();
+  }
+
+  public String getColumn() {
+    return column;
+  }
+
+  public Duration getDiscoveryInterval() {
+    return discoveryInterval;
+  }
+
+  public Duration getLag() {
+    return lag;
+  }
+
+  public boolean isBackfill() {
+    return backfill;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    BigQueryContinuousReadOptions that = (BigQueryContinuousReadOptions) o;
+    return column.equals(that.column)
+        && discoveryInterval.equals(that.discoveryInterval)
+        && lag.equals(that.lag)
+        && backfill == that.backfill;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(column, discoveryInterval, lag, backfill);
+  }
+
+  @Override
+  public String toString() {
+    return "BigQueryContinuousReadOptions{column='"
+        + column
+        + "', discoveryInterval="
+        + discoveryInterval
+        + ", lag="
+        + lag
+        + ", backfill="
+        + backfill
+        + "}";
+  }
+}
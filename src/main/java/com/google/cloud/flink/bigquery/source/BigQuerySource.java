@@ -0,0 +1,210 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source;
+
+import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.flink.bigquery.ReadRowsResponseDeserializationSchema;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumState;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumStateSerializer;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumerator;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySplitDiscoverer;
+import com.google.cloud.flink.bigquery.source.reader.BigQuerySourceReader;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplitSerializer;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowAllocators;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.connector.source.Boundedness;
+import org.apache.flink.api.connector.source.Source;
+import org.apache.flink.api.connector.source.SourceReader;
+import org.apache.flink.api.connector.source.SourceReaderContext;
+import org.apache.flink.api.connector.source.SplitEnumerator;
+import org.apache.flink.api.connector.source.SplitEnumeratorContext;
+import org.apache.flink.api.java.typeutils.ResultTypeQueryable;
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.util.InstantiationUtil;
+import org.apache.flink.util.Preconditions;
+import org.apache.flink.util.UserCodeClassLoader;
+
+/**
+ * Source reading a BigQuery read session. Every read stream of the session is a split, handed out
+ * on demand by the {@link BigQuerySourceEnumerator}. Each reader reads up to {@code
+ * maxConcurrentStreams} streams at the same time and decodes them into at most {@code
+ * arrowMemoryLimitBytes} of Arrow buffers. A reader stops reading once it has emitted {@code limit}
+ * rows.
+ *
+ * <p>With a split discoverer the source is unbounded: after the initial read session, the
+ * enumerator keeps creating read sessions of the rows appended to the table, read by the same
+ * readers and deserializer. Every session selects the same fields, so they all have the schema of
+ * the initial one.
+ */
+public final class BigQuerySource
+    implements Source<RowData, BigQuerySourceSplit, BigQuerySourceEnumState>,
+        ResultTypeQueryable<RowData> {
+
+  private static final long serialVersionUID = 1L;
+  private final DeserializationSchema<RowData> deserializer;
+  private final ArrayList<String> readSessionStreams;
+  private final BigQueryClientFactory bigQueryReadClientFactory;
+  private final int maxConcurrentStreams;
+  private final long arrowMemoryLimitBytes;
+  private final long limit;
+  @Nullable private final BigQuerySplitDiscoverer splitDiscoverer;
+  @Nullable private final Instant initialHighWaterMark;
+
+  public BigQuerySource(
+      DeserializationSchema<RowData> deserializer,
+      ArrayList<String> readSessionStreams,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      int maxConcurrentStreams,
+      long arrowMemoryLimitBytes,
+      long limit) {
+    this(
+        deserializer,
+        readSessionStreams,
+        bigQueryReadClientFactory,
+        maxConcurrentStreams,
+        arrowMemoryLimitBytes,
+        limit,
+        null,
+        null);
+  }
+
+  /**
+   * @param splitDiscoverer creates the read sessions of the rows appended to the table, the source
+   *     is bounded without
+   * @param initialHighWaterMark the high-water mark of the read session of {@code
+   *     readSessionStreams}, if the source is unbounded
+   */
+  public BigQuerySource(
+      DeserializationSchema<RowData> deserializer,
+      ArrayList<String> readSessionStreams,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      int maxConcurrentStreams,
+      long arrowMemoryLimitBytes,
+      long limit,
+      @Nullable BigQuerySplitDiscoverer splitDiscoverer,
+      @Nullable Instant initialHighWaterMark) {
+    Preconditions.checkArgument(
+        maxConcurrentStreams > 0,
+        "maxConcurrentStreams must be positive: %s",
+        maxConcurrentStreams);
+    Preconditions.checkArgument(limit >= 0, "limit must not be negative: %s", limit);
+    this.deserializer = deserializer;
+    this.readSessionStreams = readSessionStreams;
+    this.bigQueryReadClientFactory = bigQueryReadClientFactory;
+    this.maxConcurrentStreams = maxConcurrentStreams;
+    this.arrowMemoryLimitBytes = arrowMemoryLimitBytes;
+    this.limit = limit;
+    this.splitDiscoverer = splitDiscoverer;
+    this.initialHighWaterMark = initialHighWaterMark;
+  }
+
+  @Override
+  public Boundedness getBoundedness() {
+    return splitDiscoverer == null ? Boundedness.BOUNDED : Boundedness.CONTINUOUS_UNBOUNDED;
+  }
+
+  @Override
+  public TypeInformation<RowData> getProducedType() {
+    return deserializer.getProducedType();
+  }
+
+  @Override
+  public SourceReader<RowData, BigQuerySourceSplit> createReader(
+      SourceReaderContext readerContext) {
+    BufferAllocator allocator =
+        ArrowAllocators.newChildAllocator(
+            "bigquery-source-" + readerContext.getIndexOfSubtask(), arrowMemoryLimitBytes);
+    return new BigQuerySourceReader(
+        () -> openDeserializer(readerContext, allocator),
+        bigQueryReadClientFactory,
+        maxConcurrentStreams,
+        allocator,
+        limit,
+        readerContext.getConfiguration(),
+        readerContext);
+  }
+
+  /**
+   * Deserializers keep decoding state, so every split reader, running on its own fetcher thread,
+   * gets a private copy. All copies decode into the bounded allocator of the reader.
+   */
+  private DeserializationSchema<RowData> openDeserializer(
+      SourceReaderContext readerContext, BufferAllocator allocator) {
+    try {
+      DeserializationSchema<RowData> copy =
+          InstantiationUtil.clone(
+              deserializer, readerContext.getUserCodeClassLoader().asClassLoader());
+      copy.open(
+          new DeserializationSchema.InitializationContext() {
+            @Override
+            public MetricGroup getMetricGroup() {
+              return readerContext.metricGroup();
+            }
+
+            @Override
+            public UserCodeClassLoader getUserCodeClassLoader() {
+              return readerContext.getUserCodeClassLoader();
+            }
+          });
+      if (copy instanceof ReadRowsResponseDeserializationSchema) {
+        ((ReadRowsResponseDeserializationSchema) copy).setAllocator(allocator);
+      }
+      return copy;
+    } catch (Exception ex) {
+      throw new FlinkBigQueryException("Error while opening the deserializer:", ex);
+    }
+  }
+
+  @Override
+  public SplitEnumerator<BigQuerySourceSplit, BigQuerySourceEnumState> createEnumerator(
+      SplitEnumeratorContext<BigQuerySourceSplit> enumContext) {
+    List<BigQuerySourceSplit> splits =
+        readSessionStreams.stream().map(BigQuerySourceSplit::new).collect(Collectors.toList());
+    return new BigQuerySourceEnumerator(enumContext, splits, splitDiscoverer, initialHighWaterMark);
+  }
+
+  @Override
+  public SplitEnumerator<BigQuerySourceSplit, BigQuerySourceEnumState> restoreEnumerator(
+      SplitEnumeratorContext<BigQuerySourceSplit> enumContext, BigQuerySourceEnumState checkpoint) {
+    return new BigQuerySourceEnumerator(
+        enumContext,
+        checkpoint.getRemainingSplits(),
+        checkpoint.getHandedOverRemainders(),
+        splitDiscoverer,
+        checkpoint.getHighWaterMark().orElse(initialHighWaterMark));
+  }
+
+  @Override
+  public SimpleVersionedSerializer<BigQuerySourceSplit> getSplitSerializer() {
+    return BigQuerySourceSplitSerializer.INSTANCE;
+  }
+
+  @Override
+  public SimpleVersionedSerializer<BigQuerySourceEnumState> getEnumeratorCheckpointSerializer() {
+    return BigQuerySourceEnumStateSerializer.INSTANCE;
+  }
+}
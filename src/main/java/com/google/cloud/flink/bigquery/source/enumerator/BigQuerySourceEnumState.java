@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.enumerator;
+
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Checkpointed state of the {@link BigQuerySourceEnumerator}: the splits not yet assigned, the
+ * remainder streams readers have handed over, and the high-water mark of the last read session of a
+ * continuous read.
+ */
+public class BigQuerySourceEnumState {
+
+  private final List<BigQuerySourceSplit> remainingSplits;
+  private final Set<String> handedOverRemainders;
+  @Nullable private final Instant highWaterMark;
+
+  public BigQuerySourceEnumState(List<BigQuerySourceSplit> remainingSplits) {
+    this(remainingSplits, null);
+  }
+
+  public BigQuerySourceEnumState(
+      List<BigQuerySourceSplit> remainingSplits, @Nullable Instant highWaterMark) {
+    this(remainingSplits, Collections.emptySet(), highWaterMark);
+  }
+
+  public BigQuerySourceEnumState(
+      List<BigQuerySourceSplit> remainingSplits,
+      Set<String> handedOverRemainders,
+      @Nullable Instant highWaterMark) {
+    this.remainingSplits = remainingSplits;
+    this.handedOverRemainders = handedOverRemainders;
+    this.highWaterMark = highWaterMark;
+  }
+
+  public List<BigQuerySourceSplit> getRemainingSplits() {
+    return remainingSplits;
+  }
+
+  public Set<String> getHandedOverRemainders() {
+    return handedOverRemainders;
+  }
+
+  public Optional<Instant> getHighWaterMark() {
+    return Optional.ofNullable(highWaterMark);
+  }
+}
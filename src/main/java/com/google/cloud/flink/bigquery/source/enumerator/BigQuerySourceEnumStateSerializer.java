@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.enumerator;
+
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplitSerializer;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+
+/** Serializer for the checkpointed {@link BigQuerySourceEnumState}. */
+public class BigQuerySourceEnumStateSerializer
+    implements SimpleVersionedSerializer<BigQuerySourceEnumState> {
+
+  public static final BigQuerySourceEnumStateSerializer INSTANCE =
+      new BigQuerySourceEnumStateSerializer();
+  // version 1 had no high-water mark, version 2 no handed over remainders
+  private static final int CURRENT_VERSION = 3;
+
+  @Override
+  public int getVersion() {
+    return CURRENT_VERSION;
+  }
+
+  @Override
+  public byte[] serialize(BigQuerySourceEnumState state) throws IOException {
+    DataOutputSerializer out = new DataOutputSerializer(256);
+    writeSplits(out, state.getRemainingSplits());
+    out.writeBoolean(state.getHighWaterMark().isPresent());
+    if (state.getHighWaterMark().isPresent()) {
+      out.writeLong(state.getHighWaterMark().get().getEpochSecond());
+      out.writeInt(state.getHighWaterMark().get().getNano());
+    }
+    out.writeInt(state.getHandedOverRemainders().size());
+    for (String remainderStream : state.getHandedOverRemainders()) {
+      out.writeUTF(remainderStream);
+    }
+    return out.getCopyOfBuffer();
+  }
+
+  @Override
+  public BigQuerySourceEnumState deserialize(int version, byte[] serialized) throws IOException {
+    if (version < 1 || version > CURRENT_VERSION) {
+      throw new IOException("Unknown version of BigQuerySourceEnumState: " + version);
+    }
+    DataInputDeserializer in = new DataInputDeserializer(serialized);
+    List<BigQuerySourceSplit> splits = readSplits(in);
+    Instant highWaterMark = null;
+    if (version >= 2 && in.readBoolean()) {
+      highWaterMark = Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+    Set<String> handedOverRemainders = new HashSet<>();
+    if (version >= 3) {
+      int numOfRemainders = in.readInt();
+      for (int i = 0; i < numOfRemainders; i++) {
+        handedOverRemainders.add(in.readUTF());
+      }
+    }
+    return new BigQuerySourceEnumState(splits, handedOverRemainders, highWaterMark);
+  }
+
+  private static void writeSplits(DataOutputSerializer out, List<BigQuerySourceSplit> splits)
+      throws IOException {
+    BigQuerySourceSplitSerializer splitSerializer = BigQuerySourceSplitSerializer.INSTANCE;
+    out.writeInt(splitSerializer.getVersion());
+    out.writeInt(splits.size());
+    for (BigQuerySourceSplit split : splits) {
+      byte[] serializedSplit = splitSerializer.serialize(split);
+      out.writeInt(serializedSplit.length);
+      out.write(serializedSplit);
+    }
+  }
+
+  private static List<BigQuerySourceSplit> readSplits(DataInputDeserializer in) throws IOException {
+    BigQuerySourceSplitSerializer splitSerializer = BigQuerySourceSplitSerializer.INSTANCE;
+    int splitVersion = in.readInt();
+    int numOfSplits = in.readInt();
+    List<BigQuerySourceSplit> splits = new ArrayList<>(numOfSplits);
+    for (int i = 0; i < numOfSplits; i++) {
+      byte[] serializedSplit = new byte[in.readInt()];
+      in.readFully(serializedSplit);
+      splits.add(splitSerializer.deserialize(splitVersion, serializedSplit));
+    }
+    return splits;
+  }
+}
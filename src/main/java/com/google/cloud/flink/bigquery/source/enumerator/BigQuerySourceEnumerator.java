@@ -0,0 +1,355 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.enumerator;
+
+import com.google.cloud.flink.bigquery.BigQueryMetadataCache;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderAckEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderClaimEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderGrantEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQuerySplitStreamRequestEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamProgressEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamSplitEvent;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import javax.annotation.Nullable;
+import org.apache.flink.api.connector.source.SourceEvent;
+import org.apache.flink.api.connector.source.SplitEnumerator;
+import org.apache.flink.api.connector.source.SplitEnumeratorContext;
+import org.apache.flink.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out the read streams of a BigQuery read session to the source readers. Splits are assigned
+ * lazily, one at a time, whenever a reader asks for more work, so faster readers end up reading
+ * more streams instead of idling next to a straggler.
+ *
+ * <p>Once all streams are handed out, a reader asking for work steals it instead: the enumerator
+ * picks the least advanced stream still below {@link #MAX_STRAGGLER_PROGRESS}, asks its reader to
+ * split it and assigns the remainder stream to the asking reader. Readers are only told there are
+ * no more splits once no steal is in flight, since a remainder may still come back; a remainder
+ * whose reader is no longer waiting for it is handed out like any other split.
+ *
+ * <p>The enumerator keeps the names of all remainders handed over to it. A reader restored with a
+ * remainder it had not seen acknowledged claims it before reading it: the enumerator takes the
+ * remainder out of the splits left to hand out and lets the reader read it, or tells the reader to
+ * drop it if it was assigned already. So every remainder is read once, whichever of the checkpoints
+ * of the enumerator and of the reader hold it.
+ *
+ * <p>A continuous read never runs out of splits. Every discovery interval the enumerator creates a
+ * read session of the rows appended since the previous one, off the coordinator thread, and hands
+ * its streams out like the others; readers asking for work when there is none wait for the next
+ * session. No session is created while splits are left to hand out, so the readers work through the
+ * backfill of the initial session at full speed, and the first session after it catches up on all
+ * rows appended since the backfill started.
+ */
+public class BigQuerySourceEnumerator
+    implements SplitEnumerator<BigQuerySourceSplit, BigQuerySourceEnumState> {
+
+  private static final Logger log = LoggerFactory.getLogger(BigQuerySourceEnumerator.class);
+  private final SplitEnumeratorContext<BigQuerySourceSplit> context;
+  // read by the discovery running on a worker thread
+  private final Deque<BigQuerySourceSplit> remainingSplits;
+  private final Map<String, StreamProgress> streamProgress = new HashMap<>();
+  // split id of the stream being split -> subtask waiting for its remainder
+  private final Map<String, Integer> pendingSteals = new HashMap<>();
+  private final Set<String> unsplittableStreams = new HashSet<>();
+  // remainder streams readers handed over, assigned or still remaining
+  private final Set<String> handedOverRemainders;
+  // subtasks told there are no more splits, they never get a split again
+  private final Set<Integer> finishedReaders = new HashSet<>();
+  // split requests waiting for the next read session of a continuous read, or for the steals in
+  // flight to resolve, a reader asks for several splits at once
+  private final List<Integer> splitRequests = new ArrayList<>();
+  @Nullable private final BigQuerySplitDiscoverer splitDiscoverer;
+  // read by the discovery running on a worker thread
+  @Nullable private volatile Instant highWaterMark;
+
+  /** Streams further read than this are close enough to done to not be worth splitting. */
+  static final double MAX_STRAGGLER_PROGRESS = 0.5;
+
+  public BigQuerySourceEnumerator(
+      SplitEnumeratorContext<BigQuerySourceSplit> context,
+      Collection<BigQuerySourceSplit> remainingSplits) {
+    this(context, remainingSplits, null, null);
+  }
+
+  public BigQuerySourceEnumerator(
+      SplitEnumeratorContext<BigQuerySourceSplit> context,
+      Collection<BigQuerySourceSplit> remainingSplits,
+      @Nullable BigQuerySplitDiscoverer splitDiscoverer,
+      @Nullable Instant highWaterMark) {
+    this(context, remainingSplits, Collections.emptySet(), splitDiscoverer, highWaterMark);
+  }
+
+  /**
+   * @param handedOverRemainders the remainder streams readers handed over before the checkpoint
+   * @param splitDiscoverer creates the read sessions of a continuous read, the read is bounded
+   *     without
+   * @param highWaterMark the high-water mark of the last read session of a continuous read
+   */
+  public BigQuerySourceEnumerator(
+      SplitEnumeratorContext<BigQuerySourceSplit> context,
+      Collection<BigQuerySourceSplit> remainingSplits,
+      Set<String> handedOverRemainders,
+      @Nullable BigQuerySplitDiscoverer splitDiscoverer,
+      @Nullable Instant highWaterMark) {
+    Preconditions.checkArgument(
+        splitDiscoverer == null || highWaterMark != null,
+        "A continuous read needs the high-water mark of its last read session.");
+    this.context = context;
+    this.remainingSplits = new ConcurrentLinkedDeque<>(remainingSplits);
+    this.handedOverRemainders = new HashSet<>(handedOverRemainders);
+    this.splitDiscoverer = splitDiscoverer;
+    this.highWaterMark = highWaterMark;
+  }
+
+  @Override
+  public void start() {
+    // the split discoverer creates its read sessions through the metadata cache of this JVM
+    if (context.metricGroup() != null) {
+      BigQueryMetadataCache.registerMetrics(context.metricGroup());
+    }
+    if (splitDiscoverer != null) {
+      long intervalMillis = splitDiscoverer.getOptions().getDiscoveryInterval().toMillis();
+      context.callAsync(
+          this::discoverSplits, this::handleDiscoveredSplits, intervalMillis, intervalMillis);
+    }
+  }
+
+  private DiscoveredSplits discoverSplits() {
+    Instant previousHighWaterMark = highWaterMark;
+    Instant nextHighWaterMark = splitDiscoverer.nextHighWaterMark();
+    // the next session reads the rows of this one as well once the readers need more work
+    if (!remainingSplits.isEmpty() || !nextHighWaterMark.isAfter(previousHighWaterMark)) {
+      return new DiscoveredSplits(previousHighWaterMark, previousHighWaterMark, new ArrayList<>());
+    }
+    return new DiscoveredSplits(
+        previousHighWaterMark,
+        nextHighWaterMark,
+        splitDiscoverer.discoverSplits(previousHighWaterMark, nextHighWaterMark));
+  }
+
+  private void handleDiscoveredSplits(@Nullable DiscoveredSplits discovered, Throwable error) {
+    if (error != null) {
+      log.warn("Failed to discover the rows appended to the table, retrying later", error);
+      return;
+    }
+    if (!discovered.previousHighWaterMark.equals(highWaterMark)) {
+      // a discovery started before the previous one was handled read the same rows
+      return;
+    }
+    if (discovered.nextHighWaterMark.equals(highWaterMark)) {
+      return;
+    }
+    log.info(
+        "Discovered {} splits of the rows up to {}",
+        discovered.splits.size(),
+        discovered.nextHighWaterMark);
+    highWaterMark = discovered.nextHighWaterMark;
+    remainingSplits.addAll(discovered.splits);
+    handleWaitingSplitRequests();
+  }
+
+  private void handleWaitingSplitRequests() {
+    List<Integer> requesters = new ArrayList<>(splitRequests);
+    splitRequests.clear();
+    requesters.forEach(requester -> handleSplitRequest(requester, null));
+  }
+
+  @Override
+  public void handleSplitRequest(int subtaskId, @Nullable String requesterHostname) {
+    if (!context.registeredReaders().containsKey(subtaskId)) {
+      // reader failed between sending the request and arrival here
+      return;
+    }
+    if (finishedReaders.contains(subtaskId)) {
+      // a request sent before the reader learnt there are no more splits
+      return;
+    }
+    BigQuerySourceSplit split = remainingSplits.poll();
+    if (split != null) {
+      log.info("Assigning split {} to subtask {}", split.splitId(), subtaskId);
+      context.assignSplit(split, subtaskId);
+    } else if (stealFor(subtaskId)) {
+      // the remainder of a straggler is on its way
+    } else if (splitDiscoverer != null || !pendingSteals.isEmpty()) {
+      // a steal in flight may still return its remainder to the enumerator
+      splitRequests.add(subtaskId);
+    } else {
+      log.info("No more splits available for subtask {}", subtaskId);
+      finishedReaders.add(subtaskId);
+      context.signalNoMoreSplits(subtaskId);
+    }
+  }
+
+  private boolean stealFor(int subtaskId) {
+    Optional<Map.Entry<String, StreamProgress>> straggler =
+        streamProgress.entrySet().stream()
+            .filter(entry -> entry.getValue().progress < MAX_STRAGGLER_PROGRESS)
+            .filter(entry -> !pendingSteals.containsKey(entry.getKey()))
+            .filter(entry -> !unsplittableStreams.contains(entry.getKey()))
+            .min(Comparator.comparingDouble(entry -> entry.getValue().progress));
+    if (!straggler.isPresent()) {
+      return false;
+    }
+    String splitId = straggler.get().getKey();
+    StreamProgress progress = straggler.get().getValue();
+    log.info(
+        "Asking subtask {} to split stream {} at progress {} for subtask {}",
+        progress.subtaskId,
+        splitId,
+        progress.progress,
+        subtaskId);
+    pendingSteals.put(splitId, subtaskId);
+    context.sendEventToSourceReader(
+        progress.subtaskId, new BigQuerySplitStreamRequestEvent(splitId));
+    return true;
+  }
+
+  @Override
+  public void handleSourceEvent(int subtaskId, SourceEvent sourceEvent) {
+    if (sourceEvent instanceof BigQueryStreamProgressEvent) {
+      BigQueryStreamProgressEvent progressEvent = (BigQueryStreamProgressEvent) sourceEvent;
+      if (progressEvent.getProgress() >= 1.0) {
+        streamProgress.remove(progressEvent.getSplitId());
+      } else {
+        streamProgress.put(
+            progressEvent.getSplitId(), new StreamProgress(subtaskId, progressEvent.getProgress()));
+      }
+    } else if (sourceEvent instanceof BigQueryStreamSplitEvent) {
+      handleStreamSplit(subtaskId, (BigQueryStreamSplitEvent) sourceEvent);
+    } else if (sourceEvent instanceof BigQueryRemainderClaimEvent) {
+      handleRemainderClaim(
+          subtaskId, ((BigQueryRemainderClaimEvent) sourceEvent).getRemainderStream());
+    }
+  }
+
+  private void handleRemainderClaim(int subtaskId, String remainderStream) {
+    boolean remaining = remainingSplits.removeIf(split -> split.splitId().equals(remainderStream));
+    // a remainder never handed over is only known to the checkpoint of the claiming reader
+    if (remaining || handedOverRemainders.add(remainderStream)) {
+      log.info("Subtask {} reads its restored remainder {}", subtaskId, remainderStream);
+      context.sendEventToSourceReader(subtaskId, new BigQueryRemainderGrantEvent(remainderStream));
+    } else {
+      log.info(
+          "Remainder {} restored by subtask {} was assigned already", remainderStream, subtaskId);
+      context.sendEventToSourceReader(subtaskId, new BigQueryRemainderAckEvent(remainderStream));
+    }
+  }
+
+  private void handleStreamSplit(int subtaskId, BigQueryStreamSplitEvent splitEvent) {
+    Integer requester = pendingSteals.remove(splitEvent.getSplitId());
+    if (!splitEvent.isSplit()) {
+      unsplittableStreams.add(splitEvent.getSplitId());
+      if (requester != null) {
+        handleSplitRequest(requester, null);
+      }
+      handleWaitingSplitRequests();
+      return;
+    }
+    BigQuerySourceSplit remainder = new BigQuerySourceSplit(splitEvent.getRemainderStream());
+    handedOverRemainders.add(remainder.splitId());
+    if (requester != null
+        && context.registeredReaders().containsKey(requester)
+        && !finishedReaders.contains(requester)) {
+      log.info("Assigning remainder {} to subtask {}", remainder.splitId(), requester);
+      context.assignSplit(remainder, requester);
+    } else {
+      remainingSplits.add(remainder);
+    }
+    context.sendEventToSourceReader(
+        subtaskId, new BigQueryRemainderAckEvent(splitEvent.getRemainderStream()));
+    handleWaitingSplitRequests();
+  }
+
+  @Override
+  public void addSplitsBack(List<BigQuerySourceSplit> splits, int subtaskId) {
+    log.info("Subtask {} failed, re-adding {} splits", subtaskId, splits.size());
+    splits.forEach(remainingSplits::addFirst);
+    splitRequests.removeIf(requester -> requester == subtaskId);
+    finishedReaders.remove(subtaskId);
+    // the failed reader will not answer, serve the readers waiting on it from the returned splits
+    List<Integer> requesters = new ArrayList<>();
+    Iterator<Map.Entry<String, StreamProgress>> progress = streamProgress.entrySet().iterator();
+    while (progress.hasNext()) {
+      Map.Entry<String, StreamProgress> entry = progress.next();
+      if (entry.getValue().subtaskId == subtaskId) {
+        progress.remove();
+        Integer requester = pendingSteals.remove(entry.getKey());
+        if (requester != null) {
+          requesters.add(requester);
+        }
+      }
+    }
+    requesters.forEach(requester -> handleSplitRequest(requester, null));
+    handleWaitingSplitRequests();
+  }
+
+  @Override
+  public void addReader(int subtaskId) {
+    // readers request splits on their own once they are started, a restarted reader needs splits
+    // again
+    finishedReaders.remove(subtaskId);
+  }
+
+  @Override
+  public BigQuerySourceEnumState snapshotState(long checkpointId) {
+    return new BigQuerySourceEnumState(
+        new ArrayList<>(remainingSplits), new HashSet<>(handedOverRemainders), highWaterMark);
+  }
+
+  @Override
+  public void close() {}
+
+  private static final class DiscoveredSplits {
+    private final Instant previousHighWaterMark;
+    private final Instant nextHighWaterMark;
+    private final List<BigQuerySourceSplit> splits;
+
+    private DiscoveredSplits(
+        Instant previousHighWaterMark,
+        Instant nextHighWaterMark,
+        List<BigQuerySourceSplit> splits) {
+      this.previousHighWaterMark = previousHighWaterMark;
+      this.nextHighWaterMark = nextHighWaterMark;
+      this.splits = splits;
+    }
+  }
+
+  private static final class StreamProgress {
+    private final int subtaskId;
+    private final double progress;
+
+    private StreamProgress(int subtaskId, double progress) {
+      this.subtaskId = subtaskId;
+      this.progress = progress;
+    }
+  }
+}
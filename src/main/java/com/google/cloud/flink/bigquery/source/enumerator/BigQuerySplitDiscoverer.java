@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.enumerator;
+
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.cloud.flink.bigquery.ReadSessionProvider;
+import com.google.cloud.flink.bigquery.source.BigQueryContinuousReadOptions;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import com.google.cloud.flink.bigquery.util.RowRestrictionTranslator;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the read sessions of a continuous read. Every session reads the rows whose tracked column
+ * lies between the high-water mark of the previous session, exclusive, and its own, inclusive. The
+ * high-water mark of a session is the time it is created at minus the lag of the read.
+ */
+public class BigQuerySplitDiscoverer implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ReadSessionProvider readSessionProvider;
+  private final List<String> selectedFields;
+  private final List<String> rowRestrictions;
+  private final BigQueryContinuousReadOptions options;
+
+  /**
+   * @param rowRestrictions restrictions every session applies on top of its high-water marks, such
+   *     as the filters pushed into the table source
+   */
+  public BigQuerySplitDiscoverer(
+      ReadSessionProvider readSessionProvider,
+      List<String> selectedFields,
+      List<String> rowRestrictions,
+      BigQueryContinuousReadOptions options) {
+    this.readSessionProvider = readSessionProvider;
+    this.selectedFields = selectedFields;
+    this.rowRestrictions = new ArrayList<>(rowRestrictions);
+    this.options = options;
+  }
+
+  public BigQueryContinuousReadOptions getOptions() {
+    return options;
+  }
+
+  /** Returns the high-water mark of a session created now. */
+  public Instant nextHighWaterMark() {
+    // BigQuery timestamps have microsecond precision
+    return Instant.now().minus(options.getLag()).truncatedTo(ChronoUnit.MICROS);
+  }
+
+  /**
+   * Creates the read session of the rows after {@code highWaterMark}, or all rows if it is empty,
+   * up to {@code nextHighWaterMark}.
+   */
+  public ReadSession createReadSession(Optional<Instant> highWaterMark, Instant nextHighWaterMark) {
+    List<String> restrictions = new ArrayList<>(rowRestrictions);
+    restrictions.add(
+        RowRestrictionTranslator.timestampRange(
+            options.getColumn(), highWaterMark, nextHighWaterMark));
+    return readSessionProvider.createReadSession(
+        selectedFields, Optional.of(String.join(" AND ", restrictions)), OptionalInt.empty());
+  }
+
+  /** Returns the splits of the rows after {@code highWaterMark} up to {@code nextHighWaterMark}. */
+  public List<BigQuerySourceSplit> discoverSplits(
+      Instant highWaterMark, Instant nextHighWaterMark) {
+    ReadSession readSession = createReadSession(Optional.of(highWaterMark), nextHighWaterMark);
+    // BigQuery returns no stream when no row matches
+    return readSession.getStreamsList().stream()
+        .map(ReadStream::getName)
+        .map(BigQuerySourceSplit::new)
+        .collect(Collectors.toList());
+  }
+}
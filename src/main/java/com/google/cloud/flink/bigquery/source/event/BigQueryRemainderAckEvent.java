@@ -0,0 +1,43 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.event;
+
+import org.apache.flink.api.connector.source.SourceEvent;
+
+/**
+ * Sent by the enumerator once it owns a remainder stream handed over in a {@link
+ * BigQueryStreamSplitEvent}. Until then the reader keeps the remainder in its checkpoints. Also
+ * sent in answer to a {@link BigQueryRemainderClaimEvent} for a remainder another reader got, which
+ * the claiming reader then drops.
+ */
+public class BigQueryRemainderAckEvent implements SourceEvent {
+
+  private static final long serialVersionUID = 1L;
+  private final String remainderStream;
+
+  public BigQueryRemainderAckEvent(String remainderStream) {
+    this.remainderStream = remainderStream;
+  }
+
+  public String getRemainderStream() {
+    return remainderStream;
+  }
+
+  @Override
+  public String toString() {
+    return "BigQueryRemainderAckEvent{remainderStream='" + remainderStream + "'}";
+  }
+}
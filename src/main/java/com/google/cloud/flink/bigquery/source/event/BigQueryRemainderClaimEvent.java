@@ -0,0 +1,42 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.event;
+
+import org.apache.flink.api.connector.source.SourceEvent;
+
+/**
+ * Sent by a restored reader for a remainder stream its checkpoint holds unacknowledged. The
+ * enumerator answers with a {@link BigQueryRemainderGrantEvent} if the reader is to read it, or
+ * with a {@link BigQueryRemainderAckEvent} if another reader got it already.
+ */
+public class BigQueryRemainderClaimEvent implements SourceEvent {
+
+  private static final long serialVersionUID = 1L;
+  private final String remainderStream;
+
+  public BigQueryRemainderClaimEvent(String remainderStream) {
+    this.remainderStream = remainderStream;
+  }
+
+  public String getRemainderStream() {
+    return remainderStream;
+  }
+
+  @Override
+  public String toString() {
+    return "BigQueryRemainderClaimEvent{remainderStream='" + remainderStream + "'}";
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.event;
+
+import org.apache.flink.api.connector.source.SourceEvent;
+
+/**
+ * Sent by the enumerator in answer to a {@link BigQueryRemainderClaimEvent} once no other reader
+ * can read the remainder stream, so the claiming reader reads it.
+ */
+public class BigQueryRemainderGrantEvent implements SourceEvent {
+
+  private static final long serialVersionUID = 1L;
+  private final String remainderStream;
+
+  public BigQueryRemainderGrantEvent(String remainderStream) {
+    this.remainderStream = remainderStream;
+  }
+
+  public String getRemainderStream() {
+    return remainderStream;
+  }
+
+  @Override
+  public String toString() {
+    return "BigQueryRemainderGrantEvent{remainderStream='" + remainderStream + "'}";
+  }
+}
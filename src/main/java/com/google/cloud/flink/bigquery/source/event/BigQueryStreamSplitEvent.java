@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.event;
+
+import javax.annotation.Nullable;
+import org.apache.flink.api.connector.source.SourceEvent;
+
+/**
+ * Sent by a source reader in reply to a {@link BigQuerySplitStreamRequestEvent}. Carries the
+ * remainder stream when the split succeeded, the reader keeps reading the primary stream.
+ */
+public class BigQueryStreamSplitEvent implements SourceEvent {
+
+  private static final long serialVersionUID = 1L;
+  private final String splitId;
+  @Nullable private final String primaryStream;
+  @Nullable private final String remainderStream;
+
+  public BigQueryStreamSplitEvent(
+      String splitId, @Nullable String primaryStream, @Nullable String remainderStream) {
+    this.splitId = splitId;
+    this.primaryStream = primaryStream;
+    this.remainderStream = remainderStream;
+  }
+
+  public static BigQueryStreamSplitEvent notSplit(String splitId) {
+    return new BigQueryStreamSplitEvent(splitId, null, null);
+  }
+
+  public String getSplitId() {
+    return splitId;
+  }
+
+  public boolean isSplit() {
+    return remainderStream != null;
+  }
+
+  @Nullable
+  public String getPrimaryStream() {
+    return primaryStream;
+  }
+
+  @Nullable
+  public String getRemainderStream() {
+    return remainderStream;
+  }
+
+  @Override
+  public String toString() {
+    return "BigQueryStreamSplitEvent{splitId='"
+        + splitId
+        + "', primaryStream='"
+        + primaryStream
+        + "', remainderStream='"
+        + remainderStream
+        + "'}";
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.reader;
+
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplitState;
+import org.apache.flink.api.connector.source.SourceOutput;
+import org.apache.flink.connector.base.source.reader.RecordEmitter;
+import org.apache.flink.table.data.RowData;
+
+/**
+ * Emits the deserialized rows of a read stream to the downstream operators and advances the row
+ * offset of the stream, so a checkpoint records exactly how far the stream has been read. It also
+ * counts the rows emitted by its reader, across all streams.
+ */
+public class BigQueryRecordEmitter
+    implements RecordEmitter<RowData, RowData, BigQuerySourceSplitState> {
+
+  private long emittedRecords;
+
+  @Override
+  public void emitRecord(
+      RowData record, SourceOutput<RowData> output, BigQuerySourceSplitState splitState) {
+    output.collect(record);
+    splitState.incrementOffset();
+    emittedRecords++;
+  }
+
+  public long getEmittedRecords() {
+    return emittedRecords;
+  }
+}
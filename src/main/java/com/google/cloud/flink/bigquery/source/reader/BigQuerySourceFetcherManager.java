@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.reader;
+
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.flink.connector.base.source.reader.RecordsWithSplitIds;
+import org.apache.flink.connector.base.source.reader.fetcher.SplitFetcher;
+import org.apache.flink.connector.base.source.reader.fetcher.SplitFetcherManager;
+import org.apache.flink.connector.base.source.reader.fetcher.SplitFetcherTask;
+import org.apache.flink.connector.base.source.reader.synchronization.FutureCompletingBlockingQueue;
+import org.apache.flink.table.data.RowData;
+
+/**
+ * Fetcher manager that reads every assigned read stream on a fetcher thread of its own, so the
+ * streams of a subtask are read concurrently. All fetchers hand their batches over through the
+ * shared bounded elements queue, which blocks them once the task thread falls behind. Fetchers shut
+ * down as soon as their stream is drained.
+ */
+public class BigQuerySourceFetcherManager
+    extends SplitFetcherManager<RowData, BigQuerySourceSplit> {
+
+  private final Map<String, SplitFetcher<RowData, BigQuerySourceSplit>> fetchersBySplit =
+      new ConcurrentHashMap<>();
+
+  public BigQuerySourceFetcherManager(
+      FutureCompletingBlockingQueue<RecordsWithSplitIds<RowData>> elementsQueue,
+      Supplier<BigQuerySourceSplitReader> splitReaderSupplier) {
+    super(elementsQueue, splitReaderSupplier::get);
+  }
+
+  @Override
+  public void addSplits(List<BigQuerySourceSplit> splitsToAdd) {
+    for (BigQuerySourceSplit split : splitsToAdd) {
+      SplitFetcher<RowData, BigQuerySourceSplit> fetcher = createSplitFetcher();
+      fetchersBySplit.put(split.splitId(), fetcher);
+      fetcher.addSplits(Collections.singletonList(split));
+      startFetcher(fetcher);
+    }
+  }
+
+  /**
+   * Asks the fetcher reading the given split to split its stream. Returns false if no fetcher reads
+   * the split anymore.
+   */
+  public boolean splitStream(String splitId) {
+    SplitFetcher<RowData, BigQuerySourceSplit> fetcher = fetchersBySplit.get(splitId);
+    if (fetcher == null) {
+      return false;
+    }
+    BigQuerySourceSplitReader splitReader = (BigQuerySourceSplitReader) fetcher.getSplitReader();
+    fetcher.enqueueTask(
+        new SplitFetcherTask() {
+          @Override
+          public boolean run() {
+            splitReader.splitCurrentStream(splitId);
+            return true;
+          }
+
+          @Override
+          public void wakeUp() {}
+        });
+    return true;
+  }
+
+  public void onSplitsFinished(Collection<String> splitIds) {
+    splitIds.forEach(fetchersBySplit::remove);
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.reader;
+
+import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderAckEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderClaimEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderGrantEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQuerySplitStreamRequestEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamSplitEvent;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplitState;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowAllocators;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.connector.source.ReaderOutput;
+import org.apache.flink.api.connector.source.SourceEvent;
+import org.apache.flink.api.connector.source.SourceReaderContext;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.connector.base.source.reader.RecordsWithSplitIds;
+import org.apache.flink.connector.base.source.reader.SourceReaderBase;
+import org.apache.flink.connector.base.source.reader.SourceReaderOptions;
+import org.apache.flink.connector.base.source.reader.synchronization.FutureCompletingBlockingQueue;
+import org.apache.flink.core.io.InputStatus;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.data.RowData;
+
+/**
+ * Source reader that keeps up to {@code maxConcurrentStreams} read streams in flight, each one read
+ * by its own fetcher, and asks the enumerator for a new stream whenever one is drained.
+ *
+ * <p>The reader also takes part in work stealing: it forwards the stream progress reported by its
+ * fetchers to the enumerator and splits a straggling stream when the enumerator asks for it. A
+ * remainder stream handed to the enumerator stays in the checkpoints of this reader until the
+ * enumerator acknowledges it, so a failure in between never loses it. A reader restored with such a
+ * remainder claims it from the enumerator and only reads it once the enumerator grants the claim,
+ * so the remainder is not read a second time by the reader it was assigned to.
+ *
+ * <p>All Arrow buffers of the reader come from one bounded allocator, whose allocated, peak and
+ * limit bytes are reported as metrics of the {@code arrow} group.
+ *
+ * <p>A reader of a limited scan ends its input once it has emitted {@code limit} rows. Its fetchers
+ * stop reading, and cancel their streams, as soon as they have fetched that many rows together, and
+ * it requests no new stream from then on.
+ */
+public class BigQuerySourceReader
+    extends SourceReaderBase<RowData, RowData, BigQuerySourceSplit, BigQuerySourceSplitState> {
+
+  private final int maxConcurrentStreams;
+  private final BufferAllocator allocator;
+  private final long limit;
+  private final AtomicLong fetchedRows;
+  private final BigQueryRecordEmitter recordEmitter;
+  private final FutureCompletingBlockingQueue<RecordsWithSplitIds<RowData>> elementsQueue;
+  private final BigQuerySourceFetcherManager fetcherManager;
+  private final Queue<SourceEvent> streamEvents;
+  private final Set<String> pendingStreamSplits = new HashSet<>();
+  private final Map<String, String> primaryStreams = new HashMap<>();
+  // remainders handed to the enumerator, or restored and claimed from it, not acknowledged yet
+  private final Map<String, BigQuerySourceSplit> unacknowledgedRemainders = new HashMap<>();
+  // restored remainders claimed from the enumerator, and not read until it grants them
+  private final Set<String> claimedRemainders = new HashSet<>();
+  private boolean noMoreSplits;
+
+  public BigQuerySourceReader(
+      Supplier<DeserializationSchema<RowData>> deserializerSupplier,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      int maxConcurrentStreams,
+      BufferAllocator allocator,
+      long limit,
+      Configuration config,
+      SourceReaderContext context) {
+    this(
+        createElementsQueue(maxConcurrentStreams, config),
+        new ConcurrentLinkedQueue<>(),
+        new AtomicLong(),
+        new BigQueryRecordEmitter(),
+        deserializerSupplier,
+        bigQueryReadClientFactory,
+        maxConcurrentStreams,
+        allocator,
+        limit,
+        config,
+        context);
+  }
+
+  private BigQuerySourceReader(
+      FutureCompletingBlockingQueue<RecordsWithSplitIds<RowData>> elementsQueue,
+      Queue<SourceEvent> streamEvents,
+      AtomicLong fetchedRows,
+      BigQueryRecordEmitter recordEmitter,
+      Supplier<DeserializationSchema<RowData>> deserializerSupplier,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      int maxConcurrentStreams,
+      BufferAllocator allocator,
+      long limit,
+      Configuration config,
+      SourceReaderContext context) {
+    super(
+        elementsQueue,
+        new BigQuerySourceFetcherManager(
+            elementsQueue,
+            () ->
+                new BigQuerySourceSplitReader(
+                    deserializerSupplier.get(),
+                    bigQueryReadClientFactory,
+                    event -> {
+                      streamEvents.add(event);
+                      // wake up the task thread, so the event is forwarded without delay
+                      elementsQueue.notifyAvailable();
+                    },
+                    fetchedRows,
+                    limit)),
+        recordEmitter,
+        config,
+        context);
+    this.fetcherManager = (BigQuerySourceFetcherManager) splitFetcherManager;
+    this.streamEvents = streamEvents;
+    this.maxConcurrentStreams = maxConcurrentStreams;
+    this.allocator = allocator;
+    this.limit = limit;
+    this.fetchedRows = fetchedRows;
+    this.recordEmitter = recordEmitter;
+    this.elementsQueue = elementsQueue;
+    registerMemoryMetrics(context.metricGroup().addGroup("arrow"), allocator);
+  }
+
+  private static void registerMemoryMetrics(MetricGroup group, BufferAllocator allocator) {
+    group.gauge("allocatedBytes", (Gauge<Long>) allocator::getAllocatedMemory);
+    group.gauge("peakAllocatedBytes", (Gauge<Long>) allocator::getPeakMemoryAllocation);
+    group.gauge("limitBytes", (Gauge<Long>) allocator::getLimit);
+  }
+
+  /**
+   * Every in-flight stream may park one decoded batch in the queue, so the capacity is never below
+   * the number of concurrent streams. Beyond that, fetchers block until the task thread catches up.
+   */
+  private static FutureCompletingBlockingQueue<RecordsWithSplitIds<RowData>> createElementsQueue(
+      int maxConcurrentStreams, Configuration config) {
+    int capacity =
+        Math.max(maxConcurrentStreams, config.get(SourceReaderOptions.ELEMENT_QUEUE_CAPACITY));
+    return new FutureCompletingBlockingQueue<>(capacity);
+  }
+
+  @Override
+  public void start() {
+    // the claims reach the enumerator before the split requests
+    for (String remainderStream : claimedRemainders) {
+      context.sendSourceEventToCoordinator(new BigQueryRemainderClaimEvent(remainderStream));
+    }
+    if (limit == 0) {
+      return;
+    }
+    for (int i = getNumberOfCurrentlyAssignedSplits() + claimedRemainders.size();
+        i < maxConcurrentStreams;
+        i++) {
+      context.sendSplitRequest();
+    }
+  }
+
+  /** Holds back restored remainders the enumerator has not acknowledged until they are claimed. */
+  @Override
+  public void addSplits(List<BigQuerySourceSplit> splits) {
+    List<BigQuerySourceSplit> readableSplits = new ArrayList<>();
+    for (BigQuerySourceSplit split : splits) {
+      if (split.isUnacknowledgedRemainder()) {
+        unacknowledgedRemainders.put(split.splitId(), split);
+        claimedRemainders.add(split.splitId());
+      } else {
+        readableSplits.add(split);
+      }
+    }
+    if (!readableSplits.isEmpty()) {
+      super.addSplits(readableSplits);
+    }
+  }
+
+  @Override
+  public InputStatus pollNext(ReaderOutput<RowData> output) throws Exception {
+    if (recordEmitter.getEmittedRecords() >= limit) {
+      forwardStreamEvents();
+      return InputStatus.END_OF_INPUT;
+    }
+    InputStatus status = super.pollNext(output);
+    forwardStreamEvents();
+    return status;
+  }
+
+  private void forwardStreamEvents() {
+    SourceEvent event;
+    while ((event = streamEvents.poll()) != null) {
+      if (event instanceof BigQueryStreamSplitEvent) {
+        BigQueryStreamSplitEvent splitEvent = (BigQueryStreamSplitEvent) event;
+        pendingStreamSplits.remove(splitEvent.getSplitId());
+        if (splitEvent.isSplit()) {
+          primaryStreams.put(splitEvent.getSplitId(), splitEvent.getPrimaryStream());
+          unacknowledgedRemainders.put(
+              splitEvent.getRemainderStream(),
+              new BigQuerySourceSplit(splitEvent.getRemainderStream(), 0L, true));
+        }
+      }
+      context.sendSourceEventToCoordinator(event);
+    }
+  }
+
+  @Override
+  public void handleSourceEvents(SourceEvent sourceEvent) {
+    if (sourceEvent instanceof BigQuerySplitStreamRequestEvent) {
+      String splitId = ((BigQuerySplitStreamRequestEvent) sourceEvent).getSplitId();
+      if (fetcherManager.splitStream(splitId)) {
+        pendingStreamSplits.add(splitId);
+      } else {
+        context.sendSourceEventToCoordinator(BigQueryStreamSplitEvent.notSplit(splitId));
+      }
+    } else if (sourceEvent instanceof BigQueryRemainderAckEvent) {
+      String remainderStream = ((BigQueryRemainderAckEvent) sourceEvent).getRemainderStream();
+      unacknowledgedRemainders.remove(remainderStream);
+      if (claimedRemainders.remove(remainderStream) && !noMoreSplits && fetchedRows.get() < limit) {
+        // a claimed remainder another reader got, ask for other work in its place
+        context.sendSplitRequest();
+      }
+    } else if (sourceEvent instanceof BigQueryRemainderGrantEvent) {
+      String remainderStream = ((BigQueryRemainderGrantEvent) sourceEvent).getRemainderStream();
+      BigQuerySourceSplit remainder = unacknowledgedRemainders.remove(remainderStream);
+      if (claimedRemainders.remove(remainderStream)) {
+        addSplits(
+            Collections.singletonList(
+                new BigQuerySourceSplit(remainder.getStreamName(), remainder.getOffset())));
+      }
+    }
+  }
+
+  @Override
+  public List<BigQuerySourceSplit> snapshotState(long checkpointId) {
+    List<BigQuerySourceSplit> splits = super.snapshotState(checkpointId);
+    splits.addAll(unacknowledgedRemainders.values());
+    return splits;
+  }
+
+  @Override
+  public void notifyNoMoreSplits() {
+    // the enumerator ignores any further split request
+    noMoreSplits = true;
+    super.notifyNoMoreSplits();
+  }
+
+  @Override
+  protected void onSplitFinished(Map<String, BigQuerySourceSplitState> finishedSplitIds) {
+    // a split request answered right before the stream ended must reach the enumerator first
+    forwardStreamEvents();
+    fetcherManager.onSplitsFinished(finishedSplitIds.keySet());
+    for (String splitId : finishedSplitIds.keySet()) {
+      primaryStreams.remove(splitId);
+      if (pendingStreamSplits.remove(splitId)) {
+        context.sendSourceEventToCoordinator(BigQueryStreamSplitEvent.notSplit(splitId));
+      }
+      if (!noMoreSplits && fetchedRows.get() < limit) {
+        context.sendSplitRequest();
+      }
+    }
+  }
+
+  /**
+   * Closes the Arrow allocator of the reader once the fetchers are stopped, releasing the batches
+   * nobody is going to emit anymore first.
+   */
+  @Override
+  public void close() throws Exception {
+    try {
+      super.close();
+    } finally {
+      RecordsWithSplitIds<RowData> records;
+      while ((records = elementsQueue.poll()) != null) {
+        records.recycle();
+      }
+      ArrowAllocators.close(allocator);
+    }
+  }
+
+  @Override
+  protected BigQuerySourceSplitState initializedState(BigQuerySourceSplit split) {
+    return new BigQuerySourceSplitState(split);
+  }
+
+  @Override
+  protected BigQuerySourceSplit toSplitType(String splitId, BigQuerySourceSplitState splitState) {
+    BigQuerySourceSplit split = splitState.toBigQuerySourceSplit();
+    String primaryStream = primaryStreams.get(splitId);
+    // rows before the split point have the same offsets in the primary stream
+    return primaryStream == null
+        ? split
+        : new BigQuerySourceSplit(primaryStream, split.getOffset());
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.reader;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.bigquery.connector.common.ReadRowsHelper;
+import com.google.cloud.bigquery.connector.common.ReadRowsHelper.Options;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.SplitReadStreamRequest;
+import com.google.cloud.bigquery.storage.v1.SplitReadStreamResponse;
+import com.google.cloud.flink.bigquery.ReadRowsResponseDeserializationSchema;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamProgressEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamSplitEvent;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.connector.source.SourceEvent;
+import org.apache.flink.connector.base.source.reader.RecordsBySplits;
+import org.apache.flink.connector.base.source.reader.RecordsWithSplitIds;
+import org.apache.flink.connector.base.source.reader.splitreader.SplitReader;
+import org.apache.flink.connector.base.source.reader.splitreader.SplitsAddition;
+import org.apache.flink.connector.base.source.reader.splitreader.SplitsChange;
+import org.apache.flink.table.data.RowData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the read streams assigned to its fetcher one after another, deserializing every {@link
+ * ReadRowsResponse} into {@link RowData}. Every fetcher owns its split reader and deserializer, the
+ * {@link BigQuerySourceFetcherManager} runs one fetcher per read stream.
+ *
+ * <p>The reader reports the progress of its stream and, when asked to, splits the unread part of
+ * the stream off with {@code SplitReadStream}. It then continues on the primary stream from the
+ * same row offset and hands the remainder stream back through {@code streamEvents}.
+ *
+ * <p>All split readers of a source reader add the rows they fetch to {@code fetchedRows}. Once it
+ * reaches {@code limit}, they finish their streams, closing them without reading further.
+ */
+public class BigQuerySourceSplitReader implements SplitReader<RowData, BigQuerySourceSplit> {
+
+  private static final Logger log = LoggerFactory.getLogger(BigQuerySourceSplitReader.class);
+  private static final double PROGRESS_REPORT_STEP = 0.05;
+  private final DeserializationSchema<RowData> deserializer;
+  private final BigQueryClientFactory bigQueryReadClientFactory;
+  private final Consumer<SourceEvent> streamEvents;
+  private final AtomicLong fetchedRows;
+  private final long limit;
+  private final Queue<BigQuerySourceSplit> splits = new ArrayDeque<>();
+  @Nullable private BigQuerySourceSplit currentSplit;
+  @Nullable private String currentStreamName;
+  private long readOffset;
+  private double progress;
+  private double reportedProgress;
+  @Nullable private ReadRowsHelper readRowsHelper;
+  @Nullable private Iterator<ReadRowsResponse> readRows;
+
+  public BigQuerySourceSplitReader(
+      DeserializationSchema<RowData> deserializer,
+      BigQueryClientFactory bigQueryReadClientFactory,
+      Consumer<SourceEvent> streamEvents,
+      AtomicLong fetchedRows,
+      long limit) {
+    this.deserializer = deserializer;
+    this.bigQueryReadClientFactory = bigQueryReadClientFactory;
+    this.streamEvents = streamEvents;
+    this.fetchedRows = fetchedRows;
+    this.limit = limit;
+  }
+
+  @Override
+  public RecordsWithSplitIds<RowData> fetch() throws IOException {
+    if (readRows == null && limitReached()) {
+      return finishQueuedSplits();
+    }
+    if (readRows == null && !openNextSplit()) {
+      return new RecordsBySplits<>(Collections.emptyMap(), Collections.emptySet());
+    }
+    String splitId = currentSplit.splitId();
+    Map<String, Collection<RowData>> recordsBySplit = new HashMap<>();
+    Set<String> finishedSplits = new HashSet<>();
+    Runnable release = () -> {};
+    if (readRows.hasNext()) {
+      ReadRowsResponse response = readRows.next();
+      readOffset += response.getRowCount();
+      fetchedRows.addAndGet(response.getRowCount());
+      updateProgress(splitId, response.getStats().getProgress().getAtResponseEnd());
+      List<RowData> rows = new ArrayList<>();
+      release = deserialize(response, rows);
+      recordsBySplit.put(splitId, rows);
+    }
+    if (limitReached() || !readRows.hasNext()) {
+      finishedSplits.add(splitId);
+      streamEvents.accept(new BigQueryStreamProgressEvent(splitId, 1.0));
+      closeCurrentSplit();
+    }
+    return new ReleasingRecords(new RecordsBySplits<>(recordsBySplit, finishedSplits), release);
+  }
+
+  private boolean limitReached() {
+    return fetchedRows.get() >= limit;
+  }
+
+  /** Finishes the streams assigned after the limit was reached, without opening them. */
+  private RecordsWithSplitIds<RowData> finishQueuedSplits() {
+    Set<String> finishedSplits = new HashSet<>();
+    BigQuerySourceSplit split;
+    while ((split = splits.poll()) != null) {
+      finishedSplits.add(split.splitId());
+    }
+    return new RecordsBySplits<>(Collections.emptyMap(), finishedSplits);
+  }
+
+  private void updateProgress(String splitId, double atResponseEnd) {
+    progress = atResponseEnd;
+    if (progress - reportedProgress >= PROGRESS_REPORT_STEP) {
+      reportedProgress = progress;
+      streamEvents.accept(new BigQueryStreamProgressEvent(splitId, progress));
+    }
+  }
+
+  /**
+   * Splits the stream currently read in the middle of its unread part. Runs on the fetcher thread
+   * between two fetches, always answers with a {@link BigQueryStreamSplitEvent}.
+   */
+  void splitCurrentStream(String splitId) {
+    if (currentSplit == null || !currentSplit.splitId().equals(splitId)) {
+      streamEvents.accept(BigQueryStreamSplitEvent.notSplit(splitId));
+      return;
+    }
+    SplitReadStreamResponse response;
+    try {
+      response =
+          bigQueryReadClientFactory
+              .getBigQueryReadClient()
+              .splitReadStream(
+                  SplitReadStreamRequest.newBuilder()
+                      .setName(currentStreamName)
+                      .setFraction(progress + (1 - progress) / 2)
+                      .build());
+    } catch (ApiException ex) {
+      log.warn("Failed to split stream {}, keep reading it", currentStreamName, ex);
+      streamEvents.accept(BigQueryStreamSplitEvent.notSplit(splitId));
+      return;
+    }
+    if (response.getPrimaryStream().getName().isEmpty()
+        || response.getRemainderStream().getName().isEmpty()) {
+      log.info("Stream {} can no longer be split", currentStreamName);
+      streamEvents.accept(BigQueryStreamSplitEvent.notSplit(splitId));
+      return;
+    }
+    String primaryStream = response.getPrimaryStream().getName();
+    closeReadRows();
+    openStream(primaryStream);
+    try {
+      // the primary stream rejects the offset once the split point is already behind us
+      readRows.hasNext();
+    } catch (FailedPreconditionException ex) {
+      log.info("Stream {} was read past the split point, keep reading it", currentStreamName);
+      closeReadRows();
+      openStream(currentStreamName);
+      streamEvents.accept(BigQueryStreamSplitEvent.notSplit(splitId));
+      return;
+    }
+    log.info(
+        "Split stream {} at row offset {}, continuing on {} and handing over {}",
+        currentStreamName,
+        readOffset,
+        primaryStream,
+        response.getRemainderStream().getName());
+    currentStreamName = primaryStream;
+    progress = 0;
+    reportedProgress = 0;
+    streamEvents.accept(
+        new BigQueryStreamSplitEvent(
+            splitId, primaryStream, response.getRemainderStream().getName()));
+  }
+
+  private boolean openNextSplit() {
+    currentSplit = splits.poll();
+    if (currentSplit == null) {
+      return false;
+    }
+    if (currentSplit.getOffset() > 0) {
+      log.info(
+          "Resuming stream {} from row offset {}",
+          currentSplit.getStreamName(),
+          currentSplit.getOffset());
+    }
+    currentStreamName = currentSplit.getStreamName();
+    readOffset = currentSplit.getOffset();
+    progress = 0;
+    reportedProgress = 0;
+    openStream(currentStreamName);
+    return true;
+  }
+
+  private void openStream(String streamName) {
+    ReadRowsRequest.Builder readRowsRequest =
+        ReadRowsRequest.newBuilder().setReadStream(streamName).setOffset(readOffset);
+    readRowsHelper = new ReadRowsHelper(bigQueryReadClientFactory, readRowsRequest, readOptions());
+    readRows = readRowsHelper.readRows();
+  }
+
+  private Runnable deserialize(ReadRowsResponse response, List<RowData> outputCollector) {
+    Runnable release = () -> {};
+    try {
+      if (deserializer instanceof ReadRowsResponseDeserializationSchema) {
+        release =
+            ((ReadRowsResponseDeserializationSchema) deserializer)
+                .deserialize(response, new ListCollector<>(outputCollector));
+      } else if (response.hasArrowRecordBatch()) {
+        deserializer.deserialize(response.toByteArray(), new ListCollector<>(outputCollector));
+      } else {
+        // a plain schema only ever decodes the first record of an AvroRows block
+        throw new FlinkBigQueryException(
+            "Avro rows need a ReadRowsResponseDeserializationSchema, got "
+                + deserializer.getClass().getName());
+      }
+    } catch (IOException ex) {
+      log.error("Error while deserialization:", ex);
+      throw new FlinkBigQueryException("Error while deserialization:", ex);
+    }
+    return release;
+  }
+
+  private static Options readOptions() {
+    return new ReadRowsHelper.Options(
+        /* maxReadRowsRetries= */ 5, Optional.of("endpoint"), /* backgroundParsingThreads= */ 5, 1);
+  }
+
+  private void closeReadRows() {
+    if (readRowsHelper != null) {
+      readRowsHelper.close();
+    }
+    readRowsHelper = null;
+    readRows = null;
+  }
+
+  private void closeCurrentSplit() {
+    closeReadRows();
+    currentSplit = null;
+    currentStreamName = null;
+  }
+
+  @Override
+  public void handleSplitsChanges(SplitsChange<BigQuerySourceSplit> splitsChanges) {
+    if (!(splitsChanges instanceof SplitsAddition)) {
+      throw new UnsupportedOperationException(
+          String.format("The SplitChange type of %s is not supported.", splitsChanges.getClass()));
+    }
+    splits.addAll(splitsChanges.splits());
+  }
+
+  @Override
+  public void wakeUp() {
+    // fetch() only blocks on a single ReadRowsResponse, there is nothing to interrupt
+  }
+
+  @Override
+  public void close() {
+    closeCurrentSplit();
+    if (deserializer instanceof ReadRowsResponseDeserializationSchema) {
+      ((ReadRowsResponseDeserializationSchema) deserializer).close();
+    }
+  }
+
+  /**
+   * Records of one fetch, releasing the memory backing its rows once the source reader has emitted
+   * all of them.
+   */
+  private static class ReleasingRecords implements RecordsWithSplitIds<RowData> {
+
+    private final RecordsWithSplitIds<RowData> records;
+    private final Runnable release;
+
+    private ReleasingRecords(RecordsWithSplitIds<RowData> records, Runnable release) {
+      this.records = records;
+      this.release = release;
+    }
+
+    @Nullable
+    @Override
+    public String nextSplit() {
+      return records.nextSplit();
+    }
+
+    @Nullable
+    @Override
+    public RowData nextRecordFromSplit() {
+      return records.nextRecordFromSplit();
+    }
+
+    @Override
+    public Set<String> finishedSplits() {
+      return records.finishedSplits();
+    }
+
+    @Override
+    public void recycle() {
+      records.recycle();
+      release.run();
+    }
+  }
+}
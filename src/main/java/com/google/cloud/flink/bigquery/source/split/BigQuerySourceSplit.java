@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.split;
+
+import java.io.Serializable;
+import java.util.Objects;
+import org.apache.flink.api.connector.source.SourceSplit;
+
+/**
+ * A split of the BigQuery source, backed by a single read stream of a read session. The offset is
+ * the number of rows of the stream already emitted, reading resumes from that row.
+ *
+ * <p>A split may also be the remainder of a stream split by its reader that the enumerator has not
+ * acknowledged yet. The reader keeps such a split in its checkpoints without reading it, and once
+ * restored only reads it if the enumerator confirms that no other reader got it.
+ */
+public class BigQuerySourceSplit implements SourceSplit, Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private final String streamName;
+  private final long offset;
+  private final boolean unacknowledgedRemainder;
+
+  public BigQuerySourceSplit(String streamName) {
+    this(streamName, 0L);
+  }
+
+  public BigQuerySourceSplit(String streamName, long offset) {
+    this(streamName, offset, false);
+  }
+
+  public BigQuerySourceSplit(String streamName, long offset, boolean unacknowledgedRemainder) {
+    this.streamName = streamName;
+    this.offset = offset;
+    this.unacknowledgedRemainder = unacknowledgedRemainder;
+  }
+
+  public String getStreamName() {
+    return streamName;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public boolean isUnacknowledgedRemainder() {
+    return unacknowledgedRemainder;
+  }
+
+  @Override
+  public String splitId() {
+    return streamName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    BigQuerySourceSplit that = (BigQuerySourceSplit) o;
+    return streamName.equals(that.streamName)
+        && offset == that.offset
+        && unacknowledgedRemainder == that.unacknowledgedRemainder;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(streamName, offset, unacknowledgedRemainder);
+  }
+
+  @Override
+  public String toString() {
+    return "BigQuerySourceSplit{streamName='"
+        + streamName
+        + "', offset="
+        + offset
+        + ", unacknowledgedRemainder="
+        + unacknowledgedRemainder
+        + "}";
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.split;
+
+import java.io.IOException;
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+
+/** Serializer for {@link BigQuerySourceSplit}, used for checkpoints and split assignment. */
+public class BigQuerySourceSplitSerializer
+    implements SimpleVersionedSerializer<BigQuerySourceSplit> {
+
+  public static final BigQuerySourceSplitSerializer INSTANCE = new BigQuerySourceSplitSerializer();
+  // version 1 had no unacknowledged remainders
+  private static final int CURRENT_VERSION = 2;
+
+  @Override
+  public int getVersion() {
+    return CURRENT_VERSION;
+  }
+
+  @Override
+  public byte[] serialize(BigQuerySourceSplit split) throws IOException {
+    DataOutputSerializer out = new DataOutputSerializer(64);
+    out.writeUTF(split.getStreamName());
+    out.writeLong(split.getOffset());
+    out.writeBoolean(split.isUnacknowledgedRemainder());
+    return out.getCopyOfBuffer();
+  }
+
+  @Override
+  public BigQuerySourceSplit deserialize(int version, byte[] serialized) throws IOException {
+    if (version < 1 || version > CURRENT_VERSION) {
+      throw new IOException("Unknown version of BigQuerySourceSplit: " + version);
+    }
+    DataInputDeserializer in = new DataInputDeserializer(serialized);
+    String streamName = in.readUTF();
+    long offset = in.readLong();
+    boolean unacknowledgedRemainder = version >= 2 && in.readBoolean();
+    return new BigQuerySourceSplit(streamName, offset, unacknowledgedRemainder);
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.source.split;
+
+/** Mutable reader-side state of a {@link BigQuerySourceSplit}, tracking the emitted rows. */
+public class BigQuerySourceSplitState {
+
+  private final String streamName;
+  private long offset;
+
+  public BigQuerySourceSplitState(BigQuerySourceSplit split) {
+    this.streamName = split.getStreamName();
+    this.offset = split.getOffset();
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public void incrementOffset() {
+    offset++;
+  }
+
+  public BigQuerySourceSplit toBigQuerySourceSplit() {
+    return new BigQuerySourceSplit(streamName, offset);
+  }
+}
@@ -65,6 +65,7 @@ import net.sf.jsqlparser.statement.select.SelectItem;
 import net.sf.jsqlparser.util.TablesNamesFinder;
 import org.apache.flink.configuration.ConfigOption;
 import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.MemorySize;
 import org.apache.flink.configuration.ReadableConfig;
 import org.apache.hadoop.conf.Configuration;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -120,6 +121,7 @@ public class FlinkBigQueryConfig implements BigQueryConfig, Serializable {
 
   public static final int MIN_BUFFERED_RESPONSES_PER_STREAM = 1;
   public static final int MIN_STREAMS_PER_PARTITION = 1;
+  public static final MemorySize DEFAULT_ARROW_MEMORY_LIMIT = MemorySize.ofMebiBytes(512);
   private static final int DEFAULT_BIGQUERY_CLIENT_RETRIES = 10;
   private static final String ARROW_COMPRESSION_CODEC_OPTION = "arrowCompressionCodec";
   private static final WriteMethod DEFAULT_WRITE_METHOD = WriteMethod.INDIRECT;
@@ -165,6 +167,7 @@ public class FlinkBigQueryConfig implements BigQueryConfig, Serializable {
   private int numBackgroundThreadsPerStream = 0;
   private int numPrebufferReadRowsResponses = MIN_BUFFERED_RESPONSES_PER_STREAM;
   private int numStreamsPerPartition = MIN_STREAMS_PER_PARTITION;
+  private long arrowMemoryLimitBytes = DEFAULT_ARROW_MEMORY_LIMIT.getBytes();
   private FlinkBigQueryProxyAndHttpConfig flinkBigQueryProxyAndHttpConfig;
   private CompressionCodec arrowCompressionCodec = DEFAULT_ARROW_COMPRESSION_CODEC;
   private WriteMethod writeMethod = DEFAULT_WRITE_METHOD;
@@ -342,6 +345,15 @@ public class FlinkBigQueryConfig implements BigQueryConfig, Serializable {
         getAnyOption(globalOptions, options, "bqNumStreamsPerPartition")
             .transform(Integer::parseInt)
             .or(MIN_STREAMS_PER_PARTITION);
+    if (config.numStreamsPerPartition < MIN_STREAMS_PER_PARTITION) {
+      throw new IllegalArgumentException(
+          "bqNumStreamsPerPartition must have a positive value, the configured value is "
+              + config.numStreamsPerPartition);
+    }
+    config.arrowMemoryLimitBytes =
+        getAnyOption(globalOptions, options, "arrowMemoryLimit")
+            .transform(MemorySize::parseBytes)
+            .or(DEFAULT_ARROW_MEMORY_LIMIT.getBytes());
 
     String arrowCompressionCodecParam =
         getAnyOption(globalOptions, options, ARROW_COMPRESSION_CODEC_OPTION)
@@ -739,6 +751,14 @@ public class FlinkBigQueryConfig implements BigQueryConfig, Serializable {
     return maxReadRowsRetries;
   }
 
+  public int getNumStreamsPerPartition() {
+    return numStreamsPerPartition;
+  }
+
+  public long getArrowMemoryLimitBytes() {
+    return arrowMemoryLimitBytes;
+  }
+
   public boolean getPushAllFilters() {
     return pushAllFilters;
   }
@@ -797,6 +817,11 @@ public class FlinkBigQueryConfig implements BigQueryConfig, Serializable {
   }
 
   public ReadSessionCreatorConfig toReadSessionCreatorConfig() {
+    return toReadSessionCreatorConfig(getMaxParallelism());
+  }
+
+  /** Returns the read session config, asking for at most {@code maxParallelism} streams. */
+  public ReadSessionCreatorConfig toReadSessionCreatorConfig(OptionalInt maxParallelism) {
     return new ReadSessionCreatorConfigBuilder()
         .setViewsEnabled(viewsEnabled)
         .setMaterializationProject(materializationProject.toJavaUtil())
@@ -806,7 +831,7 @@ public class FlinkBigQueryConfig implements BigQueryConfig, Serializable {
         .setMaxReadRowsRetries(maxReadRowsRetries)
         .setViewEnabledParamName(VIEWS_ENABLED_OPTION)
         .setDefaultParallelism(defaultParallelism)
-        .setMaxParallelism(getMaxParallelism())
+        .setMaxParallelism(maxParallelism)
         .setRequestEncodedBase(encodedCreateReadSessionRequest.toJavaUtil())
         .setEndpoint(storageReadEndpoint.toJavaUtil())
         .setBackgroundParsingThreads(numBackgroundThreadsPerStream)
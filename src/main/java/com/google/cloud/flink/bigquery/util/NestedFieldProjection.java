@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.RowType;
+
+/**
+ * Reads the fields of the produced rows from nested fields of the read session rows.
+ *
+ * <p>A produced field names the BigQuery field it is read from with a dotted path such as {@code
+ * payload.user.id}. The read session only returns the selected sub-fields of a {@code STRUCT}
+ * column, so its rows have a pruned row type of their own, which {@link #getReadSessionRowType()}
+ * describes. A produced field is null when any of the structs on its path is null.
+ */
+@Internal
+public final class NestedFieldProjection implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final RowType readSessionRowType;
+  private final int[][] indexPaths;
+  private final int[][] arities;
+  private final RowData.FieldGetter[] fieldGetters;
+
+  private NestedFieldProjection(
+      RowType readSessionRowType,
+      int[][] indexPaths,
+      int[][] arities,
+      RowData.FieldGetter[] fieldGetters) {
+    this.readSessionRowType = readSessionRowType;
+    this.indexPaths = indexPaths;
+    this.arities = arities;
+    this.fieldGetters = fieldGetters;
+  }
+
+  /** Returns whether any of {@code fieldPaths} is a sub-field of a column. */
+  public static boolean isNested(List<String> fieldPaths) {
+    return fieldPaths.stream().anyMatch(fieldPath -> fieldPath.contains("."));
+  }
+
+  /**
+   * Creates the projection of {@code rowType} rows, whose field {@code i} is read from {@code
+   * fieldPaths.get(i)}. The fields of the read session rows are ordered like {@code
+   * readSessionFieldPaths}, the dotted paths of all fields of the read session schema, and fields
+   * missing from it come last.
+   */
+  public static NestedFieldProjection create(
+      RowType rowType, List<String> fieldPaths, List<String> readSessionFieldPaths) {
+    Node root = new Node();
+    for (int i = 0; i < rowType.getFieldCount(); i++) {
+      Node node = root;
+      for (String name : fieldPaths.get(i).split("\\.")) {
+        node = node.children.computeIfAbsent(name, key -> new Node());
+      }
+      node.type = rowType.getTypeAt(i);
+    }
+    RowType readSessionRowType = (RowType) root.toType("", readSessionFieldPaths);
+
+    int[][] indexPaths = new int[fieldPaths.size()][];
+    int[][] arities = new int[fieldPaths.size()][];
+    RowData.FieldGetter[] fieldGetters = new RowData.FieldGetter[fieldPaths.size()];
+    for (int i = 0; i < fieldPaths.size(); i++) {
+      String[] names = fieldPaths.get(i).split("\\.");
+      indexPaths[i] = new int[names.length];
+      arities[i] = new int[names.length];
+      LogicalType type = readSessionRowType;
+      for (int depth = 0; depth < names.length; depth++) {
+        if (!(type instanceof RowType)) {
+          throw new IllegalArgumentException(
+              "Field " + fieldPaths.get(i) + " is not nested in a row of " + readSessionRowType);
+        }
+        RowType parentType = (RowType) type;
+        indexPaths[i][depth] = parentType.getFieldIndex(names[depth]);
+        if (indexPaths[i][depth] < 0) {
+          throw new IllegalArgumentException(
+              "Field " + fieldPaths.get(i) + " is missing from " + readSessionRowType);
+        }
+        arities[i][depth] = parentType.getFieldCount();
+        type = parentType.getTypeAt(indexPaths[i][depth]);
+      }
+      fieldGetters[i] = RowData.createFieldGetter(type, indexPaths[i][names.length - 1]);
+    }
+    return new NestedFieldProjection(readSessionRowType, indexPaths, arities, fieldGetters);
+  }
+
+  /** Returns the row type of the read session rows. */
+  public RowType getReadSessionRowType() {
+    return readSessionRowType;
+  }
+
+  /**
+   * Returns the positions of the field of the read session row, and of its sub-fields down to the
+   * one produced field {@code field} is read from.
+   */
+  public int[] getIndexPath(int field) {
+    return indexPaths[field];
+  }
+
+  /** Reads a produced row from a row of the read session. */
+  public GenericRowData project(RowData readSessionRow) {
+    GenericRowData row = new GenericRowData(readSessionRow.getRowKind(), indexPaths.length);
+    for (int i = 0; i < indexPaths.length; i++) {
+      int[] indexPath = indexPaths[i];
+      RowData parent = readSessionRow;
+      for (int depth = 0; depth < indexPath.length - 1 && parent != null; depth++) {
+        parent =
+            parent.isNullAt(indexPath[depth])
+                ? null
+                : parent.getRow(indexPath[depth], arities[i][depth + 1]);
+      }
+      row.setField(i, parent == null ? null : fieldGetters[i].getFieldOrNull(parent));
+    }
+    return row;
+  }
+
+  /** A field of the read session rows, with either the type of a whole field or sub-fields. */
+  private static final class Node {
+    private LogicalType type;
+    private final Map<String, Node> children = new LinkedHashMap<>();
+
+    private LogicalType toType(String path, List<String> readSessionFieldPaths) {
+      if (type != null) {
+        return type;
+      }
+      List<String> names = new ArrayList<>(children.keySet());
+      names.sort(
+          Comparator.comparingInt(
+              name -> {
+                int position = readSessionFieldPaths.indexOf(path + name);
+                return position < 0 ? Integer.MAX_VALUE : position;
+              }));
+      List<RowType.RowField> fields = new ArrayList<>();
+      for (String name : names) {
+        fields.add(
+            new RowType.RowField(
+                name, children.get(name).toType(path + name + ".", readSessionFieldPaths)));
+      }
+      return new RowType(fields);
+    }
+  }
+}
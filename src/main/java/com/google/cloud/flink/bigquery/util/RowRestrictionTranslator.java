@@ -0,0 +1,373 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util;
+
+import com.google.common.collect.ImmutableMap;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.expressions.CallExpression;
+import org.apache.flink.table.expressions.FieldReferenceExpression;
+import org.apache.flink.table.expressions.ResolvedExpression;
+import org.apache.flink.table.expressions.ValueLiteralExpression;
+import org.apache.flink.table.functions.BuiltInFunctionDefinitions;
+import org.apache.flink.table.functions.FunctionDefinition;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.logical.DecimalType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.LogicalTypeRoot;
+
+/**
+ * Translates the filters Flink pushes into a table source to the row restriction of a BigQuery read
+ * session. A filter is translated only when BigQuery evaluates it exactly as Flink does, because an
+ * accepted filter is not evaluated by Flink anymore; every other filter is left to Flink.
+ *
+ * <p>Comparisons, {@code IN}, {@code IS [NOT] NULL}, {@code IS [NOT] TRUE/FALSE}, {@code [NOT]
+ * BETWEEN}, prefix {@code LIKE} patterns and their {@code AND}, {@code OR} and {@code NOT}
+ * combinations are translated, between a column and literals of string, boolean, integral, double,
+ * decimal, date, time and local-zoned timestamp types. Timestamps without time zone are not, as the
+ * column may be a BigQuery {@code DATETIME} or a {@code TIMESTAMP}.
+ */
+@Internal
+public final class RowRestrictionTranslator {
+
+  private static final Map<FunctionDefinition, String> COMPARISONS =
+      ImmutableMap.<FunctionDefinition, String>builder()
+          .put(BuiltInFunctionDefinitions.EQUALS, "=")
+          .put(BuiltInFunctionDefinitions.NOT_EQUALS, "!=")
+          .put(BuiltInFunctionDefinitions.GREATER_THAN, ">")
+          .put(BuiltInFunctionDefinitions.GREATER_THAN_OR_EQUAL, ">=")
+          .put(BuiltInFunctionDefinitions.LESS_THAN, "<")
+          .put(BuiltInFunctionDefinitions.LESS_THAN_OR_EQUAL, "<=")
+          .build();
+
+  /** The comparison of the swapped operands, for a literal on the left hand side. */
+  private static final Map<String, String> REVERSED_COMPARISONS =
+      ImmutableMap.<String, String>builder()
+          .put("=", "=")
+          .put("!=", "!=")
+          .put(">", "<")
+          .put(">=", "<=")
+          .put("<", ">")
+          .put("<=", ">=")
+          .build();
+
+  private static final Map<FunctionDefinition, String> POSTFIX_PREDICATES =
+      ImmutableMap.<FunctionDefinition, String>builder()
+          .put(BuiltInFunctionDefinitions.IS_NULL, "IS NULL")
+          .put(BuiltInFunctionDefinitions.IS_NOT_NULL, "IS NOT NULL")
+          .put(BuiltInFunctionDefinitions.IS_TRUE, "IS TRUE")
+          .put(BuiltInFunctionDefinitions.IS_NOT_TRUE, "IS NOT TRUE")
+          .put(BuiltInFunctionDefinitions.IS_FALSE, "IS FALSE")
+          .put(BuiltInFunctionDefinitions.IS_NOT_FALSE, "IS NOT FALSE")
+          .build();
+
+  private static final DateTimeFormatter TIME_FORMATTER =
+      DateTimeFormatter.ofPattern("HH:mm:ss.SSSSSS");
+  private static final DateTimeFormatter TIMESTAMP_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS").withZone(ZoneOffset.UTC);
+
+  /** Largest precision and scale of a BigQuery {@code NUMERIC}, beyond it is a BIGNUMERIC. */
+  private static final int NUMERIC_MAX_PRECISION = 38;
+
+  private static final int NUMERIC_MAX_SCALE = 9;
+
+  private RowRestrictionTranslator() {}
+
+  /**
+   * Returns the row restriction equivalent to {@code filter}, or nothing if BigQuery may not
+   * evaluate it the way Flink does.
+   *
+   * @param filter a filter on the fields of the produced rows
+   * @param columns the BigQuery column read into each field, by field name
+   */
+  public static Optional<String> translate(ResolvedExpression filter, Map<String, String> columns) {
+    if (filter instanceof FieldReferenceExpression) {
+      // a bare boolean column
+      FieldReferenceExpression field = (FieldReferenceExpression) filter;
+      return field.getOutputDataType().getLogicalType().getTypeRoot() == LogicalTypeRoot.BOOLEAN
+          ? column(field, columns)
+          : Optional.empty();
+    }
+    if (!(filter instanceof CallExpression)) {
+      return Optional.empty();
+    }
+    CallExpression call = (CallExpression) filter;
+    FunctionDefinition function = call.getFunctionDefinition();
+    List<ResolvedExpression> args = call.getResolvedChildren();
+    if (function == BuiltInFunctionDefinitions.AND || function == BuiltInFunctionDefinitions.OR) {
+      return junction(function == BuiltInFunctionDefinitions.AND ? " AND " : " OR ", args, columns);
+    }
+    if (function == BuiltInFunctionDefinitions.NOT) {
+      return translate(args.get(0), columns).map(operand -> "(NOT " + operand + ")");
+    }
+    if (COMPARISONS.containsKey(function)) {
+      return comparison(COMPARISONS.get(function), args, columns);
+    }
+    if (POSTFIX_PREDICATES.containsKey(function)) {
+      return fieldOperand(args.get(0), columns)
+          .map(column -> "(" + column + " " + POSTFIX_PREDICATES.get(function) + ")");
+    }
+    if (function == BuiltInFunctionDefinitions.IN) {
+      return in(args, columns);
+    }
+    if (function == BuiltInFunctionDefinitions.BETWEEN
+        || function == BuiltInFunctionDefinitions.NOT_BETWEEN) {
+      return between(function == BuiltInFunctionDefinitions.BETWEEN, args, columns);
+    }
+    if (function == BuiltInFunctionDefinitions.LIKE) {
+      return like(args, columns);
+    }
+    return Optional.empty();
+  }
+  /**
+   * Returns the row restriction of the rows whose {@code column} equals {@code value}, a value of
+   * the default external data structure of {@code type}, or nothing if BigQuery has no literal of
+   * that type.
+   */
+  public static Optional<String> equalTo(String column, Object value, DataType type) {
+    return translate(
+        new CallExpression(
+            BuiltInFunctionDefinitions.EQUALS,
+            Arrays.asList(
+                new FieldReferenceExpression(column, type, 0, 0),
+                new ValueLiteralExpression(value, type.notNull())),
+            DataTypes.BOOLEAN()),
+        Collections.singletonMap(column, column));
+  }
+
+  /**
+   * Returns the row restriction of the rows whose {@code column} equals one of {@code values},
+   * values of the default external data structure of {@code type}, or nothing if BigQuery has no
+   * literal of that type.
+   */
+  public static Optional<String> in(String column, List<Object> values, DataType type) {
+    List<ResolvedExpression> args = new ArrayList<>();
+    args.add(new FieldReferenceExpression(column, type, 0, 0));
+    for (Object value : values) {
+      args.add(new ValueLiteralExpression(value, type.notNull()));
+    }
+    return translate(
+        new CallExpression(BuiltInFunctionDefinitions.IN, args, DataTypes.BOOLEAN()),
+        Collections.singletonMap(column, column));
+  }
+
+  /**
+   * Returns the row restriction of the rows whose BigQuery {@code TIMESTAMP} {@code column} is
+   * after {@code after}, if present, and no later than {@code atMost}.
+   */
+  public static String timestampRange(String column, Optional<Instant> after, Instant atMost) {
+    String quotedColumn = quoteColumn(column);
+    String upperBound =
+        quotedColumn + " <= TIMESTAMP '" + TIMESTAMP_FORMATTER.format(atMost) + " UTC'";
+    return after
+        .map(
+            lowerBound ->
+                "("
+                    + quotedColumn
+                    + " > TIMESTAMP '"
+                    + TIMESTAMP_FORMATTER.format(lowerBound)
+                    + " UTC' AND "
+                    + upperBound
+                    + ")")
+        .orElse("(" + upperBound + ")");
+  }
+
+  private static Optional<String> junction(
+      String operator, List<ResolvedExpression> args, Map<String, String> columns) {
+    List<String> operands = new ArrayList<>();
+    for (ResolvedExpression arg : args) {
+      Optional<String> operand = translate(arg, columns);
+      if (!operand.isPresent()) {
+        // part of an AND could still be pushed, but Flink passes the conjuncts one by one already
+        return Optional.empty();
+      }
+      operands.add(operand.get());
+    }
+    return Optional.of("(" + String.join(operator, operands) + ")");
+  }
+
+  private static Optional<String> comparison(
+      String operator, List<ResolvedExpression> args, Map<String, String> columns) {
+    Optional<String> column = fieldOperand(args.get(0), columns);
+    Optional<String> literal = literalOperand(args.get(1));
+    if (!column.isPresent() || !literal.isPresent()) {
+      column = fieldOperand(args.get(1), columns);
+      literal = literalOperand(args.get(0));
+      operator = REVERSED_COMPARISONS.get(operator);
+    }
+    if (!column.isPresent() || !literal.isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of("(" + column.get() + " " + operator + " " + literal.get() + ")");
+  }
+
+  private static Optional<String> in(List<ResolvedExpression> args, Map<String, String> columns) {
+    Optional<String> column = fieldOperand(args.get(0), columns);
+    if (!column.isPresent()) {
+      return Optional.empty();
+    }
+    List<String> literals = new ArrayList<>();
+    for (ResolvedExpression arg : args.subList(1, args.size())) {
+      Optional<String> literal = literalOperand(arg);
+      if (!literal.isPresent()) {
+        return Optional.empty();
+      }
+      literals.add(literal.get());
+    }
+    return Optional.of("(" + column.get() + " IN (" + String.join(", ", literals) + "))");
+  }
+
+  private static Optional<String> between(
+      boolean between, List<ResolvedExpression> args, Map<String, String> columns) {
+    Optional<String> column = fieldOperand(args.get(0), columns);
+    Optional<String> lowerBound = literalOperand(args.get(1));
+    Optional<String> upperBound = literalOperand(args.get(2));
+    if (!column.isPresent() || !lowerBound.isPresent() || !upperBound.isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        String.format(
+            "(%s %s %s AND %s)",
+            column.get(), between ? "BETWEEN" : "NOT BETWEEN", lowerBound.get(), upperBound.get()));
+  }
+
+  /**
+   * Only patterns matching a prefix are translated, as Flink and BigQuery escape the wildcards of
+   * other patterns differently.
+   */
+  private static Optional<String> like(List<ResolvedExpression> args, Map<String, String> columns) {
+    if (args.size() != 2 || !(args.get(1) instanceof ValueLiteralExpression)) {
+      return Optional.empty();
+    }
+    Optional<String> column = fieldOperand(args.get(0), columns);
+    Optional<String> pattern = ((ValueLiteralExpression) args.get(1)).getValueAs(String.class);
+    if (!column.isPresent() || !pattern.isPresent() || !pattern.get().endsWith("%")) {
+      return Optional.empty();
+    }
+    String prefix = pattern.get().substring(0, pattern.get().length() - 1);
+    if (prefix.contains("%") || prefix.contains("_") || prefix.contains("\\")) {
+      return Optional.empty();
+    }
+    return Optional.of("(" + column.get() + " LIKE " + quote(pattern.get()) + ")");
+  }
+
+  private static Optional<String> fieldOperand(
+      ResolvedExpression expression, Map<String, String> columns) {
+    return expression instanceof FieldReferenceExpression
+        ? column((FieldReferenceExpression) expression, columns)
+        : Optional.empty();
+  }
+
+  private static Optional<String> column(
+      FieldReferenceExpression field, Map<String, String> columns) {
+    String column = columns.get(field.getName());
+    if (column == null || column.contains("`")) {
+      return Optional.empty();
+    }
+    return Optional.of(quoteColumn(column));
+  }
+
+  private static String quoteColumn(String column) {
+    // the sub-field of a STRUCT column is a dotted path
+    return "`" + String.join("`.`", column.split("\\.")) + "`";
+  }
+
+  /** Returns the BigQuery literal of a non null value, if BigQuery has a literal of its type. */
+  private static Optional<String> literalOperand(ResolvedExpression expression) {
+    if (!(expression instanceof ValueLiteralExpression)) {
+      return Optional.empty();
+    }
+    ValueLiteralExpression literal = (ValueLiteralExpression) expression;
+    if (literal.isNull()) {
+      return Optional.empty();
+    }
+    LogicalType type = literal.getOutputDataType().getLogicalType();
+    switch (type.getTypeRoot()) {
+      case CHAR:
+      case VARCHAR:
+        return literal.getValueAs(String.class).map(RowRestrictionTranslator::quote);
+      case BOOLEAN:
+        return literal.getValueAs(Boolean.class).map(value -> value ? "TRUE" : "FALSE");
+      case TINYINT:
+      case SMALLINT:
+      case INTEGER:
+      case BIGINT:
+        return literal.getValueAs(Number.class).map(value -> Long.toString(value.longValue()));
+      case DOUBLE:
+        return literal
+            .getValueAs(Double.class)
+            .filter(value -> !value.isNaN() && !value.isInfinite())
+            .map(String::valueOf);
+      case DECIMAL:
+        DecimalType decimalType = (DecimalType) type;
+        String numericType =
+            decimalType.getPrecision() <= NUMERIC_MAX_PRECISION
+                    && decimalType.getScale() <= NUMERIC_MAX_SCALE
+                ? "NUMERIC"
+                : "BIGNUMERIC";
+        return literal
+            .getValueAs(BigDecimal.class)
+            .map(value -> numericType + " '" + value.toPlainString() + "'");
+      case DATE:
+        return literal.getValueAs(LocalDate.class).map(value -> "DATE '" + value + "'");
+      case TIME_WITHOUT_TIME_ZONE:
+        return literal
+            .getValueAs(LocalTime.class)
+            .map(value -> "TIME '" + TIME_FORMATTER.format(value) + "'");
+      case TIMESTAMP_WITH_LOCAL_TIME_ZONE:
+        return literal
+            .getValueAs(Instant.class)
+            .map(value -> "TIMESTAMP '" + TIMESTAMP_FORMATTER.format(value) + " UTC'");
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private static String quote(String value) {
+    StringBuilder quoted = new StringBuilder("'");
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '\'':
+          quoted.append("\\'");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\r':
+          quoted.append("\\r");
+          break;
+        default:
+          quoted.append(c);
+      }
+    }
+    return quoted.append('\'').toString();
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.flink.annotation.Internal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out the Arrow allocators of the connector. All of them are children of one root allocator
+ * per JVM, so every buffer is accounted to the bounded allocator of the reader that decoded it.
+ */
+@Internal
+public final class ArrowAllocators {
+
+  private static final Logger log = LoggerFactory.getLogger(ArrowAllocators.class);
+  private static RootAllocator rootAllocator;
+
+  private ArrowAllocators() {}
+
+  private static synchronized BufferAllocator rootAllocator() {
+    if (rootAllocator == null) {
+      rootAllocator = new RootAllocator(Long.MAX_VALUE);
+    }
+    return rootAllocator;
+  }
+
+  /** Creates an allocator that fails allocations beyond {@code limit} bytes. */
+  public static BufferAllocator newChildAllocator(String name, long limit) {
+    return rootAllocator().newChildAllocator(name, 0, limit);
+  }
+
+  /**
+   * Closes the allocator. Buffers still outstanding, like the batch the source reader was emitting
+   * when it got cancelled, are logged instead of failing the close.
+   */
+  public static void close(BufferAllocator allocator) {
+    try {
+      allocator.close();
+    } catch (IllegalStateException ex) {
+      log.warn(
+          "Closed Arrow allocator {} with {} bytes still allocated",
+          allocator.getName(),
+          allocator.getAllocatedMemory(),
+          ex);
+    }
+  }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util.arrow;
+
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeNanoVector;
+import org.apache.arrow.vector.TimeSecVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.table.data.ArrayData;
+import org.apache.flink.table.data.ColumnarArrayData;
+import org.apache.flink.table.data.ColumnarRowData;
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.data.vector.ArrayColumnVector;
+import org.apache.flink.table.data.vector.BooleanColumnVector;
+import org.apache.flink.table.data.vector.ByteColumnVector;
+import org.apache.flink.table.data.vector.BytesColumnVector;
+import org.apache.flink.table.data.vector.ColumnVector;
+import org.apache.flink.table.data.vector.DecimalColumnVector;
+import org.apache.flink.table.data.vector.DoubleColumnVector;
+import org.apache.flink.table.data.vector.FloatColumnVector;
+import org.apache.flink.table.data.vector.IntColumnVector;
+import org.apache.flink.table.data.vector.LongColumnVector;
+import org.apache.flink.table.data.vector.RowColumnVector;
+import org.apache.flink.table.data.vector.ShortColumnVector;
+import org.apache.flink.table.data.vector.TimestampColumnVector;
+import org.apache.flink.table.data.vector.VectorizedColumnBatch;
+import org.apache.flink.table.types.logical.ArrayType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.RowType;
+
+/**
+ * Flink {@link ColumnVector}s reading straight from loaded Arrow vectors. A {@link ColumnarRowData}
+ * over them is a cursor into the record batch: cells are read on access, without boxing and without
+ * materializing the row.
+ */
+@Internal
+public class ArrowColumnVectors {
+
+  private ArrowColumnVectors() {}
+
+  /** Creates the columns of a batch in the order of the fields of {@code rowType}. */
+  public static VectorizedColumnBatch createColumnBatch(ValueVector[] vectors, RowType rowType) {
+    ColumnVector[] columns = new ColumnVector[vectors.length];
+    for (int i = 0; i < vectors.length; i++) {
+      columns[i] = createColumnVector(vectors[i], rowType.getTypeAt(i));
+    }
+    return new VectorizedColumnBatch(columns);
+  }
+
+  public static ColumnVector createColumnVector(ValueVector vector, LogicalType type) {
+    if (vector instanceof BitVector) {
+      return new ArrowBooleanColumnVector((BitVector) vector);
+    } else if (vector instanceof TinyIntVector) {
+      return new ArrowTinyIntColumnVector((TinyIntVector) vector);
+    } else if (vector instanceof SmallIntVector) {
+      return new ArrowSmallIntColumnVector((SmallIntVector) vector);
+    } else if (vector instanceof IntVector) {
+      return new ArrowIntColumnVector((IntVector) vector);
+    } else if (vector instanceof BigIntVector) {
+      return new ArrowBigIntColumnVector((BigIntVector) vector);
+    } else if (vector instanceof Float4Vector) {
+      return new ArrowFloatColumnVector((Float4Vector) vector);
+    } else if (vector instanceof Float8Vector) {
+      return new ArrowDoubleColumnVector((Float8Vector) vector);
+    } else if (vector instanceof VarCharVector || vector instanceof VarBinaryVector) {
+      return new ArrowVariableWidthColumnVector((BaseVariableWidthVector) vector);
+    } else if (vector instanceof DecimalVector) {
+      return new ArrowDecimalColumnVector((DecimalVector) vector);
+    } else if (vector instanceof DateDayVector) {
+      return new ArrowDateColumnVector((DateDayVector) vector);
+    } else if (vector instanceof TimeSecVector
+        || vector instanceof TimeMilliVector
+        || vector instanceof TimeMicroVector
+        || vector instanceof TimeNanoVector) {
+      return new ArrowTimeColumnVector(vector);
+    } else if (vector instanceof TimeStampVector) {
+      return new ArrowTimestampColumnVector((TimeStampVector) vector);
+    } else if (vector instanceof ListVector) {
+      ListVector listVector = (ListVector) vector;
+      return new ArrowArrayColumnVector(
+          listVector,
+          createColumnVector(listVector.getDataVector(), ((ArrayType) type).getElementType()));
+    } else if (vector instanceof StructVector) {
+      StructVector structVector = (StructVector) vector;
+      RowType structType = (RowType) type;
+      ValueVector[] children = new ValueVector[structType.getFieldCount()];
+      for (int i = 0; i < children.length; i++) {
+        children[i] = structVector.getChild(structType.getFieldNames().get(i));
+      }
+      return new ArrowRowColumnVector(structVector, createColumnBatch(children, structType));
+    }
+    throw new UnsupportedOperationException(
+        "Unsupported Arrow vector " + vector.getClass().getSimpleName() + " for type " + type);
+  }
+
+  /**
+   * Creates the column of {@code vector}, a sub-field of the struct {@code parents}, which is null
+   * where any of the parents is null.
+   */
+  public static ColumnVector createNestedColumnVector(
+      ValueVector[] parents, ValueVector vector, LogicalType type) {
+    ColumnVector column = createColumnVector(vector, type);
+    return parents.length == 0 ? column : new ArrowNestedColumnVector(parents, column);
+  }
+
+  static DecimalData readDecimal(DecimalVector vector, int i, int precision, int scale) {
+    if (DecimalData.isCompact(precision)) {
+      // the low 8 bytes of the 16 bytes little-endian two's complement unscaled value
+      return DecimalData.fromUnscaledLong(
+          vector.getDataBuffer().getLong((long) i * DecimalVector.TYPE_WIDTH), precision, scale);
+    }
+    return DecimalData.fromBigDecimal(vector.getObject(i), precision, scale);
+  }
+
+  /** TIME values are milliseconds of the day in Flink, whatever the unit of the Arrow vector. */
+  static int readTimeMillis(ValueVector vector, int i) {
+    if (vector instanceof TimeSecVector) {
+      return ((TimeSecVector) vector).get(i) * 1000;
+    } else if (vector instanceof TimeMilliVector) {
+      return ((TimeMilliVector) vector).get(i);
+    } else if (vector instanceof TimeMicroVector) {
+      return (int) (((TimeMicroVector) vector).get(i) / 1000);
+    } else {
+      return (int) (((TimeNanoVector) vector).get(i) / 1_000_000);
+    }
+  }
+
+  static TimeUnit timestampUnit(TimeStampVector vector) {
+    return ((ArrowType.Timestamp) vector.getField().getType()).getUnit();
+  }
+
+  static TimestampData readTimestamp(long value, TimeUnit unit) {
+    switch (unit) {
+      case SECOND:
+        return TimestampData.fromEpochMillis(value * 1000);
+      case MILLISECOND:
+        return TimestampData.fromEpochMillis(value);
+      case MICROSECOND:
+        return TimestampData.fromEpochMillis(
+            Math.floorDiv(value, 1000), (int) Math.floorMod(value, 1000) * 1000);
+      case NANOSECOND:
+        return TimestampData.fromEpochMillis(
+            Math.floorDiv(value, 1_000_000), (int) Math.floorMod(value, 1_000_000));
+      default:
+        throw new UnsupportedOperationException("Unsupported Arrow timestamp unit " + unit);
+    }
+  }
+
+  private static final class ArrowBooleanColumnVector implements BooleanColumnVector {
+    private final BitVector vector;
+
+    private ArrowBooleanColumnVector(BitVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public boolean getBoolean(int i) {
+      return vector.get(i) != 0;
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowTinyIntColumnVector implements ByteColumnVector {
+    private final TinyIntVector vector;
+
+    private ArrowTinyIntColumnVector(TinyIntVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public byte getByte(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowSmallIntColumnVector implements ShortColumnVector {
+    private final SmallIntVector vector;
+
+    private ArrowSmallIntColumnVector(SmallIntVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public short getShort(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowIntColumnVector implements IntColumnVector {
+    private final IntVector vector;
+
+    private ArrowIntColumnVector(IntVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public int getInt(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowBigIntColumnVector implements LongColumnVector {
+    private final BigIntVector vector;
+
+    private ArrowBigIntColumnVector(BigIntVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public long getLong(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowFloatColumnVector implements FloatColumnVector {
+    private final Float4Vector vector;
+
+    private ArrowFloatColumnVector(Float4Vector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public float getFloat(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowDoubleColumnVector implements DoubleColumnVector {
+    private final Float8Vector vector;
+
+    private ArrowDoubleColumnVector(Float8Vector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public double getDouble(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  /**
+   * Strings and bytes of a batch. The data buffer of the batch is copied to the heap once, on the
+   * first access, and every cell is a slice of that copy: a {@link Bytes} needs a heap array, and a
+   * copy per batch is cheaper than one per cell. The slices stay valid once the batch is released.
+   */
+  private static final class ArrowVariableWidthColumnVector implements BytesColumnVector {
+    private final BaseVariableWidthVector vector;
+    private byte[] data;
+
+    private ArrowVariableWidthColumnVector(BaseVariableWidthVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public Bytes getBytes(int i) {
+      if (data == null) {
+        data = new byte[vector.getEndOffset(vector.getValueCount() - 1)];
+        vector.getDataBuffer().getBytes(0, data);
+      }
+      int start = vector.getStartOffset(i);
+      return new Bytes(data, start, vector.getEndOffset(i) - start);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowDecimalColumnVector implements DecimalColumnVector {
+    private final DecimalVector vector;
+
+    private ArrowDecimalColumnVector(DecimalVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public DecimalData getDecimal(int i, int precision, int scale) {
+      return readDecimal(vector, i, precision, scale);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowDateColumnVector implements IntColumnVector {
+    private final DateDayVector vector;
+
+    private ArrowDateColumnVector(DateDayVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public int getInt(int i) {
+      return vector.get(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowTimeColumnVector implements IntColumnVector {
+    private final ValueVector vector;
+
+    private ArrowTimeColumnVector(ValueVector vector) {
+      this.vector = vector;
+    }
+
+    @Override
+    public int getInt(int i) {
+      return readTimeMillis(vector, i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowTimestampColumnVector implements TimestampColumnVector {
+    private final TimeStampVector vector;
+    private final TimeUnit unit;
+
+    private ArrowTimestampColumnVector(TimeStampVector vector) {
+      this.vector = vector;
+      this.unit = timestampUnit(vector);
+    }
+
+    @Override
+    public TimestampData getTimestamp(int i, int precision) {
+      return readTimestamp(vector.get(i), unit);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowArrayColumnVector implements ArrayColumnVector {
+    private final ListVector vector;
+    private final ColumnVector elements;
+
+    private ArrowArrayColumnVector(ListVector vector, ColumnVector elements) {
+      this.vector = vector;
+      this.elements = elements;
+    }
+
+    @Override
+    public ArrayData getArray(int i) {
+      int start = vector.getElementStartIndex(i);
+      return new ColumnarArrayData(elements, start, vector.getElementEndIndex(i) - start);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  private static final class ArrowRowColumnVector implements RowColumnVector {
+    private final StructVector vector;
+    private final VectorizedColumnBatch fields;
+
+    private ArrowRowColumnVector(StructVector vector, VectorizedColumnBatch fields) {
+      this.vector = vector;
+      this.fields = fields;
+    }
+
+    @Override
+    public ColumnarRowData getRow(int i) {
+      return new ColumnarRowData(fields, i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      return vector.isNull(i);
+    }
+  }
+
+  /**
+   * A column nested in structs. It implements the typed column interfaces of every vector it can
+   * wrap, the rows read from it only call the one matching the type of the field.
+   */
+  private static final class ArrowNestedColumnVector
+      implements BooleanColumnVector,
+          ByteColumnVector,
+          ShortColumnVector,
+          IntColumnVector,
+          LongColumnVector,
+          FloatColumnVector,
+          DoubleColumnVector,
+          BytesColumnVector,
+          DecimalColumnVector,
+          TimestampColumnVector,
+          ArrayColumnVector,
+          RowColumnVector {
+    private final ValueVector[] parents;
+    private final ColumnVector column;
+
+    private ArrowNestedColumnVector(ValueVector[] parents, ColumnVector column) {
+      this.parents = parents;
+      this.column = column;
+    }
+
+    @Override
+    public boolean getBoolean(int i) {
+      return ((BooleanColumnVector) column).getBoolean(i);
+    }
+
+    @Override
+    public byte getByte(int i) {
+      return ((ByteColumnVector) column).getByte(i);
+    }
+
+    @Override
+    public short getShort(int i) {
+      return ((ShortColumnVector) column).getShort(i);
+    }
+
+    @Override
+    public int getInt(int i) {
+      return ((IntColumnVector) column).getInt(i);
+    }
+
+    @Override
+    public long getLong(int i) {
+      return ((LongColumnVector) column).getLong(i);
+    }
+
+    @Override
+    public float getFloat(int i) {
+      return ((FloatColumnVector) column).getFloat(i);
+    }
+
+    @Override
+    public double getDouble(int i) {
+      return ((DoubleColumnVector) column).getDouble(i);
+    }
+
+    @Override
+    public Bytes getBytes(int i) {
+      return ((BytesColumnVector) column).getBytes(i);
+    }
+
+    @Override
+    public DecimalData getDecimal(int i, int precision, int scale) {
+      return ((DecimalColumnVector) column).getDecimal(i, precision, scale);
+    }
+
+    @Override
+    public TimestampData getTimestamp(int i, int precision) {
+      return ((TimestampColumnVector) column).getTimestamp(i, precision);
+    }
+
+    @Override
+    public ArrayData getArray(int i) {
+      return ((ArrayColumnVector) column).getArray(i);
+    }
+
+    @Override
+    public ColumnarRowData getRow(int i) {
+      return ((RowColumnVector) column).getRow(i);
+    }
+
+    @Override
+    public boolean isNullAt(int i) {
+      for (ValueVector parent : parents) {
+        if (parent.isNull(i)) {
+          return true;
+        }
+      }
+      return column.isNullAt(i);
+    }
+  }
+}
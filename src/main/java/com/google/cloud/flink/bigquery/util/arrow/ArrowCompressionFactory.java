@@ -0,0 +1,383 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util.arrow;
+
+import com.github.luben.zstd.Zstd;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.compression.AbstractCompressionCodec;
+import org.apache.arrow.vector.compression.CompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.compression.NoCompressionCodec;
+import org.apache.flink.annotation.Internal;
+
+/**
+ * Creates the codecs of the buffer compressions the read session may request, {@code LZ4_FRAME} and
+ * {@code ZSTD}. The codecs follow the Arrow IPC layout, so a compressed buffer starts with its
+ * uncompressed length and a length of -1 marks a buffer the server left uncompressed.
+ */
+@Internal
+public final class ArrowCompressionFactory implements CompressionCodec.Factory {
+
+  public static final ArrowCompressionFactory INSTANCE = new ArrowCompressionFactory();
+
+  private static final CompressionCodec LZ4_FRAME = new Lz4FrameCompressionCodec();
+  private static final CompressionCodec ZSTD = new ZstdCompressionCodec();
+
+  private ArrowCompressionFactory() {}
+
+  @Override
+  public CompressionCodec createCodec(CompressionUtil.CodecType codecType) {
+    switch (codecType) {
+      case NO_COMPRESSION:
+        return NoCompressionCodec.INSTANCE;
+      case LZ4_FRAME:
+        return LZ4_FRAME;
+      case ZSTD:
+        return ZSTD;
+      default:
+        throw new IllegalArgumentException("Unsupported Arrow compression codec: " + codecType);
+    }
+  }
+
+  /**
+   * LZ4 frames, coded by lz4-java block by block straight between the off-heap Arrow buffers. The
+   * frames are written with independent blocks and without checksums; frames with block or content
+   * checksums are verified when read. Linked blocks, the default of liblz4 and so of Arrow C++, may
+   * copy from the 64 KB of the frame decoded before them, which lz4-java cannot decode, so they are
+   * decoded here.
+   */
+  private static final class Lz4FrameCompressionCodec extends AbstractCompressionCodec {
+
+    private static final int MAGIC = 0x184D2204;
+    private static final int FLAG_VERSION = 0x40;
+    private static final int FLAG_BLOCK_INDEPENDENCE = 0x20;
+    private static final int FLAG_BLOCK_CHECKSUM = 0x10;
+    private static final int FLAG_CONTENT_SIZE = 0x08;
+    private static final int FLAG_CONTENT_CHECKSUM = 0x04;
+    private static final int FLAG_DICTIONARY_ID = 0x01;
+    // block descriptor of 4 MB blocks
+    private static final int BLOCK_DESCRIPTOR = 0x70;
+    private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int UNCOMPRESSED_BLOCK = 0x80000000;
+    private static final int FRAME_HEADER_SIZE = 7;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int MIN_MATCH = 4;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR =
+        LZ4Factory.fastestInstance().safeDecompressor();
+    private static final XXHash32 XXHASH = XXHashFactory.fastestInstance().hash32();
+
+    @Override
+    protected ArrowBuf doCompress(BufferAllocator allocator, ArrowBuf uncompressedBuffer) {
+      long length = uncompressedBuffer.writerIndex();
+      long maxSize = CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH + FRAME_HEADER_SIZE + 4;
+      for (long offset = 0; offset < length; offset += MAX_BLOCK_SIZE) {
+        maxSize +=
+            4 + COMPRESSOR.maxCompressedLength((int) Math.min(MAX_BLOCK_SIZE, length - offset));
+      }
+      ArrowBuf compressedBuffer = allocator.buffer(maxSize);
+      long position = CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH;
+      compressedBuffer.setInt(position, MAGIC);
+      compressedBuffer.setByte(position + 4, FLAG_VERSION | FLAG_BLOCK_INDEPENDENCE);
+      compressedBuffer.setByte(position + 5, BLOCK_DESCRIPTOR);
+      compressedBuffer.setByte(position + 6, headerChecksum(compressedBuffer, position + 4, 2));
+      position += FRAME_HEADER_SIZE;
+      for (long offset = 0; offset < length; offset += MAX_BLOCK_SIZE) {
+        int blockLength = (int) Math.min(MAX_BLOCK_SIZE, length - offset);
+        int maxCompressedLength = COMPRESSOR.maxCompressedLength(blockLength);
+        int compressedLength =
+            COMPRESSOR.compress(
+                uncompressedBuffer.nioBuffer(offset, blockLength),
+                0,
+                blockLength,
+                compressedBuffer.nioBuffer(position + 4, maxCompressedLength),
+                0,
+                maxCompressedLength);
+        if (compressedLength < blockLength) {
+          compressedBuffer.setInt(position, compressedLength);
+          position += 4 + compressedLength;
+        } else {
+          // incompressible data is stored as is
+          compressedBuffer.setInt(position, blockLength | UNCOMPRESSED_BLOCK);
+          compressedBuffer.setBytes(position + 4, uncompressedBuffer, offset, blockLength);
+          position += 4 + blockLength;
+        }
+      }
+      // end mark
+      compressedBuffer.setInt(position, 0);
+      compressedBuffer.writerIndex(position + 4);
+      return compressedBuffer;
+    }
+
+    @Override
+    protected ArrowBuf doDecompress(BufferAllocator allocator, ArrowBuf compressedBuffer) {
+      long decompressedLength = readUncompressedLength(compressedBuffer);
+      ArrowBuf decompressedBuffer = allocator.buffer(decompressedLength);
+      try {
+        long position = CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH;
+        long written = 0;
+        // a buffer may hold several frames back to back
+        while (position < compressedBuffer.writerIndex()) {
+          long frameStart = written;
+          int flags = readFrameHeader(compressedBuffer, position);
+          position += FRAME_HEADER_SIZE + descriptorExtraLength(flags);
+          int blockSize;
+          while ((blockSize = compressedBuffer.getInt(position)) != 0) {
+            position += 4;
+            int blockLength = blockSize & ~UNCOMPRESSED_BLOCK;
+            int maxLength = (int) (decompressedLength - written);
+            if ((blockSize & UNCOMPRESSED_BLOCK) != 0) {
+              if (blockLength > maxLength) {
+                throw new FlinkBigQueryException(
+                    String.format(
+                        "LZ4 frame decompresses to more than the expected %d bytes",
+                        decompressedLength));
+              }
+              decompressedBuffer.setBytes(written, compressedBuffer, position, blockLength);
+              written += blockLength;
+            } else if ((flags & FLAG_BLOCK_INDEPENDENCE) == 0) {
+              written +=
+                  decompressLinkedBlock(
+                      compressedBuffer,
+                      position,
+                      blockLength,
+                      decompressedBuffer,
+                      written,
+                      Math.max(frameStart, written - WINDOW_SIZE),
+                      decompressedLength);
+            } else {
+              written +=
+                  DECOMPRESSOR.decompress(
+                      compressedBuffer.nioBuffer(position, blockLength),
+                      0,
+                      blockLength,
+                      decompressedBuffer.nioBuffer(written, maxLength),
+                      0,
+                      maxLength);
+            }
+            if ((flags & FLAG_BLOCK_CHECKSUM) != 0) {
+              checkChecksum(
+                  compressedBuffer,
+                  position,
+                  blockLength,
+                  compressedBuffer.getInt(position + blockLength));
+              position += 4;
+            }
+            position += blockLength;
+          }
+          position += 4;
+          if ((flags & FLAG_CONTENT_CHECKSUM) != 0) {
+            checkChecksum(
+                decompressedBuffer,
+                frameStart,
+                (int) (written - frameStart),
+                compressedBuffer.getInt(position));
+            position += 4;
+          }
+        }
+        if (written != decompressedLength) {
+          throw new FlinkBigQueryException(
+              String.format(
+                  "LZ4 frame decompressed to %d bytes, expected %d", written, decompressedLength));
+        }
+      } catch (LZ4Exception ex) {
+        decompressedBuffer.close();
+        throw new FlinkBigQueryException("Error while decompressing an LZ4 frame", ex);
+      } catch (RuntimeException ex) {
+        decompressedBuffer.close();
+        throw ex;
+      }
+      decompressedBuffer.writerIndex(decompressedLength);
+      return decompressedBuffer;
+    }
+
+    /** Checks the header of the frame at {@code position} and returns its flags. */
+    private static int readFrameHeader(ArrowBuf buffer, long position) {
+      if (buffer.getInt(position) != MAGIC) {
+        throw new FlinkBigQueryException("Not an LZ4 frame, no magic number");
+      }
+      int flags = buffer.getByte(position + 4) & 0xFF;
+      if ((flags & 0xC0) != FLAG_VERSION) {
+        throw new FlinkBigQueryException("Unsupported LZ4 frame version in flags " + flags);
+      }
+      int descriptorLength = 2 + descriptorExtraLength(flags);
+      if (headerChecksum(buffer, position + 4, descriptorLength)
+          != (buffer.getByte(position + 4 + descriptorLength) & 0xFF)) {
+        throw new FlinkBigQueryException("LZ4 frame header checksum mismatch");
+      }
+      return flags;
+    }
+
+    /**
+     * Decodes the LZ4 block of {@code length} bytes at {@code position} to {@code destPosition},
+     * where its matches may copy from the bytes decoded from {@code windowStart} on. Returns the
+     * number of bytes decoded, which end at most at {@code destLimit}.
+     */
+    private static int decompressLinkedBlock(
+        ArrowBuf src,
+        long position,
+        int length,
+        ArrowBuf dest,
+        long destPosition,
+        long windowStart,
+        long destLimit) {
+      long srcEnd = position + length;
+      long destStart = destPosition;
+      while (true) {
+        if (position == srcEnd) {
+          throw new FlinkBigQueryException("Malformed LZ4 block");
+        }
+        int token = src.getByte(position++) & 0xFF;
+        long literalLength = token >>> 4;
+        if (literalLength == 0xF) {
+          int lengthByte;
+          do {
+            if (position == srcEnd) {
+              throw new FlinkBigQueryException("Malformed LZ4 block");
+            }
+            lengthByte = src.getByte(position++) & 0xFF;
+            literalLength += lengthByte;
+          } while (lengthByte == 0xFF);
+        }
+        if (literalLength > srcEnd - position || literalLength > destLimit - destPosition) {
+          throw new FlinkBigQueryException("Malformed LZ4 block");
+        }
+        dest.setBytes(destPosition, src, position, literalLength);
+        position += literalLength;
+        destPosition += literalLength;
+        // the last sequence of a block has only literals
+        if (position == srcEnd) {
+          return (int) (destPosition - destStart);
+        }
+        if (srcEnd - position < 2) {
+          throw new FlinkBigQueryException("Malformed LZ4 block");
+        }
+        int offset = (src.getByte(position) & 0xFF) | (src.getByte(position + 1) & 0xFF) << 8;
+        position += 2;
+        long matchLength = token & 0xF;
+        if (matchLength == 0xF) {
+          int lengthByte;
+          do {
+            if (position == srcEnd) {
+              throw new FlinkBigQueryException("Malformed LZ4 block");
+            }
+            lengthByte = src.getByte(position++) & 0xFF;
+            matchLength += lengthByte;
+          } while (lengthByte == 0xFF);
+        }
+        matchLength += MIN_MATCH;
+        long matchPosition = destPosition - offset;
+        if (offset == 0 || matchPosition < windowStart || matchLength > destLimit - destPosition) {
+          throw new FlinkBigQueryException("Malformed LZ4 block");
+        }
+        if (offset >= matchLength) {
+          dest.setBytes(destPosition, dest, matchPosition, matchLength);
+        } else {
+          // the match repeats the bytes it is copying
+          for (long i = 0; i < matchLength; i++) {
+            dest.setByte(destPosition + i, dest.getByte(matchPosition + i));
+          }
+        }
+        destPosition += matchLength;
+      }
+    }
+
+    private static int descriptorExtraLength(int flags) {
+      return ((flags & FLAG_CONTENT_SIZE) != 0 ? 8 : 0)
+          + ((flags & FLAG_DICTIONARY_ID) != 0 ? 4 : 0);
+    }
+
+    private static int headerChecksum(ArrowBuf buffer, long position, int length) {
+      return (XXHASH.hash(buffer.nioBuffer(position, length), 0, length, 0) >> 8) & 0xFF;
+    }
+
+    private static void checkChecksum(ArrowBuf buffer, long position, int length, int checksum) {
+      if (XXHASH.hash(buffer.nioBuffer(position, length), 0, length, 0) != checksum) {
+        throw new FlinkBigQueryException("LZ4 frame checksum mismatch");
+      }
+    }
+
+    @Override
+    public CompressionUtil.CodecType getCodecType() {
+      return CompressionUtil.CodecType.LZ4_FRAME;
+    }
+  }
+
+  /** Zstandard, coded by zstd-jni straight between the off-heap Arrow buffers. */
+  private static final class ZstdCompressionCodec extends AbstractCompressionCodec {
+
+    @Override
+    protected ArrowBuf doCompress(BufferAllocator allocator, ArrowBuf uncompressedBuffer) {
+      long maxSize = Zstd.compressBound(uncompressedBuffer.writerIndex());
+      long dstSize = CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH + maxSize;
+      ArrowBuf compressedBuffer = allocator.buffer(dstSize);
+      long bytesWritten =
+          Zstd.compressUnsafe(
+              compressedBuffer.memoryAddress() + CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH,
+              maxSize,
+              uncompressedBuffer.memoryAddress(),
+              uncompressedBuffer.writerIndex(),
+              Zstd.defaultCompressionLevel());
+      if (Zstd.isError(bytesWritten)) {
+        compressedBuffer.close();
+        throw new FlinkBigQueryException(
+            "Error while compressing with Zstandard: " + Zstd.getErrorName(bytesWritten));
+      }
+      compressedBuffer.writerIndex(CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH + bytesWritten);
+      return compressedBuffer;
+    }
+
+    @Override
+    protected ArrowBuf doDecompress(BufferAllocator allocator, ArrowBuf compressedBuffer) {
+      long decompressedLength = readUncompressedLength(compressedBuffer);
+      ArrowBuf decompressedBuffer = allocator.buffer(decompressedLength);
+      long decompressedSize =
+          Zstd.decompressUnsafe(
+              decompressedBuffer.memoryAddress(),
+              decompressedLength,
+              compressedBuffer.memoryAddress() + CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH,
+              compressedBuffer.writerIndex() - CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH);
+      if (Zstd.isError(decompressedSize)) {
+        decompressedBuffer.close();
+        throw new FlinkBigQueryException(
+            "Error while decompressing with Zstandard: " + Zstd.getErrorName(decompressedSize));
+      }
+      if (decompressedSize != decompressedLength) {
+        decompressedBuffer.close();
+        throw new FlinkBigQueryException(
+            String.format(
+                "Zstandard buffer decompressed to %d bytes, expected %d",
+                decompressedSize, decompressedLength));
+      }
+      decompressedBuffer.writerIndex(decompressedLength);
+      return decompressedBuffer;
+    }
+
+    @Override
+    public CompressionUtil.CodecType getCodecType() {
+      return CompressionUtil.CodecType.ZSTD;
+    }
+  }
+}
@@ -17,32 +17,43 @@ package com.google.cloud.flink.bigquery.util.arrow;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
-import java.math.BigDecimal;
-import java.nio.ByteBuffer;
-import java.time.Instant;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneId;
-import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.List;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeNanoVector;
+import org.apache.arrow.vector.TimeSecVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.util.JsonStringHashMap;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.types.TimeUnit;
 import org.apache.flink.annotation.Internal;
-import org.apache.flink.table.data.DecimalData;
 import org.apache.flink.table.data.GenericArrayData;
 import org.apache.flink.table.data.GenericRowData;
 import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.data.StringData;
-import org.apache.flink.table.data.TimestampData;
 import org.apache.flink.table.types.logical.ArrayType;
 import org.apache.flink.table.types.logical.DecimalType;
 import org.apache.flink.table.types.logical.LogicalType;
 import org.apache.flink.table.types.logical.RowType;
 import org.apache.flink.table.types.logical.utils.LogicalTypeUtils;
 
-/** Tool class used to convert from Arrow {@link GenericRecord} to {@link RowData} */
+/** Tool class used to convert from Arrow {@link VectorSchemaRoot} to {@link RowData} */
 @Internal
 public class ArrowToRowDataConverters {
 
@@ -55,274 +66,191 @@ public class ArrowToRowDataConverters {
     Object convert(Object object);
   }
 
+  /**
+   * Reads the cells of one Arrow vector as Flink internal data. A reader is bound to its vector
+   * once, reads the value buffers with the typed accessor of the vector and only allocates the
+   * Flink value of the cell, never an intermediate Java object as {@code getObject} does.
+   */
+  @FunctionalInterface
+  public interface ArrowFieldReader {
+    Object read(int row);
+  }
+
   // -------------------------------------------------------------------------------------
   // Runtime Converters
   // -------------------------------------------------------------------------------------
 
   public static ArrowToRowDataConverter createRowConverter(
       RowType rowType, List<String> readSessionFieldNames) {
-    final ArrowToRowDataConverter[] fieldConverters =
-        rowType.getFields().stream()
-            .map(RowType.RowField::getType)
-            .map(ArrowToRowDataConverters::createNullableConverter)
-            .toArray(ArrowToRowDataConverter[]::new);
-    final int arity = rowType.getFieldCount();
-    List<String> fieldNameList = rowType.getFieldNames();
-    final List<String> arrowFields = new ArrayList<String>();
-
-    return arrowObject -> {
-      return getArrowObject(fieldConverters, arity, fieldNameList, arrowFields, arrowObject);
-    };
+    return new ArrowRowConverter(rowType, createColumnPlan(rowType, readSessionFieldNames));
   }
 
-  private static Object getArrowObject(
-      final ArrowToRowDataConverter[] fieldConverters,
-      final int arity,
-      final List<String> fieldNameList,
-      final List<String> arrowFields,
-      Object arrowObject) {
-    List<GenericRowData> rowdatalist = new ArrayList<GenericRowData>();
-    if (arrowObject instanceof VectorSchemaRoot) {
-      VectorSchemaRoot record = (VectorSchemaRoot) arrowObject;
-      record.getSchema().getFields().stream()
-          .forEach(
-              field -> {
-                arrowFields.add(field.getName());
-              });
-      int numOfRows = record.getRowCount();
-      for (int row = 0; row < numOfRows; ++row) {
-        GenericRowData genericRowData = new GenericRowData(arity);
-        for (int col = 0; col < arity; col++) {
-          String rowTypeField = fieldNameList.get(col);
-          int arrowFieldIdx = arrowFields.indexOf(rowTypeField);
-          genericRowData.setField(
-              col,
-              fieldConverters[col].convert(
-                  record.getFieldVectors().get(arrowFieldIdx).getObject(row)));
-        }
-        rowdatalist.add(genericRowData);
-      }
-    } else if (arrowObject instanceof JsonStringHashMap) {
-      JsonStringHashMap<String, ?> record = (JsonStringHashMap<String, ?>) arrowObject;
-      ArrayList<String> columnSet = new ArrayList<String>(record.keySet());
-      GenericRowData genericRowData = new GenericRowData(arity);
-      if (!columnSet.isEmpty()) {
-        for (int col = 0; col < arity; col++) {
-          String actualField = fieldNameList.get(col);
-          if (columnSet.contains(actualField)) {
-            int actualIndex = columnSet.indexOf(actualField);
-            genericRowData.setField(
-                col, fieldConverters[col].convert(record.get(columnSet.get(actualIndex))));
-          } else {
-            genericRowData.setField(col, fieldConverters[col].convert(null));
-          }
-        }
+  /**
+   * Maps every field of {@code rowType} to the index of its vector in the read session schema,
+   * resolved once per read session instead of by name for every batch.
+   */
+  public static int[] createColumnPlan(RowType rowType, List<String> readSessionFieldNames) {
+    int[] columnPlan = new int[rowType.getFieldCount()];
+    for (int col = 0; col < columnPlan.length; col++) {
+      String fieldName = rowType.getFieldNames().get(col);
+      columnPlan[col] = readSessionFieldNames.indexOf(fieldName);
+      if (columnPlan[col] < 0) {
+        throw new IllegalArgumentException(
+            "Field "
+                + fieldName
+                + " is missing from the read session fields "
+                + readSessionFieldNames);
       }
-      return genericRowData;
     }
-    return rowdatalist;
+    return columnPlan;
   }
 
-  /** Creates a runtime converter which is null safe. */
-  private static ArrowToRowDataConverter createNullableConverter(LogicalType type) {
-    final ArrowToRowDataConverter converter = createConverter(type);
-    return arrowObject -> {
-      if (arrowObject == null) {
-        return null;
-      }
-      return converter.convert(arrowObject);
-    };
-  }
+  /**
+   * Converts every row of a {@link VectorSchemaRoot} into a {@link GenericRowData}. The field
+   * readers are bound to the vectors of the root once and reused for as long as batches are loaded
+   * into the same root.
+   */
+  private static final class ArrowRowConverter implements ArrowToRowDataConverter {
+
+    private static final long serialVersionUID = 1L;
+    private final List<LogicalType> fieldTypes;
+    private final int[] columnPlan;
+    private transient VectorSchemaRoot boundRoot;
+    private transient ArrowFieldReader[] fieldReaders;
 
-  /** Creates a runtime converter which assuming input object is not null. */
-  private static ArrowToRowDataConverter createConverter(LogicalType type) {
-    ArrowToRowDataConverter value;
-    switch (type.getTypeRoot()) {
-      case NULL:
-        return arrowObject -> null;
-      case TINYINT:
-        return arrowObject -> arrowObject;
-      case SMALLINT:
-        return arrowObject -> ((Integer) arrowObject).shortValue();
-      case DATE:
-        return ArrowToRowDataConverters::convertToDate;
-      case TIME_WITHOUT_TIME_ZONE:
-        return ArrowToRowDataConverters::convertToTime;
-      case TIMESTAMP_WITHOUT_TIME_ZONE:
-      case TIMESTAMP_WITH_LOCAL_TIME_ZONE:
-        return ArrowToRowDataConverters::convertToTimestamp;
-      case BOOLEAN:
-      case INTEGER:
-      case INTERVAL_YEAR_MONTH:
-      case BIGINT:
-      case INTERVAL_DAY_TIME:
-      case FLOAT:
-      case DOUBLE:
-        return arrowObject -> arrowObject;
-      case CHAR:
-      case VARCHAR:
-        return arrowObject -> StringData.fromString(arrowObject.toString());
-      case BINARY:
-      case VARBINARY:
-        return ArrowToRowDataConverters::convertToBytes;
-      case DECIMAL:
-        value = createDecimalConverter((DecimalType) type);
-        return value;
-      case ARRAY:
-        return createArrayConverter((ArrayType) type);
-      case ROW:
-        return createRowConverter((RowType) type, ((RowType) type).getFieldNames());
-      case MAP:
-      case RAW:
-      default:
-        throw new UnsupportedOperationException("Unsupported type: " + type);
+    private ArrowRowConverter(RowType rowType, int[] columnPlan) {
+      this.fieldTypes = rowType.getChildren();
+      this.columnPlan = columnPlan;
     }
-  }
 
-  private static TimestampData convertToTimestamp(Object object) {
-    final long millis;
-    if (object instanceof Long) {
-      millis = ((Long) object) / 1000;
-    } else if (object instanceof Instant) {
-      millis = ((Instant) object).toEpochMilli();
-    } else {
-      JavaUtilConverter javaUtilConverter = JavaUtilConverter.getConverter();
-      if (javaUtilConverter != null) {
-        millis = javaUtilConverter.convertTimestamp(object);
-      } else {
-        throw new IllegalArgumentException(
-            "Unexpected object type for TIMESTAMP logical type. Received: " + object);
+    @Override
+    public Object convert(Object arrowObject) {
+      List<GenericRowData> rowdatalist = new ArrayList<GenericRowData>();
+      if (arrowObject instanceof VectorSchemaRoot) {
+        VectorSchemaRoot record = (VectorSchemaRoot) arrowObject;
+        if (record != boundRoot) {
+          bind(record);
+        }
+        int arity = fieldReaders.length;
+        int numOfRows = record.getRowCount();
+        for (int row = 0; row < numOfRows; ++row) {
+          GenericRowData genericRowData = new GenericRowData(arity);
+          for (int col = 0; col < arity; col++) {
+            genericRowData.setField(col, fieldReaders[col].read(row));
+          }
+          rowdatalist.add(genericRowData);
+        }
       }
+      return rowdatalist;
     }
-    return TimestampData.fromEpochMillis(millis);
-  }
 
-  private static int convertToDate(Object object) {
-    if (object instanceof Integer) {
-      return (Integer) object;
-    } else if (object instanceof LocalDate) {
-      return (int) ((LocalDate) object).toEpochDay();
-    } else {
-      JavaUtilConverter javaUtilConverter = JavaUtilConverter.getConverter();
-      if (javaUtilConverter != null) {
-        return (int) javaUtilConverter.convertDate(object);
-      } else {
-        throw new IllegalArgumentException(
-            "Unexpected object type for DATE logical type. Received: " + object);
+    private void bind(VectorSchemaRoot record) {
+      List<FieldVector> vectors = record.getFieldVectors();
+      ArrowFieldReader[] readers = new ArrowFieldReader[columnPlan.length];
+      for (int col = 0; col < columnPlan.length; col++) {
+        readers[col] = createNullableFieldReader(fieldTypes.get(col), vectors.get(columnPlan[col]));
       }
+      this.fieldReaders = readers;
+      this.boundRoot = record;
     }
   }
 
-  private static int convertToTime(Object object) {
-    ZoneId zoneId = ZoneId.of("UTC");
-    final int millis;
-    if (object instanceof Integer) {
-      int value = ((Integer) object);
-      millis = (Integer) (Math.abs(value) / 1000);
-    } else if (object instanceof Long) {
-      Long value = ((Long) object);
-      value = (Math.abs(value) / 1000);
-      LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(value), zoneId);
-      millis = (int) time.atZone(zoneId).toInstant().toEpochMilli();
-
-    } else if (object instanceof LocalTime) {
-      millis = ((LocalTime) object).get(ChronoField.MILLI_OF_DAY);
-    } else {
-      JavaUtilConverter javaUtilConverter = JavaUtilConverter.getConverter();
-      if (javaUtilConverter != null) {
-        millis = javaUtilConverter.convertTime(object);
-      } else {
-        throw new IllegalArgumentException(
-            "Unexpected object type for TIME logical type. Received: " + object);
-      }
-    }
-    return millis;
+  /** Creates a field reader which is null safe. */
+  public static ArrowFieldReader createNullableFieldReader(LogicalType type, ValueVector vector) {
+    final ArrowFieldReader reader = createFieldReader(type, vector);
+    return row -> vector.isNull(row) ? null : reader.read(row);
   }
 
-  private static ArrowToRowDataConverter createDecimalConverter(DecimalType decimalType) {
-    final int precision = decimalType.getPrecision();
-    final int scale = decimalType.getScale();
-    return arrowObject -> {
-      final byte[] bytes;
-      if (arrowObject instanceof ByteBuffer) {
-        ByteBuffer byteBuffer = (ByteBuffer) arrowObject;
-        bytes = new byte[byteBuffer.remaining()];
-        byteBuffer.get(bytes);
-      } else if (arrowObject instanceof BigDecimal) {
-        DecimalData bdValue =
-            DecimalData.fromBigDecimal((BigDecimal) arrowObject, precision, scale);
-        return bdValue;
-      } else {
-        bytes = (byte[]) arrowObject;
-      }
-      return DecimalData.fromUnscaledBytes(bytes, precision, scale);
-    };
+  /** Creates a field reader which assumes the cell is not null. */
+  private static ArrowFieldReader createFieldReader(LogicalType type, ValueVector vector) {
+    if (vector instanceof BitVector) {
+      BitVector bitVector = (BitVector) vector;
+      return row -> bitVector.get(row) != 0;
+    } else if (vector instanceof TinyIntVector) {
+      TinyIntVector tinyIntVector = (TinyIntVector) vector;
+      return tinyIntVector::get;
+    } else if (vector instanceof SmallIntVector) {
+      SmallIntVector smallIntVector = (SmallIntVector) vector;
+      return smallIntVector::get;
+    } else if (vector instanceof IntVector) {
+      IntVector intVector = (IntVector) vector;
+      return intVector::get;
+    } else if (vector instanceof BigIntVector) {
+      BigIntVector bigIntVector = (BigIntVector) vector;
+      return bigIntVector::get;
+    } else if (vector instanceof Float4Vector) {
+      Float4Vector float4Vector = (Float4Vector) vector;
+      return float4Vector::get;
+    } else if (vector instanceof Float8Vector) {
+      Float8Vector float8Vector = (Float8Vector) vector;
+      return float8Vector::get;
+    } else if (vector instanceof DateDayVector) {
+      DateDayVector dateDayVector = (DateDayVector) vector;
+      return dateDayVector::get;
+    } else if (vector instanceof TimeSecVector
+        || vector instanceof TimeMilliVector
+        || vector instanceof TimeMicroVector
+        || vector instanceof TimeNanoVector) {
+      return row -> ArrowColumnVectors.readTimeMillis(vector, row);
+    } else if (vector instanceof TimeStampVector) {
+      TimeStampVector timeStampVector = (TimeStampVector) vector;
+      TimeUnit unit = ArrowColumnVectors.timestampUnit(timeStampVector);
+      return row -> ArrowColumnVectors.readTimestamp(timeStampVector.get(row), unit);
+    } else if (vector instanceof VarCharVector) {
+      VarCharVector varCharVector = (VarCharVector) vector;
+      // the UTF-8 bytes between the offsets of the cell back the string as they are
+      return row -> StringData.fromBytes(varCharVector.get(row));
+    } else if (vector instanceof VarBinaryVector) {
+      VarBinaryVector varBinaryVector = (VarBinaryVector) vector;
+      return varBinaryVector::get;
+    } else if (vector instanceof FixedSizeBinaryVector) {
+      FixedSizeBinaryVector fixedSizeBinaryVector = (FixedSizeBinaryVector) vector;
+      return fixedSizeBinaryVector::get;
+    } else if (vector instanceof DecimalVector) {
+      DecimalVector decimalVector = (DecimalVector) vector;
+      DecimalType decimalType = (DecimalType) type;
+      int precision = decimalType.getPrecision();
+      int scale = decimalType.getScale();
+      return row -> ArrowColumnVectors.readDecimal(decimalVector, row, precision, scale);
+    } else if (vector instanceof ListVector) {
+      return createArrayReader((ArrayType) type, (ListVector) vector);
+    } else if (vector instanceof StructVector) {
+      return createRowReader((RowType) type, (StructVector) vector);
+    }
+    throw new UnsupportedOperationException(
+        "Unsupported Arrow vector " + vector.getClass().getSimpleName() + " for type " + type);
   }
 
-  private static ArrowToRowDataConverter createArrayConverter(ArrayType arrayType) {
-    final ArrowToRowDataConverter elementConverter =
-        createNullableConverter(arrayType.getElementType());
+  private static ArrowFieldReader createArrayReader(ArrayType arrayType, ListVector vector) {
+    final ArrowFieldReader elementReader =
+        createNullableFieldReader(arrayType.getElementType(), vector.getDataVector());
     final Class<?> elementClass =
         LogicalTypeUtils.toInternalConversionClass(arrayType.getElementType());
-
-    return arrowObject -> {
-      final List<?> list = (List<?>) arrowObject;
-      final int length = list.size();
+    return row -> {
+      final int start = vector.getElementStartIndex(row);
+      final int length = vector.getElementEndIndex(row) - start;
       final Object[] array = (Object[]) Array.newInstance(elementClass, length);
       for (int i = 0; i < length; ++i) {
-        array[i] = elementConverter.convert(list.get(i));
+        array[i] = elementReader.read(start + i);
       }
       return new GenericArrayData(array);
     };
   }
 
-  private static byte[] convertToBytes(Object object) {
-    if (object instanceof ByteBuffer) {
-      ByteBuffer byteBuffer = (ByteBuffer) object;
-      byte[] bytes = new byte[byteBuffer.remaining()];
-      byteBuffer.get(bytes);
-      return bytes;
-    } else {
-      return (byte[]) object;
+  private static ArrowFieldReader createRowReader(RowType rowType, StructVector vector) {
+    final int arity = rowType.getFieldCount();
+    final ArrowFieldReader[] fieldReaders = new ArrowFieldReader[arity];
+    for (int i = 0; i < arity; i++) {
+      fieldReaders[i] =
+          createNullableFieldReader(
+              rowType.getTypeAt(i), vector.getChild(rowType.getFieldNames().get(i)));
     }
-  }
-
-  private static class JavaUtilConverter {
-
-    private static JavaUtilConverter instance;
-    private static boolean instantiated = false;
-
-    public static JavaUtilConverter getConverter() {
-      if (instantiated) {
-        return instance;
-      }
-      try {
-        Class.forName(
-            "java.time.LocalDateTime", false, Thread.currentThread().getContextClassLoader());
-        instance = new JavaUtilConverter();
-      } catch (Exception e) {
-        instance = null;
-      } finally {
-        instantiated = true;
+    return row -> {
+      GenericRowData genericRowData = new GenericRowData(arity);
+      for (int i = 0; i < arity; i++) {
+        genericRowData.setField(i, fieldReaders[i].read(row));
       }
-      return instance;
-    }
-
-    public long convertDate(Object object) {
-      final java.time.LocalDate localDate = (LocalDate) object;
-      return localDate.toEpochDay();
-    }
-
-    public int convertTime(Object object) {
-      final java.time.LocalDateTime localDateTime = (LocalDateTime) object;
-      return (int) localDateTime.atZone(ZoneId.of("UTC")).toInstant().toEpochMilli();
-    }
-
-    public long convertTimestamp(Object object) {
-      final java.time.LocalDateTime localDateTime = (LocalDateTime) object;
-      return localDateTime.atZone(ZoneId.of("UTC")).toInstant().toEpochMilli();
-    }
-
-    private JavaUtilConverter() {}
+      return genericRowData;
+    };
   }
 }
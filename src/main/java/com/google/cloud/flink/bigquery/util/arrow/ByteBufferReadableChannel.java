@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util.arrow;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel reading from a {@link ByteBuffer}. Wrapped in an Arrow {@code ReadChannel} it lets {@code
+ * MessageSerializer} copy the record batch body straight from the buffer into Arrow memory, with no
+ * intermediate heap copy.
+ */
+public class ByteBufferReadableChannel implements ReadableByteChannel {
+
+  private final ByteBuffer source;
+  private boolean open = true;
+
+  public ByteBufferReadableChannel(ByteBuffer source) {
+    this.source = source;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws ClosedChannelException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    if (!source.hasRemaining()) {
+      return -1;
+    }
+    int length = Math.min(dst.remaining(), source.remaining());
+    ByteBuffer chunk = source.duplicate();
+    chunk.limit(chunk.position() + length);
+    dst.put(chunk);
+    source.position(source.position() + length);
+    return length;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery.util.avro;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.GenericArrayData;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.types.logical.ArrayType;
+import org.apache.flink.table.types.logical.DecimalType;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.LogicalTypeRoot;
+import org.apache.flink.table.types.logical.RowType;
+import org.apache.flink.table.types.logical.utils.LogicalTypeUtils;
+
+/**
+ * Decodes Avro binary records of the read session schema straight into {@link GenericRowData}. The
+ * decoding steps are compiled once from the Avro schema and the produced row type: selected fields
+ * are read with the primitive decoder calls of their Avro type and converted in place, unselected
+ * fields are skipped, and no intermediate {@code GenericRecord} is built.
+ */
+@Internal
+public final class AvroRowDataReader {
+
+  /** Decodes one value of a field. */
+  @FunctionalInterface
+  private interface FieldReader {
+    Object read(BinaryDecoder in) throws IOException;
+  }
+
+  /** Consumes one value of a field that is not produced. */
+  @FunctionalInterface
+  private interface FieldSkipper {
+    void skip(BinaryDecoder in) throws IOException;
+  }
+
+  private final int arity;
+  private final int[] rowPositions;
+  private final FieldReader[] fieldReaders;
+  private final FieldSkipper[] fieldSkippers;
+
+  private AvroRowDataReader(
+      int arity, int[] rowPositions, FieldReader[] fieldReaders, FieldSkipper[] fieldSkippers) {
+    this.arity = arity;
+    this.rowPositions = rowPositions;
+    this.fieldReaders = fieldReaders;
+    this.fieldSkippers = fieldSkippers;
+  }
+
+  /**
+   * Compiles the reader of {@code recordSchema} records. Field {@code i} of {@code rowType} is read
+   * from the Avro field named {@code selectedFields.get(i)}.
+   */
+  public static AvroRowDataReader create(
+      RowType rowType, List<String> selectedFields, Schema recordSchema) {
+    Map<String, Integer> rowPositionsByName = new HashMap<>();
+    for (int i = 0; i < rowType.getFieldCount(); i++) {
+      rowPositionsByName.put(selectedFields.get(i), i);
+    }
+    List<Schema.Field> avroFields = recordSchema.getFields();
+    int[] rowPositions = new int[avroFields.size()];
+    FieldReader[] fieldReaders = new FieldReader[avroFields.size()];
+    FieldSkipper[] fieldSkippers = new FieldSkipper[avroFields.size()];
+    for (int i = 0; i < avroFields.size(); i++) {
+      Schema.Field avroField = avroFields.get(i);
+      Integer rowPosition = rowPositionsByName.remove(avroField.name());
+      if (rowPosition == null) {
+        rowPositions[i] = -1;
+        fieldSkippers[i] = createSkipper(avroField.schema());
+      } else {
+        rowPositions[i] = rowPosition;
+        fieldReaders[i] = createReader(avroField.schema(), rowType.getTypeAt(rowPosition));
+      }
+    }
+    if (!rowPositionsByName.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Fields "
+              + rowPositionsByName.keySet()
+              + " are missing from the Avro schema "
+              + recordSchema);
+    }
+    return new AvroRowDataReader(
+        rowType.getFieldCount(), rowPositions, fieldReaders, fieldSkippers);
+  }
+
+  /** Decodes the next record of {@code in}. */
+  public GenericRowData read(BinaryDecoder in) throws IOException {
+    GenericRowData row = new GenericRowData(arity);
+    for (int i = 0; i < rowPositions.length; i++) {
+      if (rowPositions[i] < 0) {
+        fieldSkippers[i].skip(in);
+      } else {
+        row.setField(rowPositions[i], fieldReaders[i].read(in));
+      }
+    }
+    return row;
+  }
+
+  private static FieldReader createReader(Schema schema, LogicalType type) {
+    switch (schema.getType()) {
+      case UNION:
+        return createUnionReader(schema, type);
+      case NULL:
+        return in -> {
+          in.readNull();
+          return null;
+        };
+      case BOOLEAN:
+        return BinaryDecoder::readBoolean;
+      case INT:
+        return createIntReader(type);
+      case LONG:
+        return createLongReader(schema.getProp("logicalType"), type);
+      case FLOAT:
+        return BinaryDecoder::readFloat;
+      case DOUBLE:
+        return BinaryDecoder::readDouble;
+      case STRING:
+        return createStringReader(type);
+      case ENUM:
+        List<String> symbols = schema.getEnumSymbols();
+        return in -> StringData.fromString(symbols.get(in.readEnum()));
+      case BYTES:
+        return createBytesReader(type);
+      case FIXED:
+        int size = schema.getFixedSize();
+        return in -> {
+          byte[] bytes = new byte[size];
+          in.readFixed(bytes);
+          return convertBytes(bytes, type);
+        };
+      case ARRAY:
+        return createArrayReader(schema.getElementType(), (ArrayType) type);
+      case RECORD:
+        RowType rowType = (RowType) type;
+        AvroRowDataReader nested = create(rowType, rowType.getFieldNames(), schema);
+        return nested::read;
+      case MAP:
+      default:
+        throw new UnsupportedOperationException(
+            "Unsupported Avro type " + schema + " for type " + type);
+    }
+  }
+
+  private static FieldReader createUnionReader(Schema schema, LogicalType type) {
+    List<Schema> branches = schema.getTypes();
+    FieldReader[] branchReaders = new FieldReader[branches.size()];
+    for (int i = 0; i < branchReaders.length; i++) {
+      branchReaders[i] = createReader(branches.get(i), type);
+    }
+    return in -> branchReaders[in.readIndex()].read(in);
+  }
+
+  private static FieldReader createIntReader(LogicalType type) {
+    switch (type.getTypeRoot()) {
+      case TINYINT:
+        return in -> (byte) in.readInt();
+      case SMALLINT:
+        return in -> (short) in.readInt();
+      case BIGINT:
+        return in -> (long) in.readInt();
+      default:
+        // INTEGER, DATE as days and TIME as milliseconds of the day
+        return BinaryDecoder::readInt;
+    }
+  }
+
+  private static FieldReader createLongReader(@Nullable String avroLogicalType, LogicalType type) {
+    boolean millis =
+        "timestamp-millis".equals(avroLogicalType) || "time-millis".equals(avroLogicalType);
+    switch (type.getTypeRoot()) {
+      case TIMESTAMP_WITHOUT_TIME_ZONE:
+      case TIMESTAMP_WITH_LOCAL_TIME_ZONE:
+        if (millis) {
+          return in -> TimestampData.fromEpochMillis(in.readLong());
+        }
+        return in -> {
+          long micros = in.readLong();
+          return TimestampData.fromEpochMillis(
+              Math.floorDiv(micros, 1000), (int) Math.floorMod(micros, 1000) * 1000);
+        };
+      case TIME_WITHOUT_TIME_ZONE:
+        if (millis) {
+          return in -> (int) in.readLong();
+        }
+        return in -> (int) (in.readLong() / 1000);
+      case INTEGER:
+        return in -> (int) in.readLong();
+      default:
+        return BinaryDecoder::readLong;
+    }
+  }
+
+  private static FieldReader createStringReader(LogicalType type) {
+    LogicalTypeRoot root = type.getTypeRoot();
+    if (root == LogicalTypeRoot.TIMESTAMP_WITHOUT_TIME_ZONE) {
+      // DATETIME columns come as ISO local date times
+      return in ->
+          TimestampData.fromLocalDateTime(
+              LocalDateTime.parse(StringData.fromBytes(readBytes(in)).toString()));
+    }
+    // the UTF-8 bytes of the value back the string as they are
+    return in -> StringData.fromBytes(readBytes(in));
+  }
+
+  private static FieldReader createBytesReader(LogicalType type) {
+    return in -> convertBytes(readBytes(in), type);
+  }
+
+  private static Object convertBytes(byte[] bytes, LogicalType type) {
+    if (type.getTypeRoot() == LogicalTypeRoot.DECIMAL) {
+      DecimalType decimalType = (DecimalType) type;
+      return DecimalData.fromUnscaledBytes(
+          bytes, decimalType.getPrecision(), decimalType.getScale());
+    }
+    return bytes;
+  }
+
+  /** Reads the length prefixed bytes of a STRING or BYTES value into an array of their own. */
+  private static byte[] readBytes(BinaryDecoder in) throws IOException {
+    byte[] bytes = new byte[Math.toIntExact(in.readLong())];
+    in.readFixed(bytes);
+    return bytes;
+  }
+
+  private static FieldReader createArrayReader(Schema elementSchema, ArrayType arrayType) {
+    FieldReader elementReader = createReader(elementSchema, arrayType.getElementType());
+    Class<?> elementClass = LogicalTypeUtils.toInternalConversionClass(arrayType.getElementType());
+    return in -> {
+      Object[] array = (Object[]) Array.newInstance(elementClass, 0);
+      int length = 0;
+      for (long block = in.readArrayStart(); block != 0; block = in.arrayNext()) {
+        array = Arrays.copyOf(array, Math.toIntExact(length + block));
+        for (long i = 0; i < block; i++) {
+          array[length++] = elementReader.read(in);
+        }
+      }
+      return new GenericArrayData(array);
+    };
+  }
+
+  private static FieldSkipper createSkipper(Schema schema) {
+    switch (schema.getType()) {
+      case UNION:
+        List<Schema> branches = schema.getTypes();
+        FieldSkipper[] branchSkippers = new FieldSkipper[branches.size()];
+        for (int i = 0; i < branchSkippers.length; i++) {
+          branchSkippers[i] = createSkipper(branches.get(i));
+        }
+        return in -> branchSkippers[in.readIndex()].skip(in);
+      case NULL:
+        return BinaryDecoder::readNull;
+      case BOOLEAN:
+        return BinaryDecoder::readBoolean;
+      case INT:
+        return BinaryDecoder::readInt;
+      case LONG:
+        return BinaryDecoder::readLong;
+      case FLOAT:
+        return BinaryDecoder::readFloat;
+      case DOUBLE:
+        return BinaryDecoder::readDouble;
+      case STRING:
+        return BinaryDecoder::skipString;
+      case BYTES:
+        return BinaryDecoder::skipBytes;
+      case ENUM:
+        return BinaryDecoder::readEnum;
+      case FIXED:
+        int size = schema.getFixedSize();
+        return in -> in.skipFixed(size);
+      case ARRAY:
+        FieldSkipper elementSkipper = createSkipper(schema.getElementType());
+        return in -> {
+          for (long block = in.skipArray(); block != 0; block = in.skipArray()) {
+            for (long i = 0; i < block; i++) {
+              elementSkipper.skip(in);
+            }
+          }
+        };
+      case MAP:
+        FieldSkipper valueSkipper = createSkipper(schema.getValueType());
+        return in -> {
+          for (long block = in.skipMap(); block != 0; block = in.skipMap()) {
+            for (long i = 0; i < block; i++) {
+              in.skipString();
+              valueSkipper.skip(in);
+            }
+          }
+        };
+      case RECORD:
+        List<Schema.Field> fields = schema.getFields();
+        FieldSkipper[] fieldSkippers = new FieldSkipper[fields.size()];
+        for (int i = 0; i < fieldSkippers.length; i++) {
+          fieldSkippers[i] = createSkipper(fields.get(i).schema());
+        }
+        return in -> {
+          for (FieldSkipper fieldSkipper : fieldSkippers) {
+            fieldSkipper.skip(in);
+          }
+        };
+      default:
+        throw new UnsupportedOperationException("Unsupported Avro type " + schema);
+    }
+  }
+}
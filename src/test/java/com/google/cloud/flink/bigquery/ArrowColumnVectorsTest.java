@@ -0,0 +1,276 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.storage.v1.ArrowRecordBatch;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowSchemaConverter;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.data.ColumnarRowData;
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.types.logical.RowType;
+import org.junit.Test;
+
+public class ArrowColumnVectorsTest {
+
+  private static final RowType ROW_TYPE =
+      (RowType)
+          DataTypes.ROW(
+                  DataTypes.FIELD("word", DataTypes.STRING()),
+                  DataTypes.FIELD("word_count", DataTypes.BIGINT()),
+                  DataTypes.FIELD("price", DataTypes.DECIMAL(10, 2)),
+                  DataTypes.FIELD("ts", DataTypes.TIMESTAMP(6)),
+                  DataTypes.FIELD("counts", DataTypes.ARRAY(DataTypes.BIGINT())))
+              .getLogicalType();
+
+  @Test
+  public void columnarReadTest() throws IOException {
+    List<String> fieldNames = ROW_TYPE.getFieldNames();
+    ArrowRowDataDeserializationSchema deserializer =
+        new ArrowRowDataDeserializationSchema(ROW_TYPE, null, fieldNames, fieldNames, true);
+    ReadRowsResponse response =
+        ReadRowsResponse.newBuilder()
+            .setArrowRecordBatch(
+                ArrowRecordBatch.newBuilder()
+                    .setSerializedRecordBatch(
+                        serializeBatch(ArrowSchemaConverter.convertToSchema(ROW_TYPE))))
+            .setRowCount(2)
+            .build();
+
+    List<RowData> rows = new ArrayList<>();
+    Runnable release = deserializer.deserialize(response, new ListCollector<>(rows));
+
+    assertThat(rows).hasSize(2);
+    RowData first = rows.get(0);
+    assertThat(first).isInstanceOf(ColumnarRowData.class);
+    assertThat(first.getString(0).toString()).isEqualTo("flink");
+    assertThat(first.getLong(1)).isEqualTo(42L);
+    assertThat(first.getDecimal(2, 10, 2))
+        .isEqualTo(DecimalData.fromBigDecimal(new BigDecimal("12.34"), 10, 2));
+    assertThat(first.getTimestamp(3, 6).getMillisecond()).isEqualTo(1_650_000_000_123L);
+    assertThat(first.getTimestamp(3, 6).getNanoOfMillisecond()).isEqualTo(456_000);
+    assertThat(first.getArray(4).size()).isEqualTo(2);
+    assertThat(first.getArray(4).getLong(1)).isEqualTo(7L);
+    RowData second = rows.get(1);
+    assertThat(second.isNullAt(0)).isTrue();
+    assertThat(second.getLong(1)).isEqualTo(-1L);
+    assertThat(second.isNullAt(4)).isTrue();
+    release.run();
+  }
+
+  @Test
+  public void columnarStringReadTest() throws IOException {
+    RowType rowType =
+        (RowType) DataTypes.ROW(DataTypes.FIELD("word", DataTypes.STRING())).getLogicalType();
+    List<String> fieldNames = rowType.getFieldNames();
+    ArrowRowDataDeserializationSchema deserializer =
+        new ArrowRowDataDeserializationSchema(rowType, null, fieldNames, fieldNames, true);
+    ByteArrayOutputStream serializedBatch = new ByteArrayOutputStream();
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root =
+            VectorSchemaRoot.create(ArrowSchemaConverter.convertToSchema(rowType), allocator)) {
+      VarCharVector words = (VarCharVector) root.getVector("word");
+      words.setSafe(0, "flink".getBytes(StandardCharsets.UTF_8));
+      words.setSafe(1, new byte[0]);
+      words.setSafe(2, "bigquery".getBytes(StandardCharsets.UTF_8));
+      root.setRowCount(3);
+      try (org.apache.arrow.vector.ipc.message.ArrowRecordBatch batch =
+          new VectorUnloader(root).getRecordBatch()) {
+        MessageSerializer.serialize(new WriteChannel(Channels.newChannel(serializedBatch)), batch);
+      }
+    }
+    ReadRowsResponse response =
+        ReadRowsResponse.newBuilder()
+            .setArrowRecordBatch(
+                ArrowRecordBatch.newBuilder()
+                    .setSerializedRecordBatch(ByteString.copyFrom(serializedBatch.toByteArray())))
+            .setRowCount(3)
+            .build();
+
+    List<RowData> rows = new ArrayList<>();
+    Runnable release = deserializer.deserialize(response, new ListCollector<>(rows));
+    List<StringData> strings = new ArrayList<>();
+    rows.forEach(row -> strings.add(row.getString(0)));
+    release.run();
+
+    // the strings are slices of a heap copy of the batch, valid after its release
+    assertThat(strings.get(0).toString()).isEqualTo("flink");
+    assertThat(strings.get(1).toString()).isEmpty();
+    assertThat(strings.get(2).toString()).isEqualTo("bigquery");
+  }
+
+  @Test
+  public void rowReadReleasesNothingTest() throws IOException {
+    List<String> fieldNames = ROW_TYPE.getFieldNames();
+    ArrowRowDataDeserializationSchema deserializer =
+        new ArrowRowDataDeserializationSchema(ROW_TYPE, null, fieldNames, fieldNames);
+    ReadRowsResponse response =
+        ReadRowsResponse.newBuilder()
+            .setArrowRecordBatch(
+                ArrowRecordBatch.newBuilder()
+                    .setSerializedRecordBatch(
+                        serializeBatch(ArrowSchemaConverter.convertToSchema(ROW_TYPE))))
+            .setRowCount(2)
+            .build();
+
+    List<RowData> rows = new ArrayList<>();
+    deserializer.deserialize(response, new ListCollector<>(rows)).run();
+
+    assertThat(rows).hasSize(2);
+    assertThat(rows.get(0)).isNotInstanceOf(ColumnarRowData.class);
+    assertThat(rows.get(0).getLong(1)).isEqualTo(42L);
+  }
+
+  @Test
+  public void nestedFieldReadTest() throws IOException {
+    RowType readSessionRowType =
+        (RowType)
+            DataTypes.ROW(
+                    DataTypes.FIELD(
+                        "payload",
+                        DataTypes.ROW(
+                            DataTypes.FIELD(
+                                "user", DataTypes.ROW(DataTypes.FIELD("id", DataTypes.BIGINT()))),
+                            DataTypes.FIELD("score", DataTypes.DOUBLE()))),
+                    DataTypes.FIELD("word", DataTypes.STRING()))
+                .getLogicalType();
+    RowType rowType =
+        (RowType)
+            DataTypes.ROW(
+                    DataTypes.FIELD("word", DataTypes.STRING()),
+                    DataTypes.FIELD("payload_score", DataTypes.DOUBLE()),
+                    DataTypes.FIELD("payload_user_id", DataTypes.BIGINT()))
+                .getLogicalType();
+    ReadRowsResponse response =
+        ReadRowsResponse.newBuilder()
+            .setArrowRecordBatch(
+                ArrowRecordBatch.newBuilder()
+                    .setSerializedRecordBatch(
+                        serializeNestedBatch(
+                            ArrowSchemaConverter.convertToSchema(readSessionRowType))))
+            .setRowCount(3)
+            .build();
+
+    for (boolean columnarRead : new boolean[] {false, true}) {
+      // the sub-fields of the struct come in the order of the read session schema
+      ArrowRowDataDeserializationSchema deserializer =
+          new ArrowRowDataDeserializationSchema(
+              rowType,
+              null,
+              Arrays.asList("word", "payload.score", "payload.user.id"),
+              Arrays.asList("payload", "payload.user", "payload.user.id", "payload.score", "word"),
+              columnarRead);
+      List<RowData> rows = new ArrayList<>();
+      Runnable release = deserializer.deserialize(response, new ListCollector<>(rows));
+
+      assertThat(rows).hasSize(3);
+      assertThat(rows.get(0).getString(0).toString()).isEqualTo("flink");
+      assertThat(rows.get(0).getDouble(1)).isEqualTo(0.5);
+      assertThat(rows.get(0).getLong(2)).isEqualTo(7L);
+      // a field is null where one of its structs is null, whatever the vector of the field holds
+      assertThat(rows.get(1).isNullAt(1)).isTrue();
+      assertThat(rows.get(1).isNullAt(2)).isTrue();
+      assertThat(rows.get(2).getDouble(1)).isEqualTo(1.5);
+      assertThat(rows.get(2).isNullAt(2)).isTrue();
+      release.run();
+    }
+  }
+
+  private static ByteString serializeNestedBatch(Schema schema) throws IOException {
+    ByteArrayOutputStream serializedBatch = new ByteArrayOutputStream();
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+      root.allocateNew();
+      ((VarCharVector) root.getVector("word")).setSafe(0, "flink".getBytes(StandardCharsets.UTF_8));
+      StructVector payload = (StructVector) root.getVector("payload");
+      StructVector user = (StructVector) payload.getChild("user");
+      BigIntVector id = (BigIntVector) user.getChild("id");
+      Float8Vector score = (Float8Vector) payload.getChild("score");
+      payload.setIndexDefined(0);
+      user.setIndexDefined(0);
+      id.setSafe(0, 7L);
+      score.setSafe(0, 0.5);
+      payload.setNull(1);
+      user.setIndexDefined(1);
+      id.setSafe(1, 9L);
+      score.setSafe(1, 2.5);
+      payload.setIndexDefined(2);
+      user.setNull(2);
+      id.setSafe(2, 11L);
+      score.setSafe(2, 1.5);
+      root.setRowCount(3);
+      try (org.apache.arrow.vector.ipc.message.ArrowRecordBatch batch =
+          new VectorUnloader(root).getRecordBatch()) {
+        MessageSerializer.serialize(new WriteChannel(Channels.newChannel(serializedBatch)), batch);
+      }
+    }
+    return ByteString.copyFrom(serializedBatch.toByteArray());
+  }
+
+  private static ByteString serializeBatch(Schema schema) throws IOException {
+    ByteArrayOutputStream serializedBatch = new ByteArrayOutputStream();
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+      root.allocateNew();
+      ((VarCharVector) root.getVector("word")).setSafe(0, "flink".getBytes(StandardCharsets.UTF_8));
+      ((BigIntVector) root.getVector("word_count")).setSafe(0, 42L);
+      ((BigIntVector) root.getVector("word_count")).setSafe(1, -1L);
+      ((DecimalVector) root.getVector("price")).setSafe(0, new BigDecimal("12.34"));
+      ((TimeStampVector) root.getVector("ts")).setSafe(0, 1_650_000_000_123_456L);
+      UnionListWriter counts = ((ListVector) root.getVector("counts")).getWriter();
+      counts.setPosition(0);
+      counts.startList();
+      counts.writeBigInt(3L);
+      counts.writeBigInt(7L);
+      counts.endList();
+      root.setRowCount(2);
+      try (org.apache.arrow.vector.ipc.message.ArrowRecordBatch batch =
+          new VectorUnloader(root).getRecordBatch()) {
+        MessageSerializer.serialize(new WriteChannel(Channels.newChannel(serializedBatch)), batch);
+      }
+    }
+    return ByteString.copyFrom(serializedBatch.toByteArray());
+  }
+}
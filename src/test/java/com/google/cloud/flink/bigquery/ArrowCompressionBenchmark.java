@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import com.google.cloud.flink.bigquery.util.arrow.ArrowCompressionFactory;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Compares the wire size and the decoding cost of an uncompressed, an LZ4 and a ZSTD compressed
+ * record batch. The break-even bandwidth is the link speed below which the bytes a codec saves take
+ * longer to transfer than the codec takes to decompress them, so any slower link reads faster with
+ * compression turned on.
+ *
+ * <p>Not a unit test, run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.flink.bigquery.ArrowCompressionBenchmark}.
+ */
+public class ArrowCompressionBenchmark {
+
+  private static final int ROW_COUNT = 100_000;
+  private static final int WARMUP_ITERATIONS = 50;
+  private static final int MEASURED_ITERATIONS = 200;
+
+  public static void main(String[] args) throws IOException {
+    Schema schema =
+        new Schema(
+            Arrays.asList(
+                new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+                new Field("country", FieldType.nullable(new ArrowType.Utf8()), null),
+                new Field(
+                    "amount",
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+                    null)));
+    byte[] uncompressed = serialize(schema, CompressionUtil.CodecType.NO_COMPRESSION);
+    long baseline = measureDecodeNanos(schema, uncompressed);
+    System.out.printf(
+        "%-15s %12s %8s %14s %22s%n", "codec", "bytes", "ratio", "decode ms", "break-even MB/s");
+    System.out.printf(
+        "%-15s %12d %8.2f %14.3f %22s%n",
+        CompressionUtil.CodecType.NO_COMPRESSION, uncompressed.length, 1.0, baseline / 1e6, "-");
+    for (CompressionUtil.CodecType codecType :
+        Arrays.asList(CompressionUtil.CodecType.LZ4_FRAME, CompressionUtil.CodecType.ZSTD)) {
+      byte[] compressed = serialize(schema, codecType);
+      long decodeNanos = measureDecodeNanos(schema, compressed);
+      double savedBytes = uncompressed.length - compressed.length;
+      double extraSeconds = Math.max(decodeNanos - baseline, 1) / 1e9;
+      System.out.printf(
+          "%-15s %12d %8.2f %14.3f %22.1f%n",
+          codecType,
+          compressed.length,
+          (double) uncompressed.length / compressed.length,
+          decodeNanos / 1e6,
+          savedBytes / extraSeconds / (1024 * 1024));
+    }
+  }
+
+  private static byte[] serialize(Schema schema, CompressionUtil.CodecType codecType)
+      throws IOException {
+    String[] countries = {"US", "DE", "FR", "IN", "JP", "BR", "GB", "CA"};
+    Random random = new Random(42);
+    ByteArrayOutputStream serializedBatch = new ByteArrayOutputStream();
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+      BigIntVector id = (BigIntVector) root.getVector("id");
+      VarCharVector country = (VarCharVector) root.getVector("country");
+      Float8Vector amount = (Float8Vector) root.getVector("amount");
+      for (int i = 0; i < ROW_COUNT; i++) {
+        id.setSafe(i, i);
+        country.setSafe(
+            i, countries[random.nextInt(countries.length)].getBytes(StandardCharsets.UTF_8));
+        if (random.nextInt(10) == 0) {
+          amount.setNull(i);
+        } else {
+          amount.setSafe(i, Math.round(random.nextDouble() * 10_000) / 100.0);
+        }
+      }
+      root.setRowCount(ROW_COUNT);
+      // the Arrow 7 unloader hands the vector buffers to the codec, which releases them
+      try (ArrowRecordBatch batch =
+          ArrowDeserializationSchemaTest.compressedRecordBatch(
+              root, ArrowCompressionFactory.INSTANCE.createCodec(codecType), allocator)) {
+        MessageSerializer.serialize(new WriteChannel(Channels.newChannel(serializedBatch)), batch);
+      }
+    }
+    return serializedBatch.toByteArray();
+  }
+
+  /** Returns the average time to load the serialized batch into the reused vectors. */
+  private static long measureDecodeNanos(Schema schema, byte[] serializedBatch) throws IOException {
+    ByteString batch = ByteString.copyFrom(serializedBatch);
+    ArrowDeserializationSchema<VectorSchemaRoot> deserializer =
+        ArrowDeserializationSchema.forGeneric(schema.toJson(), null);
+    try {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        deserializer.deserializeRecordBatch(batch);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        deserializer.deserializeRecordBatch(batch);
+      }
+      return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    } finally {
+      deserializer.close();
+    }
+  }
+}
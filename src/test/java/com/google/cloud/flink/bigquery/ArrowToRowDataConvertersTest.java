@@ -15,14 +15,33 @@
  */
 package com.google.cloud.flink.bigquery;
 
+import com.google.cloud.flink.bigquery.util.arrow.ArrowSchemaConverter;
 import com.google.cloud.flink.bigquery.util.arrow.ArrowToRowDataConverters;
 import com.google.cloud.flink.bigquery.util.arrow.ArrowToRowDataConverters.ArrowToRowDataConverter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
 import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
 import org.apache.flink.table.types.logical.RowType;
 import org.apache.flink.table.types.logical.RowType.RowField;
+import org.apache.flink.util.InstantiationUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -64,4 +83,98 @@ public class ArrowToRowDataConvertersTest {
         ArrowToRowDataConverters.createRowConverter(rowType, readSessionFieldNames);
     Assert.assertNotNull(createRowConverter);
   }
+
+  @Test
+  public void convertVectorSchemaRootTest() {
+    RowType rowType =
+        (RowType)
+            DataTypes.ROW(
+                    DataTypes.FIELD("word", DataTypes.STRING()),
+                    DataTypes.FIELD("word_count", DataTypes.BIGINT()),
+                    DataTypes.FIELD("ts", DataTypes.TIMESTAMP(6)),
+                    DataTypes.FIELD("counts", DataTypes.ARRAY(DataTypes.BIGINT())))
+                .getLogicalType();
+    ArrowToRowDataConverter converter =
+        ArrowToRowDataConverters.createRowConverter(rowType, rowType.getFieldNames());
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root =
+            VectorSchemaRoot.create(ArrowSchemaConverter.convertToSchema(rowType), allocator)) {
+      root.allocateNew();
+      ((VarCharVector) root.getVector("word")).setSafe(0, "flink".getBytes(StandardCharsets.UTF_8));
+      ((BigIntVector) root.getVector("word_count")).setSafe(0, 42L);
+      ((TimeStampVector) root.getVector("ts")).setSafe(0, 1_650_000_000_123_456L);
+      UnionListWriter counts = ((ListVector) root.getVector("counts")).getWriter();
+      counts.setPosition(0);
+      counts.startList();
+      counts.writeBigInt(3L);
+      counts.endList();
+      root.setRowCount(2);
+
+      List<RowData> rows = (List<RowData>) converter.convert(root);
+
+      Assert.assertEquals(2, rows.size());
+      Assert.assertEquals(StringData.fromString("flink"), rows.get(0).getString(0));
+      Assert.assertEquals(42L, rows.get(0).getLong(1));
+      Assert.assertEquals(
+          TimestampData.fromEpochMillis(1_650_000_000_123L, 456_000),
+          rows.get(0).getTimestamp(2, 6));
+      Assert.assertEquals(3L, rows.get(0).getArray(3).getLong(0));
+      Assert.assertTrue(rows.get(1).isNullAt(0));
+      Assert.assertTrue(rows.get(1).isNullAt(1));
+      Assert.assertTrue(rows.get(1).isNullAt(3));
+    }
+  }
+
+  @Test
+  public void columnPlanFollowsReadSessionOrderTest() {
+    RowType rowType =
+        (RowType)
+            DataTypes.ROW(
+                    DataTypes.FIELD("word", DataTypes.STRING()),
+                    DataTypes.FIELD("word_count", DataTypes.BIGINT()))
+                .getLogicalType();
+    List<String> readSessionFieldNames = Arrays.asList("word_count", "word");
+    ArrowToRowDataConverter converter =
+        ArrowToRowDataConverters.createRowConverter(rowType, readSessionFieldNames);
+    Schema readSessionSchema =
+        new Schema(
+            Arrays.asList(
+                new Field("word_count", FieldType.nullable(new ArrowType.Int(64, true)), null),
+                new Field("word", FieldType.nullable(new ArrowType.Utf8()), null)));
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root = VectorSchemaRoot.create(readSessionSchema, allocator)) {
+      ((BigIntVector) root.getVector("word_count")).setSafe(0, 7L);
+      ((VarCharVector) root.getVector("word")).setSafe(0, "flink".getBytes(StandardCharsets.UTF_8));
+      root.setRowCount(1);
+
+      RowData row = ((List<RowData>) converter.convert(root)).get(0);
+
+      Assert.assertEquals(StringData.fromString("flink"), row.getString(0));
+      Assert.assertEquals(7L, row.getLong(1));
+    }
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> ArrowToRowDataConverters.createColumnPlan(rowType, Arrays.asList("word")));
+  }
+
+  @Test
+  public void converterStateStaysFlatAcrossBatchesTest() throws IOException {
+    RowType rowType =
+        (RowType) DataTypes.ROW(DataTypes.FIELD("word_count", DataTypes.BIGINT())).getLogicalType();
+    ArrowToRowDataConverter converter =
+        ArrowToRowDataConverters.createRowConverter(rowType, rowType.getFieldNames());
+    int initialSize = InstantiationUtil.serializeObject(converter).length;
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root =
+            VectorSchemaRoot.create(ArrowSchemaConverter.convertToSchema(rowType), allocator)) {
+      ((BigIntVector) root.getVector("word_count")).setSafe(0, 42L);
+      root.setRowCount(1);
+      for (int batch = 0; batch < 2_000_000; batch++) {
+        converter.convert(root);
+      }
+      Assert.assertEquals(42L, ((List<RowData>) converter.convert(root)).get(0).getLong(0));
+    }
+    // nothing is retained per batch, the converter is as large as before the first batch
+    Assert.assertEquals(initialSize, InstantiationUtil.serializeObject(converter).length);
+  }
 }
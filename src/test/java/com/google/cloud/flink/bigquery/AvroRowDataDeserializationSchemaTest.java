@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.storage.v1.AvroRows;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.types.logical.RowType;
+import org.junit.Test;
+
+public class AvroRowDataDeserializationSchemaTest {
+
+  @Test
+  public void deserializeResponseTest() throws IOException {
+    Schema schema =
+        new Schema.Parser()
+            .parse(
+                "{\"type\":\"record\",\"name\":\"__root__\",\"fields\":[{\"name\":\"word\",\"type\":[\"null\",\"string\"]},{\"name\":\"word_count\",\"type\":\"long\"}]}");
+    ByteArrayOutputStream serializedRows = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(serializedRows, null);
+    GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
+    for (int i = 0; i < 3; i++) {
+      GenericRecord record = new GenericData.Record(schema);
+      record.put("word", "word" + i);
+      record.put("word_count", (long) i);
+      writer.write(record, encoder);
+    }
+    encoder.flush();
+    RowType rowType =
+        (RowType)
+            DataTypes.ROW(
+                    DataTypes.FIELD("word", DataTypes.STRING()),
+                    DataTypes.FIELD("word_count", DataTypes.BIGINT()))
+                .getLogicalType();
+    AvroRowDataDeserializationSchema deserializer =
+        new AvroRowDataDeserializationSchema(
+            rowType, null, rowType.getFieldNames(), rowType.getFieldNames(), schema.toString());
+    ReadRowsResponse response =
+        ReadRowsResponse.newBuilder()
+            .setAvroRows(
+                AvroRows.newBuilder()
+                    .setSerializedBinaryRows(ByteString.copyFrom(serializedRows.toByteArray())))
+            .setRowCount(3)
+            .build();
+
+    List<RowData> rows = new ArrayList<>();
+    deserializer.deserialize(response, new ListCollector<>(rows));
+
+    List<String> decoded = new ArrayList<>();
+    for (RowData row : rows) {
+      decoded.add(row.getString(0) + "=" + row.getLong(1));
+    }
+    assertThat(decoded).containsExactly("word0=0", "word1=1", "word2=2").inOrder();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.cloud.bigquery.storage.v1.AvroRows;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.flink.bigquery.util.avro.AvroRowDataReader;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.types.logical.RowType;
+import org.junit.Test;
+
+public class AvroRowDataReaderTest {
+
+  private static final Schema READ_SESSION_SCHEMA =
+      new Schema.Parser()
+          .parse(
+              "{\"type\":\"record\",\"name\":\"__root__\",\"fields\":["
+                  + "{\"name\":\"unused_struct\",\"type\":[\"null\",{\"type\":\"record\",\"name\":\"s\",\"fields\":[{\"name\":\"a\",\"type\":\"string\"},{\"name\":\"b\",\"type\":{\"type\":\"array\",\"items\":\"long\"}}]}]},"
+                  + "{\"name\":\"word\",\"type\":[\"null\",\"string\"]},"
+                  + "{\"name\":\"ts\",\"type\":[\"null\",{\"type\":\"long\",\"logicalType\":\"timestamp-micros\"}]},"
+                  + "{\"name\":\"unused_bytes\",\"type\":[\"null\",\"bytes\"]},"
+                  + "{\"name\":\"price\",\"type\":[\"null\",{\"type\":\"bytes\",\"logicalType\":\"decimal\",\"precision\":38,\"scale\":9}]},"
+                  + "{\"name\":\"counts\",\"type\":{\"type\":\"array\",\"items\":\"long\"}},"
+                  + "{\"name\":\"word_count\",\"type\":[\"null\",\"long\"]}]}");
+
+  private static final RowType ROW_TYPE =
+      (RowType)
+          DataTypes.ROW(
+                  DataTypes.FIELD("word_count", DataTypes.BIGINT()),
+                  DataTypes.FIELD("word", DataTypes.STRING()),
+                  DataTypes.FIELD("ts", DataTypes.TIMESTAMP(6)),
+                  DataTypes.FIELD("price", DataTypes.DECIMAL(38, 9)),
+                  DataTypes.FIELD("counts", DataTypes.ARRAY(DataTypes.BIGINT())))
+              .getLogicalType();
+
+  @Test
+  public void readSelectedFieldsTest() throws IOException {
+    AvroRowDataDeserializationSchema deserializer =
+        new AvroRowDataDeserializationSchema(
+            ROW_TYPE,
+            null,
+            ROW_TYPE.getFieldNames(),
+            ROW_TYPE.getFieldNames(),
+            READ_SESSION_SCHEMA.toString());
+    ReadRowsResponse response =
+        ReadRowsResponse.newBuilder()
+            .setAvroRows(AvroRows.newBuilder().setSerializedBinaryRows(serializeRows()))
+            .setRowCount(2)
+            .build();
+
+    List<RowData> rows = new ArrayList<>();
+    deserializer.deserialize(response, new ListCollector<>(rows));
+
+    assertThat(rows).hasSize(2);
+    RowData first = rows.get(0);
+    assertThat(first.getLong(0)).isEqualTo(42L);
+    assertThat(first.getString(1)).isEqualTo(StringData.fromString("flink"));
+    assertThat(first.getTimestamp(2, 6))
+        .isEqualTo(TimestampData.fromEpochMillis(1_650_000_000_123L, 456_000));
+    assertThat(first.getDecimal(3, 38, 9))
+        .isEqualTo(DecimalData.fromBigDecimal(new BigDecimal("12.340000000"), 38, 9));
+    assertThat(first.getArray(4).size()).isEqualTo(2);
+    assertThat(first.getArray(4).getLong(1)).isEqualTo(7L);
+    RowData second = rows.get(1);
+    assertThat(second.isNullAt(0)).isTrue();
+    assertThat(second.isNullAt(1)).isTrue();
+    assertThat(second.isNullAt(2)).isTrue();
+    assertThat(second.getArray(4).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void missingFieldTest() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            AvroRowDataReader.create(
+                ROW_TYPE,
+                Arrays.asList("word_count", "word", "ts", "price", "missing"),
+                READ_SESSION_SCHEMA));
+  }
+
+  private static ByteString serializeRows() throws IOException {
+    ByteArrayOutputStream serializedRows = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(serializedRows, null);
+    GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(READ_SESSION_SCHEMA);
+
+    GenericRecord struct =
+        new GenericData.Record(
+            READ_SESSION_SCHEMA.getField("unused_struct").schema().getTypes().get(1));
+    struct.put("a", "skipped");
+    struct.put("b", Arrays.asList(1L, 2L, 3L));
+    GenericRecord first = new GenericData.Record(READ_SESSION_SCHEMA);
+    first.put("unused_struct", struct);
+    first.put("word", "flink");
+    first.put("ts", 1_650_000_000_123_456L);
+    first.put("unused_bytes", ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    first.put(
+        "price", ByteBuffer.wrap(new BigDecimal("12.340000000").unscaledValue().toByteArray()));
+    first.put("counts", Arrays.asList(3L, 7L));
+    first.put("word_count", 42L);
+    writer.write(first, encoder);
+
+    GenericRecord second = new GenericData.Record(READ_SESSION_SCHEMA);
+    second.put("counts", Collections.emptyList());
+    writer.write(second, encoder);
+    encoder.flush();
+    return ByteString.copyFrom(serializedRows.toByteArray());
+  }
+}
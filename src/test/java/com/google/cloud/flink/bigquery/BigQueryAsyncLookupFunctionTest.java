@@ -0,0 +1,190 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.flink.bigquery.lookup.BigQueryAsyncLookupFunction;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupOptions;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.functions.FunctionContext;
+import org.junit.Test;
+
+public class BigQueryAsyncLookupFunctionTest {
+
+  private static final List<RowData> ROWS =
+      Collections.singletonList(GenericRowData.of(StringData.fromString("hamlet"), 7L));
+
+  @Test
+  public void cachedLookupTest() throws Exception {
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    when(reader.read(anyString())).thenReturn(ROWS);
+    Map<String, Counter> counters = new HashMap<>();
+    BigQueryAsyncLookupFunction function =
+        new BigQueryAsyncLookupFunction(
+            reader,
+            new int[] {0, 1},
+            Arrays.asList("word", "word_count"),
+            Arrays.asList(DataTypes.STRING(), DataTypes.BIGINT()),
+            new BigQueryLookupOptions(100, Duration.ofMinutes(1), 2));
+    function.open(functionContext(counters));
+
+    assertThat(lookup(function, StringData.fromString("hamlet"), 7L)).isEqualTo(ROWS);
+    assertThat(lookup(function, StringData.fromString("hamlet"), 7L)).isEqualTo(ROWS);
+    // the second lookup of the key is served from the cache
+    verify(reader, times(1)).read("(`word` = 'hamlet') AND (`word_count` = 7)");
+    assertThat(counters.get("lookupCacheHits").getCount()).isEqualTo(1);
+    assertThat(counters.get("lookupCacheMisses").getCount()).isEqualTo(1);
+    function.close();
+  }
+
+  @Test
+  public void uncachedLookupTest() throws Exception {
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    when(reader.read(anyString())).thenReturn(ROWS);
+    BigQueryAsyncLookupFunction function =
+        new BigQueryAsyncLookupFunction(
+            reader,
+            new int[] {1},
+            Collections.singletonList("word_count"),
+            Collections.singletonList(DataTypes.BIGINT()),
+            BigQueryLookupOptions.DEFAULT);
+    function.open(functionContext(new HashMap<>()));
+
+    lookup(function, 7L);
+    lookup(function, 7L);
+    verify(reader, times(2)).read("(`word_count` = 7)");
+    function.close();
+  }
+
+  @Test
+  public void nullKeyLookupTest() throws Exception {
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    BigQueryAsyncLookupFunction function =
+        new BigQueryAsyncLookupFunction(
+            reader,
+            new int[] {1},
+            Collections.singletonList("word_count"),
+            Collections.singletonList(DataTypes.BIGINT()),
+            BigQueryLookupOptions.DEFAULT);
+    function.open(functionContext(new HashMap<>()));
+
+    // NULL equals no key, there is nothing to read
+    assertThat(lookup(function, (Object) null)).isEmpty();
+    verifyNoInteractions(reader);
+    function.close();
+  }
+
+  @Test
+  public void batchedLookupTest() throws Exception {
+    RowData hamlet = GenericRowData.of(StringData.fromString("hamlet"), 7L);
+    RowData othello = GenericRowData.of(StringData.fromString("othello"), 3L);
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    when(reader.read(anyString())).thenReturn(Arrays.asList(hamlet, othello));
+    BigQueryAsyncLookupFunction function =
+        new BigQueryAsyncLookupFunction(
+            reader,
+            new int[] {1},
+            Collections.singletonList("word_count"),
+            Collections.singletonList(DataTypes.BIGINT()),
+            new BigQueryLookupOptions(-1, Duration.ZERO, 2, Duration.ZERO, 3, Duration.ofHours(1)));
+    function.open(functionContext(new HashMap<>()));
+
+    List<CompletableFuture<Collection<RowData>>> futures = new ArrayList<>();
+    for (long key : new long[] {7L, 3L, 7L}) {
+      CompletableFuture<Collection<RowData>> future = new CompletableFuture<>();
+      function.eval(future, key);
+      futures.add(future);
+    }
+    // the full batch is read at once, long before its window passes
+    assertThat(futures.get(0).get(10, TimeUnit.SECONDS)).containsExactly(hamlet);
+    assertThat(futures.get(1).get(10, TimeUnit.SECONDS)).containsExactly(othello);
+    assertThat(futures.get(2).get(10, TimeUnit.SECONDS)).containsExactly(hamlet);
+    verify(reader, times(1)).read("(`word_count` IN (7, 3))");
+    function.close();
+  }
+
+  @Test
+  public void batchWindowLookupTest() throws Exception {
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    when(reader.read(anyString())).thenReturn(ROWS);
+    BigQueryAsyncLookupFunction function =
+        new BigQueryAsyncLookupFunction(
+            reader,
+            new int[] {0, 1},
+            Arrays.asList("word", "word_count"),
+            Arrays.asList(DataTypes.STRING(), DataTypes.BIGINT()),
+            new BigQueryLookupOptions(
+                -1, Duration.ZERO, 2, Duration.ZERO, 100, Duration.ofMillis(10)));
+    function.open(functionContext(new HashMap<>()));
+
+    CompletableFuture<Collection<RowData>> hamlet = new CompletableFuture<>();
+    function.eval(hamlet, StringData.fromString("hamlet"), 7L);
+    CompletableFuture<Collection<RowData>> lear = new CompletableFuture<>();
+    function.eval(lear, StringData.fromString("lear"), 7L);
+    // the batch never fills, it is read once its window passes
+    assertThat(hamlet.get(10, TimeUnit.SECONDS)).isEqualTo(ROWS);
+    assertThat(lear.get(10, TimeUnit.SECONDS)).isEmpty();
+    verify(reader, times(1))
+        .read(
+            "(((`word` = 'hamlet') AND (`word_count` = 7))"
+                + " OR ((`word` = 'lear') AND (`word_count` = 7)))");
+    function.close();
+  }
+
+  private static Collection<RowData> lookup(BigQueryAsyncLookupFunction function, Object... keys)
+      throws InterruptedException, ExecutionException {
+    CompletableFuture<Collection<RowData>> future = new CompletableFuture<>();
+    function.eval(future, keys);
+    return future.get();
+  }
+
+  private static FunctionContext functionContext(Map<String, Counter> counters) {
+    MetricGroup metricGroup = mock(MetricGroup.class);
+    when(metricGroup.counter(anyString()))
+        .thenAnswer(
+            invocation ->
+                counters.computeIfAbsent(invocation.getArgument(0), name -> new SimpleCounter()));
+    RuntimeContext runtimeContext = mock(RuntimeContext.class);
+    when(runtimeContext.getMetricGroup()).thenReturn(metricGroup);
+    return new FunctionContext(runtimeContext);
+  }
+}
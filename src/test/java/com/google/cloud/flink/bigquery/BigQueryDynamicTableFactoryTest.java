@@ -78,15 +78,28 @@ public class BigQueryDynamicTableFactoryTest {
   public void optionalOptionsTestSuccess() {
     List<String> expectedOptions =
         Arrays.asList(
+            "arrowColumnarRead",
             "arrowCompressionCodec",
+            "arrowMemoryLimit",
             "bqBackgroundThreadsPerStream",
             "bqEncodedCreateReadSessionRequest",
+            "bqNumStreamsPerPartition",
+            "continuousReadBackfill",
+            "continuousReadColumn",
+            "continuousReadDiscoveryInterval",
+            "continuousReadLag",
             "credentials",
             "credentialsFile",
             "defaultParallelism",
             "filter",
             "format",
             "gcpAccessToken",
+            "lookupBatchSize",
+            "lookupBatchWindow",
+            "lookupCacheMaxRows",
+            "lookupCacheTtl",
+            "lookupFullCacheReloadInterval",
+            "lookupMaxConcurrentRequests",
             "maxParallelism",
             "parallelism",
             "parentProject",
@@ -96,12 +109,13 @@ public class BigQueryDynamicTableFactoryTest {
             "partitionType",
             "proxyPassword",
             "proxyUri",
-            "proxyUsername");
+            "proxyUsername",
+            "readSessionCacheExpiration");
     List<String> options = new ArrayList<String>();
     BigQueryDynamicTableFactory bigQueryDynamicTableFactory = new BigQueryDynamicTableFactory();
     Set<ConfigOption<?>> optionalOptions = bigQueryDynamicTableFactory.optionalOptions();
     assertThat(optionalOptions).isNotNull();
-    assertThat(optionalOptions.size()).isEqualTo(19);
+    assertThat(optionalOptions.size()).isEqualTo(33);
     optionalOptions.forEach(
         option -> {
           options.add(option.key().toString());
@@ -16,18 +16,47 @@
 package com.google.cloud.flink.bigquery;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.mock;
 
 import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.bigquery.storage.v1.ArrowSchema;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupOptions;
+import com.google.cloud.flink.bigquery.source.BigQueryContinuousReadOptions;
+import com.google.cloud.flink.bigquery.util.FlinkBigQueryConfig;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.flink.api.common.serialization.DeserializationSchema;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.api.connector.source.Boundedness;
 import org.apache.flink.configuration.ConfigOption;
 import org.apache.flink.configuration.ConfigOptions;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.transformations.SourceTransformation;
 import org.apache.flink.table.api.DataTypes;
 import org.apache.flink.table.api.Schema;
 import org.apache.flink.table.api.Schema.Builder;
@@ -37,10 +66,26 @@ import org.apache.flink.table.catalog.ObjectIdentifier;
 import org.apache.flink.table.catalog.ResolvedCatalogTable;
 import org.apache.flink.table.catalog.ResolvedSchema;
 import org.apache.flink.table.connector.ChangelogMode;
-import org.apache.flink.table.connector.format.DecodingFormat;
+import org.apache.flink.table.connector.source.AsyncTableFunctionProvider;
+import org.apache.flink.table.connector.source.DataStreamScanProvider;
+import org.apache.flink.table.connector.source.DynamicTableSource;
+import org.apache.flink.table.connector.source.ScanTableSource;
 import org.apache.flink.table.connector.source.ScanTableSource.ScanContext;
+import org.apache.flink.table.connector.source.SourceProvider;
+import org.apache.flink.table.connector.source.TableFunctionProvider;
+import org.apache.flink.table.connector.source.abilities.SupportsFilterPushDown;
+import org.apache.flink.table.connector.source.abilities.SupportsLimitPushDown;
+import org.apache.flink.table.connector.source.abilities.SupportsPartitionPushDown;
+import org.apache.flink.table.connector.source.abilities.SupportsProjectionPushDown;
 import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.expressions.CallExpression;
+import org.apache.flink.table.expressions.FieldReferenceExpression;
+import org.apache.flink.table.expressions.ResolvedExpression;
+import org.apache.flink.table.expressions.ValueLiteralExpression;
 import org.apache.flink.table.factories.FactoryUtil;
+import org.apache.flink.table.functions.BuiltInFunctionDefinitions;
+import org.apache.flink.table.runtime.connector.source.LookupRuntimeProviderContext;
+import org.apache.flink.table.runtime.connector.source.ScanRuntimeProviderContext;
 import org.apache.flink.table.types.DataType;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -64,28 +109,28 @@ public class BigQueryDynamicTableSourceTest {
     // Mock the big query client factory
     BigQueryClientFactory mockBigQueryClientFactory = mock(BigQueryClientFactory.class);
 
-    ArrowFormatFactory arrowFormat = new ArrowFormatFactory();
     DataType producedDataType =
         createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType();
-
-    DecodingFormat<DeserializationSchema<RowData>> decodingFormat =
-        arrowFormat.createDecodingFormat(createContextObject(), options);
-
-    ArrayList<String> readStreamNames = new ArrayList<String>();
+    List<List<String>> requestedFields = new ArrayList<>();
     CatalogTable catalogTableMock = Mockito.mock(CatalogTable.class);
 
     // Initialize the constructor
     BigQueryDynamicTableSource bigQueryDynamicTableSource =
         new BigQueryDynamicTableSource(
-            decodingFormat,
             producedDataType,
-            readStreamNames,
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(requestedFields),
+            column -> Collections.emptyList(),
             mockBigQueryClientFactory,
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
             catalogTableMock);
 
     ScanContext mockScanContext = mock(ScanContext.class);
     bigQueryDynamicTableSource.getScanRuntimeProvider(mockScanContext);
 
+    assertThat(requestedFields).containsExactly(Arrays.asList("word", "word_count"));
     assertThat(bigQueryDynamicTableSource instanceof BigQueryDynamicTableSource);
     assertThat(bigQueryDynamicTableSource.getChangelogMode()).isNotNull();
     assertThat(bigQueryDynamicTableSource.getChangelogMode() instanceof ChangelogMode);
@@ -93,6 +138,377 @@ public class BigQueryDynamicTableSourceTest {
     assertThat(bigQueryDynamicTableSource.asSummaryString()).isEqualTo("BigQuery Table Source");
   }
 
+  @Test
+  public void projectionPushDownTest() {
+    List<List<String>> requestedFields = new ArrayList<>();
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(requestedFields),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class));
+
+    // the planner pushes the projection into a copy, before asking for the runtime provider
+    DynamicTableSource projected = source.copy();
+    ((SupportsProjectionPushDown) projected).applyProjection(new int[][] {{1}});
+    ((ScanTableSource) projected.copy()).getScanRuntimeProvider(mock(ScanContext.class));
+    // nothing but the projected column is read
+    assertThat(requestedFields).containsExactly(Collections.singletonList("word_count"));
+
+    requestedFields.clear();
+    DynamicTableSource countOnly = source.copy();
+    ((SupportsProjectionPushDown) countOnly).applyProjection(new int[0][]);
+    ((ScanTableSource) countOnly).getScanRuntimeProvider(mock(ScanContext.class));
+    assertThat(requestedFields).containsExactly(Collections.singletonList("word"));
+  }
+
+  @Test
+  public void nestedProjectionPushDownTest() {
+    List<List<String>> requestedFields = new ArrayList<>();
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            DataTypes.ROW(
+                DataTypes.FIELD("word", DataTypes.STRING()),
+                DataTypes.FIELD(
+                    "payload",
+                    DataTypes.ROW(
+                        DataTypes.FIELD(
+                            "user",
+                            DataTypes.ROW(
+                                DataTypes.FIELD("id", DataTypes.BIGINT()),
+                                DataTypes.FIELD("name", DataTypes.STRING()))),
+                        DataTypes.FIELD("score", DataTypes.DOUBLE())))),
+            Arrays.asList("word", "payload"),
+            createReadSessionProvider(requestedFields),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class));
+    assertThat(source.supportsNestedProjection()).isTrue();
+
+    DynamicTableSource projected = source.copy();
+    ((SupportsProjectionPushDown) projected).applyProjection(new int[][] {{1, 0, 0}, {0}, {1, 1}});
+    ((ScanTableSource) projected.copy()).getScanRuntimeProvider(mock(ScanContext.class));
+    // only the used sub-fields of the struct are read
+    assertThat(requestedFields)
+        .containsExactly(Arrays.asList("payload.user.id", "word", "payload.score"));
+
+    requestedFields.clear();
+    DynamicTableSource whole = source.copy();
+    ((SupportsProjectionPushDown) whole).applyProjection(new int[][] {{1, 0, 1}, {1}});
+    ((ScanTableSource) whole).getScanRuntimeProvider(mock(ScanContext.class));
+    // a sub-field is read with its struct when the whole struct is used too
+    assertThat(requestedFields).containsExactly(Collections.singletonList("payload"));
+  }
+
+  @Test
+  public void lookupRuntimeProviderTest() {
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>()),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class));
+
+    assertThat(source.getLookupRuntimeProvider(new LookupRuntimeProviderContext(new int[][] {{1}})))
+        .isInstanceOf(AsyncTableFunctionProvider.class);
+    assertThrows(
+        UnsupportedOperationException.class,
+        () ->
+            source.getLookupRuntimeProvider(
+                new LookupRuntimeProviderContext(new int[][] {{1, 0}})));
+
+    BigQueryDynamicTableSource fullCacheSource =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>()),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class),
+            new BigQueryLookupOptions(-1, Duration.ZERO, 4, Duration.ofHours(1)));
+    assertThat(
+            fullCacheSource.getLookupRuntimeProvider(
+                new LookupRuntimeProviderContext(new int[][] {{1}})))
+        .isInstanceOf(TableFunctionProvider.class);
+  }
+
+  @Test
+  public void continuousReadTest() {
+    List<Optional<String>> rowRestrictions = new ArrayList<>();
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>(), rowRestrictions, new ArrayList<>()),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class),
+            BigQueryLookupOptions.DEFAULT,
+            new BigQueryContinuousReadOptions("ts", Duration.ofMinutes(1), Duration.ofMinutes(1)));
+
+    SourceProvider provider = (SourceProvider) source.getScanRuntimeProvider(new MockScanContext());
+    assertThat(provider.isBounded()).isFalse();
+    assertThat(provider.createSource().getBoundedness())
+        .isEqualTo(Boundedness.CONTINUOUS_UNBOUNDED);
+    // the initial read session reads the rows up to the high-water mark
+    assertThat(rowRestrictions.get(0).get()).startsWith("(`ts` <= TIMESTAMP '");
+  }
+
+  @Test
+  public void continuousReadWithoutBackfillTest() {
+    List<Optional<String>> rowRestrictions = new ArrayList<>();
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>(), rowRestrictions, new ArrayList<>()),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class),
+            BigQueryLookupOptions.DEFAULT,
+            new BigQueryContinuousReadOptions(
+                "ts", Duration.ofMinutes(1), Duration.ofMinutes(1), false));
+
+    source.getScanRuntimeProvider(new MockScanContext());
+    // the initial read session reads no row, tailing starts at its high-water mark
+    assertThat(rowRestrictions.get(0).get())
+        .matches("\\(`ts` > TIMESTAMP '(.+)' AND `ts` <= TIMESTAMP '\\1'\\)");
+  }
+
+  @Test
+  public void watermarkPushDownTest() {
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>()),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class));
+    assertThat(source.getScanRuntimeProvider(ScanRuntimeProviderContext.INSTANCE))
+        .isInstanceOf(SourceProvider.class);
+
+    WatermarkStrategy<RowData> watermarkStrategy =
+        WatermarkStrategy.forBoundedOutOfOrderness(Duration.ofSeconds(1));
+    source.applyWatermark(watermarkStrategy);
+    DataStreamScanProvider provider =
+        (DataStreamScanProvider)
+            ((ScanTableSource) source.copy())
+                .getScanRuntimeProvider(ScanRuntimeProviderContext.INSTANCE);
+    assertThat(provider.isBounded()).isTrue();
+    // the source operator generates the watermarks, for every read stream on its own
+    DataStream<RowData> stream =
+        provider.produceDataStream(StreamExecutionEnvironment.getExecutionEnvironment());
+    assertThat(((SourceTransformation<?, ?, ?>) stream.getTransformation()).getWatermarkStrategy())
+        .isSameInstanceAs(watermarkStrategy);
+  }
+
+  @Test
+  public void emptyRowDeserializationTest() {
+    List<RowData> rows = new ArrayList<>();
+    new EmptyRowDeserializationSchema(null)
+        .deserialize(
+            ReadRowsResponse.newBuilder().setRowCount(3).build(), new ListCollector<>(rows));
+    assertThat(rows).hasSize(3);
+    assertThat(rows.get(0).getArity()).isEqualTo(0);
+  }
+
+  @Test
+  public void filterPushDownTest() {
+    List<Optional<String>> rowRestrictions = new ArrayList<>();
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>(), rowRestrictions, new ArrayList<>()),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class));
+
+    ResolvedExpression translatable =
+        new CallExpression(
+            BuiltInFunctionDefinitions.EQUALS,
+            Arrays.asList(
+                new FieldReferenceExpression("word", DataTypes.VARCHAR(20), 0, 0),
+                new ValueLiteralExpression("hamlet")),
+            DataTypes.BOOLEAN());
+    ResolvedExpression untranslatable =
+        new CallExpression(
+            BuiltInFunctionDefinitions.EQUALS,
+            Arrays.asList(
+                new CallExpression(
+                    BuiltInFunctionDefinitions.UPPER,
+                    Collections.singletonList(
+                        new FieldReferenceExpression("word", DataTypes.VARCHAR(20), 0, 0)),
+                    DataTypes.VARCHAR(20)),
+                new ValueLiteralExpression("HAMLET")),
+            DataTypes.BOOLEAN());
+    DynamicTableSource filtered = source.copy();
+    SupportsFilterPushDown.Result result =
+        ((SupportsFilterPushDown) filtered)
+            .applyFilters(Arrays.asList(translatable, untranslatable));
+    assertThat(result.getAcceptedFilters()).containsExactly(translatable);
+    assertThat(result.getRemainingFilters()).containsExactly(untranslatable);
+
+    // the restriction survives the projection, even of the filtered column
+    ((SupportsProjectionPushDown) filtered).applyProjection(new int[][] {{1}});
+    ((ScanTableSource) filtered.copy()).getScanRuntimeProvider(mock(ScanContext.class));
+    assertThat(rowRestrictions).containsExactly(Optional.of("(`word` = 'hamlet')"));
+
+    rowRestrictions.clear();
+    source.getScanRuntimeProvider(mock(ScanContext.class));
+    assertThat(rowRestrictions).containsExactly(Optional.empty());
+  }
+
+  @Test
+  public void limitPushDownTest() {
+    List<OptionalInt> maxStreamCounts = new ArrayList<>();
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            createContextObject().getCatalogTable().getSchema().toPhysicalRowDataType(),
+            Arrays.asList("word", "word_count"),
+            createReadSessionProvider(new ArrayList<>(), new ArrayList<>(), maxStreamCounts),
+            column -> Collections.emptyList(),
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            Mockito.mock(CatalogTable.class));
+
+    source.getScanRuntimeProvider(mock(ScanContext.class));
+    DynamicTableSource limited = source.copy();
+    ((SupportsLimitPushDown) limited).applyLimit(100);
+    ((ScanTableSource) limited.copy()).getScanRuntimeProvider(mock(ScanContext.class));
+    assertThat(maxStreamCounts).containsExactly(OptionalInt.empty(), OptionalInt.of(1)).inOrder();
+
+    assertThat(BigQueryDynamicTableSource.maxStreamCount(0)).isEqualTo(OptionalInt.of(1));
+    assertThat(BigQueryDynamicTableSource.maxStreamCount(250_000)).isEqualTo(OptionalInt.of(3));
+    assertThat(BigQueryDynamicTableSource.maxStreamCount(Long.MAX_VALUE - 1))
+        .isEqualTo(OptionalInt.of(Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void partitionPushDownTest() {
+    List<Optional<String>> rowRestrictions = new ArrayList<>();
+    List<String> listedColumns = new ArrayList<>();
+    CatalogTable catalogTable = Mockito.mock(CatalogTable.class);
+    Mockito.when(catalogTable.getPartitionKeys()).thenReturn(Collections.singletonList("day"));
+    BigQueryDynamicTableSource source =
+        new BigQueryDynamicTableSource(
+            DataTypes.ROW(
+                DataTypes.FIELD("word", DataTypes.STRING()),
+                DataTypes.FIELD("day", DataTypes.DATE())),
+            Arrays.asList("word", "corpus_date"),
+            createReadSessionProvider(new ArrayList<>(), rowRestrictions, new ArrayList<>()),
+            column -> {
+              listedColumns.add(column);
+              return Arrays.asList("20220301", "20220302", "__NULL__");
+            },
+            mock(BigQueryClientFactory.class),
+            1,
+            FlinkBigQueryConfig.DEFAULT_ARROW_MEMORY_LIMIT.getBytes(),
+            false,
+            catalogTable);
+
+    Map<String, String> nullPartition = new HashMap<>();
+    nullPartition.put("day", null);
+    assertThat(source.listPartitions().get())
+        .containsExactly(
+            Collections.singletonMap("day", "2022-03-01"),
+            Collections.singletonMap("day", "2022-03-02"),
+            nullPartition)
+        .inOrder();
+    assertThat(listedColumns).containsExactly("corpus_date");
+
+    DynamicTableSource pruned = source.copy();
+    ((SupportsPartitionPushDown) pruned)
+        .applyPartitions(
+            Arrays.asList(Collections.singletonMap("day", "2022-03-02"), nullPartition));
+    ((ScanTableSource) pruned.copy()).getScanRuntimeProvider(mock(ScanContext.class));
+    assertThat(rowRestrictions)
+        .containsExactly(
+            Optional.of("(`corpus_date` IN (DATE '2022-03-02') OR `corpus_date` IS NULL)"));
+  }
+
+  @Test
+  public void combineFiltersTest() {
+    assertThat(BigQueryReadSession.combineFilters(Optional.empty(), Optional.of("(`a` = 1)")))
+        .isEqualTo(Optional.of("(`a` = 1)"));
+    assertThat(BigQueryReadSession.combineFilters(Optional.of(""), Optional.of("(`a` = 1)")))
+        .isEqualTo(Optional.of("(`a` = 1)"));
+    assertThat(BigQueryReadSession.combineFilters(Optional.of("b > 2"), Optional.empty()))
+        .isEqualTo(Optional.of("b > 2"));
+    assertThat(
+            BigQueryReadSession.combineFilters(Optional.of("b > 2 OR c"), Optional.of("(`a` = 1)")))
+        .isEqualTo(Optional.of("(b > 2 OR c) AND (`a` = 1)"));
+  }
+
+  private static ReadSessionProvider createReadSessionProvider(List<List<String>> requestedFields) {
+    return createReadSessionProvider(requestedFields, new ArrayList<>(), new ArrayList<>());
+  }
+
+  /**
+   * Returns read sessions of a single stream, recording the fields, the row restriction and the
+   * stream count every session asks for.
+   */
+  private static ReadSessionProvider createReadSessionProvider(
+      List<List<String>> requestedFields,
+      List<Optional<String>> rowRestrictions,
+      List<OptionalInt> maxStreamCounts) {
+    return (selectedFields, rowRestriction, maxStreamCount) -> {
+      requestedFields.add(selectedFields);
+      rowRestrictions.add(rowRestriction);
+      maxStreamCounts.add(maxStreamCount);
+      org.apache.arrow.vector.types.pojo.Schema arrowSchema =
+          new org.apache.arrow.vector.types.pojo.Schema(
+              selectedFields.stream()
+                  .map(name -> new Field(name, FieldType.nullable(new ArrowType.Utf8()), null))
+                  .collect(Collectors.toList()));
+      ByteArrayOutputStream serializedSchema = new ByteArrayOutputStream();
+      try {
+        MessageSerializer.serialize(
+            new WriteChannel(Channels.newChannel(serializedSchema)), arrowSchema);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      return ReadSession.newBuilder()
+          .setDataFormat(DataFormat.ARROW)
+          .setArrowSchema(
+              ArrowSchema.newBuilder()
+                  .setSerializedSchema(ByteString.copyFrom(serializedSchema.toByteArray())))
+          .addStreams(ReadStream.newBuilder().setName("streams/0"))
+          .build();
+    };
+  }
+
   private MockDynamicTableContext createContextObject() {
 
     ObjectIdentifier tableIdentifier = ObjectIdentifier.of("csvcatalog", "default", "csvtable");
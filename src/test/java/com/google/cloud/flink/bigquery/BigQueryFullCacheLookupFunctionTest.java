@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import com.google.cloud.flink.bigquery.lookup.BigQueryFullCacheLookupFunction;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupOptions;
+import com.google.cloud.flink.bigquery.lookup.BigQueryLookupReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.types.logical.RowType;
+import org.junit.Test;
+
+public class BigQueryFullCacheLookupFunctionTest {
+
+  private static final RowType ROW_TYPE =
+      (RowType)
+          DataTypes.ROW(
+                  DataTypes.FIELD("word", DataTypes.STRING()),
+                  DataTypes.FIELD("word_count", DataTypes.BIGINT()))
+              .getLogicalType();
+  private static final RowData HAMLET = GenericRowData.of(StringData.fromString("hamlet"), 7L);
+  private static final RowData LEAR = GenericRowData.of(StringData.fromString("lear"), 7L);
+  private static final RowData OTHELLO = GenericRowData.of(StringData.fromString("othello"), 3L);
+  private static final RowData UNKNOWN = GenericRowData.of(null, 1L);
+
+  @Test
+  public void fullCacheLookupTest() throws Exception {
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    when(reader.read(eq(Optional.empty()), anyInt(), any()))
+        .thenReturn(Arrays.asList(HAMLET, LEAR, OTHELLO, UNKNOWN));
+    BigQueryFullCacheLookupFunction function =
+        new BigQueryFullCacheLookupFunction(
+            reader,
+            ROW_TYPE,
+            new int[] {1},
+            new BigQueryLookupOptions(-1, Duration.ZERO, 2, Duration.ofHours(1)));
+    function.open(functionContext(new HashMap<>()));
+
+    assertThat(lookup(function, 7L)).containsExactly(HAMLET, LEAR);
+    assertThat(lookup(function, 3L)).containsExactly(OTHELLO);
+    assertThat(lookup(function, 5L)).isEmpty();
+    assertThat(lookup(function, (Object) null)).isEmpty();
+    function.close();
+  }
+
+  @Test
+  public void reloadCreatesNewReadSessionTest() {
+    List<Optional<String>> newSessions = new ArrayList<>();
+    ReadSessionProvider provider =
+        new ReadSessionProvider() {
+          @Override
+          public ReadSession createReadSession(
+              List<String> selectedFields,
+              Optional<String> rowRestriction,
+              OptionalInt maxStreamCount) {
+            throw new AssertionError("lookups must not reuse read sessions");
+          }
+
+          @Override
+          public ReadSession createNewReadSession(
+              List<String> selectedFields,
+              Optional<String> rowRestriction,
+              OptionalInt maxStreamCount) {
+            newSessions.add(rowRestriction);
+            return ReadSession.getDefaultInstance();
+          }
+        };
+    BigQueryLookupReader reader =
+        new BigQueryLookupReader(
+            provider,
+            null,
+            ROW_TYPE,
+            null,
+            ROW_TYPE.getFieldNames(),
+            Collections.singletonList("word_count > 0"));
+
+    assertThat(reader.read(Optional.empty(), 2, Runnable::run)).isEmpty();
+    assertThat(reader.read(Optional.empty(), 2, Runnable::run)).isEmpty();
+    assertThat(newSessions)
+        .containsExactly(Optional.of("word_count > 0"), Optional.of("word_count > 0"));
+  }
+
+  @Test
+  public void fullCacheReloadTest() throws Exception {
+    BigQueryLookupReader reader = mock(BigQueryLookupReader.class);
+    when(reader.read(eq(Optional.empty()), anyInt(), any()))
+        .thenReturn(Collections.singletonList(HAMLET))
+        .thenThrow(new FlinkBigQueryException("Error while reading the read session:"))
+        .thenReturn(Collections.singletonList(OTHELLO));
+    Map<String, Counter> counters = new HashMap<>();
+    BigQueryFullCacheLookupFunction function =
+        new BigQueryFullCacheLookupFunction(
+            reader,
+            ROW_TYPE,
+            new int[] {0},
+            new BigQueryLookupOptions(-1, Duration.ZERO, 1, Duration.ofMillis(10)));
+    function.open(functionContext(counters));
+
+    assertThat(lookup(function, StringData.fromString("hamlet"))).containsExactly(HAMLET);
+    // the failed reload keeps the table loaded before, the next one replaces it
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!lookup(function, StringData.fromString("othello")).contains(OTHELLO)
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(lookup(function, StringData.fromString("othello"))).containsExactly(OTHELLO);
+    assertThat(lookup(function, StringData.fromString("hamlet"))).isEmpty();
+    assertThat(counters.get("lookupCacheReloadFailures").getCount()).isEqualTo(1);
+    function.close();
+  }
+
+  private static List<RowData> lookup(BigQueryFullCacheLookupFunction function, Object... keys) {
+    List<RowData> rows = new ArrayList<>();
+    function.setCollector(new ListCollector<>(rows));
+    function.eval(keys);
+    return rows;
+  }
+
+  private static FunctionContext functionContext(Map<String, Counter> counters) {
+    MetricGroup metricGroup = mock(MetricGroup.class);
+    when(metricGroup.counter(anyString()))
+        .thenAnswer(
+            invocation ->
+                counters.computeIfAbsent(invocation.getArgument(0), name -> new SimpleCounter()));
+    RuntimeContext runtimeContext = mock(RuntimeContext.class);
+    when(runtimeContext.getMetricGroup()).thenReturn(metricGroup);
+    return new FunctionContext(runtimeContext);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.Table;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.connector.common.BigQueryClient;
+import com.google.cloud.bigquery.storage.v1.CreateReadSessionRequest;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadSession.TableModifiers;
+import com.google.cloud.flink.bigquery.util.FlinkBigQueryConfig;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.Timestamp;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.junit.Test;
+
+public class BigQueryMetadataCacheTest {
+
+  @Test
+  public void getTableTest() {
+    BigQuery bigQuery = bigQuery();
+    Table table = mock(Table.class);
+    when(bigQuery.getTable(any(TableId.class))).thenReturn(table);
+    long hits = BigQueryMetadataCache.getTableHitCount();
+    long misses = BigQueryMetadataCache.getTableMissCount();
+
+    Duration maxAge = Duration.ofMinutes(15);
+    assertThat(BigQueryMetadataCache.getTable(bigQuery, TableId.of("dataset", "words"), maxAge))
+        .isSameInstanceAs(table);
+    // the same table named with the project of the client
+    assertThat(
+            BigQueryMetadataCache.getTable(
+                bigQuery, TableId.of("project", "dataset", "words"), maxAge))
+        .isSameInstanceAs(table);
+    verify(bigQuery, times(1)).getTable(any(TableId.class));
+    // an entry older than accepted is fetched again
+    BigQueryMetadataCache.getTable(bigQuery, TableId.of("dataset", "words"), Duration.ZERO);
+    verify(bigQuery, times(2)).getTable(any(TableId.class));
+
+    assertThat(BigQueryMetadataCache.getTableHitCount() - hits).isEqualTo(1);
+    assertThat(BigQueryMetadataCache.getTableMissCount() - misses).isEqualTo(2);
+  }
+
+  @Test
+  public void otherCredentialsTest() {
+    BigQuery bigQuery = bigQuery();
+    BigQuery otherBigQuery = bigQuery(GoogleCredentials.create(new AccessToken("token", null)));
+    Table table = mock(Table.class);
+    when(bigQuery.getTable(any(TableId.class))).thenReturn(table);
+    when(otherBigQuery.getTable(any(TableId.class))).thenReturn(null);
+
+    Duration maxAge = Duration.ofMinutes(15);
+    assertThat(BigQueryMetadataCache.getTable(bigQuery, TableId.of("dataset", "private"), maxAge))
+        .isSameInstanceAs(table);
+    // a caller with other credentials does not see the table fetched by the first one
+    assertThat(
+            BigQueryMetadataCache.getTable(otherBigQuery, TableId.of("dataset", "private"), maxAge))
+        .isNull();
+    verify(otherBigQuery, times(1)).getTable(any(TableId.class));
+  }
+
+  @Test
+  public void clientReuseTest() {
+    Credentials credentials = GoogleCredentials.create(new AccessToken("token", null));
+    Credentials sameCredentials = GoogleCredentials.create(new AccessToken("token", null));
+    Credentials otherCredentials = GoogleCredentials.create(new AccessToken("other", null));
+    Duration maxAge = Duration.ofMinutes(15);
+
+    assertThat(BigQueryMetadataCache.getBigQuery(credentials, Optional.of("project")))
+        .isSameInstanceAs(
+            BigQueryMetadataCache.getBigQuery(sameCredentials, Optional.of("project")));
+    assertThat(BigQueryMetadataCache.getBigQuery(credentials, Optional.of("project")))
+        .isNotSameInstanceAs(
+            BigQueryMetadataCache.getBigQuery(otherCredentials, Optional.of("project")));
+    assertThat(client(credentials, maxAge)).isSameInstanceAs(client(sameCredentials, maxAge));
+    assertThat(client(credentials, maxAge)).isNotSameInstanceAs(client(otherCredentials, maxAge));
+    assertThat(client(credentials, maxAge))
+        .isNotSameInstanceAs(client(credentials, Duration.ofMinutes(1)));
+  }
+
+  @Test
+  public void readSessionKeyTest() throws IOException {
+    Credentials credentials = GoogleCredentials.create(new AccessToken("token", null));
+    Credentials otherCredentials = GoogleCredentials.create(new AccessToken("other", null));
+    FlinkBigQueryConfig bqConfig = config(Optional.empty());
+    FlinkBigQueryConfig snapshotConfig = config(Optional.of(1L));
+    FlinkBigQueryConfig otherSnapshotConfig = config(Optional.of(2L));
+
+    assertThat(readSessionKey(credentials, bqConfig))
+        .isEqualTo(readSessionKey(credentials, bqConfig));
+    assertThat(readSessionKey(credentials, bqConfig))
+        .isNotEqualTo(readSessionKey(otherCredentials, bqConfig));
+    assertThat(readSessionKey(credentials, snapshotConfig))
+        .isNotEqualTo(readSessionKey(credentials, bqConfig));
+    assertThat(readSessionKey(credentials, snapshotConfig))
+        .isNotEqualTo(readSessionKey(credentials, otherSnapshotConfig));
+  }
+
+  @Test
+  public void missingTableIsNotCachedTest() {
+    BigQuery bigQuery = bigQuery();
+    Table table = mock(Table.class);
+    when(bigQuery.getTable(any(TableId.class))).thenReturn(null).thenReturn(table);
+
+    assertThat(
+            BigQueryMetadataCache.createClient(
+                    bigQuery,
+                    Optional.empty(),
+                    Optional.empty(),
+                    ImmutableMap.of(),
+                    Duration.ofMinutes(15))
+                .tableExists(TableId.of("dataset", "created")))
+        .isFalse();
+    assertThat(
+            BigQueryMetadataCache.getTable(
+                bigQuery, TableId.of("dataset", "created"), Duration.ofMinutes(15)))
+        .isSameInstanceAs(table);
+  }
+
+  @Test
+  public void readSessionTest() {
+    List<Object> key = Arrays.asList("project.dataset.sessions", Arrays.asList("word"));
+    ReadSession readSession =
+        ReadSession.newBuilder().setName("session").setExpireTime(expireIn(6)).build();
+    long hits = BigQueryMetadataCache.getReadSessionHitCount();
+    long misses = BigQueryMetadataCache.getReadSessionMissCount();
+
+    assertThat(BigQueryMetadataCache.getReadSession(key, Duration.ofMinutes(1))).isNull();
+    BigQueryMetadataCache.putReadSession(key, readSession, System.nanoTime());
+    assertThat(BigQueryMetadataCache.getReadSession(key, Duration.ofMinutes(1)))
+        .isEqualTo(readSession);
+    assertThat(BigQueryMetadataCache.getReadSession(key, Duration.ZERO)).isNull();
+
+    assertThat(BigQueryMetadataCache.getReadSessionHitCount() - hits).isEqualTo(1);
+    assertThat(BigQueryMetadataCache.getReadSessionMissCount() - misses).isEqualTo(2);
+  }
+
+  @Test
+  public void expiringReadSessionTest() {
+    List<Object> key = Arrays.asList("project.dataset.expiring", Arrays.asList("word"));
+    BigQueryMetadataCache.putReadSession(
+        key,
+        ReadSession.newBuilder().setName("expiring").setExpireTime(expireIn(0)).build(),
+        System.nanoTime());
+    assertThat(BigQueryMetadataCache.getReadSession(key, Duration.ofHours(6))).isNull();
+
+    BigQueryMetadataCache.putReadSession(
+        key, ReadSession.newBuilder().setName("unknown").build(), System.nanoTime());
+    assertThat(BigQueryMetadataCache.getReadSession(key, Duration.ofHours(6))).isNull();
+  }
+
+  private static Timestamp expireIn(long hours) {
+    return Timestamp.newBuilder()
+        .setSeconds(Instant.now().plus(Duration.ofHours(hours)).getEpochSecond())
+        .build();
+  }
+
+  private static BigQuery bigQuery() {
+    return bigQuery(NoCredentials.getInstance());
+  }
+
+  private static BigQuery bigQuery(Credentials credentials) {
+    BigQuery bigQuery = mock(BigQuery.class);
+    when(bigQuery.getOptions())
+        .thenReturn(
+            BigQueryOptions.newBuilder()
+                .setProjectId("project")
+                .setCredentials(credentials)
+                .build());
+    return bigQuery;
+  }
+
+  private static BigQueryClient client(Credentials credentials, Duration maxAge) {
+    return BigQueryMetadataCache.getClient(
+        credentials, Optional.empty(), Optional.empty(), ImmutableMap.of(), maxAge);
+  }
+
+  private static List<Object> readSessionKey(Credentials credentials, FlinkBigQueryConfig bqConfig)
+      throws IOException {
+    return BigQueryReadSession.readSessionKey(
+        credentials,
+        bqConfig,
+        bqConfig.toReadSessionCreatorConfig(OptionalInt.empty()),
+        Arrays.asList("word"),
+        Optional.empty(),
+        OptionalInt.empty());
+  }
+
+  /** Returns the config of a table, read as of {@code snapshotSeconds} if present. */
+  private static FlinkBigQueryConfig config(Optional<Long> snapshotSeconds) {
+    Configuration options = new Configuration();
+    options.set(ConfigOptions.key("table").stringType().noDefaultValue(), "project.dataset.words");
+    snapshotSeconds.ifPresent(
+        seconds ->
+            options.set(
+                ConfigOptions.key("bqEncodedCreateReadSessionRequest")
+                    .stringType()
+                    .noDefaultValue(),
+                Base64.getEncoder()
+                    .encodeToString(
+                        CreateReadSessionRequest.newBuilder()
+                            .setReadSession(
+                                ReadSession.newBuilder()
+                                    .setTableModifiers(
+                                        TableModifiers.newBuilder()
+                                            .setSnapshotTime(
+                                                Timestamp.newBuilder().setSeconds(seconds))))
+                            .build()
+                            .toByteArray())));
+    BigQueryDynamicTableFactory factory = new BigQueryDynamicTableFactory();
+    return FlinkBigQueryConfig.from(
+        factory.requiredOptions(),
+        factory.optionalOptions(),
+        options,
+        ImmutableMap.of(),
+        new org.apache.hadoop.conf.Configuration(),
+        1,
+        new Configuration(),
+        "1.13.1",
+        Optional.empty());
+  }
+}
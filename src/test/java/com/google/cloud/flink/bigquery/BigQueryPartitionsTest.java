@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.StandardTableDefinition;
+import com.google.cloud.bigquery.TimePartitioning;
+import com.google.cloud.flink.bigquery.exception.FlinkBigQueryException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class BigQueryPartitionsTest {
+
+  private static final Schema SCHEMA =
+      Schema.of(
+          Field.of("day", StandardSQLTypeName.DATE), Field.of("ts", StandardSQLTypeName.TIMESTAMP));
+
+  @Test
+  public void checkPartitioningTest() {
+    BigQueryPartitions.checkPartitioning(
+        StandardTableDefinition.newBuilder()
+            .setSchema(SCHEMA)
+            .setTimePartitioning(
+                TimePartitioning.newBuilder(TimePartitioning.Type.DAY).setField("day").build())
+            .build(),
+        "day");
+    // a day of timestamps is a range of values, not a value the planner can compare against
+    assertThrows(
+        UnsupportedOperationException.class,
+        () ->
+            BigQueryPartitions.checkPartitioning(
+                StandardTableDefinition.newBuilder()
+                    .setSchema(SCHEMA)
+                    .setTimePartitioning(
+                        TimePartitioning.newBuilder(TimePartitioning.Type.DAY)
+                            .setField("ts")
+                            .build())
+                    .build(),
+                "ts"));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () ->
+            BigQueryPartitions.checkPartitioning(
+                StandardTableDefinition.newBuilder()
+                    .setSchema(SCHEMA)
+                    .setTimePartitioning(TimePartitioning.of(TimePartitioning.Type.DAY))
+                    .build(),
+                "day"));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () ->
+            BigQueryPartitions.checkPartitioning(
+                StandardTableDefinition.newBuilder().setSchema(SCHEMA).build(), "day"));
+  }
+
+  @Test
+  public void toPartitionSpecsTest() {
+    assertThat(BigQueryPartitions.toPartitionSpecs("d", Arrays.asList("20211231")))
+        .containsExactly(Collections.singletonMap("d", "2021-12-31"));
+    assertThrows(
+        FlinkBigQueryException.class,
+        () ->
+            BigQueryPartitions.toPartitionSpecs(
+                "d", Arrays.asList("20211231", "__UNPARTITIONED__")));
+    assertThrows(
+        FlinkBigQueryException.class,
+        () -> BigQueryPartitions.toPartitionSpecs("d", Collections.singletonList("2021123110")));
+  }
+
+  @Test
+  public void partitionRestrictionTest() {
+    assertThat(
+            BigQueryPartitions.partitionRestriction(
+                "day",
+                "d",
+                Arrays.asList(
+                    Collections.singletonMap("d", "2021-12-30"),
+                    Collections.singletonMap("d", "2021-12-31"))))
+        .isEqualTo("(`day` IN (DATE '2021-12-30', DATE '2021-12-31'))");
+    // every partition pruned away
+    assertThat(BigQueryPartitions.partitionRestriction("day", "d", Collections.emptyList()))
+        .isEqualTo("FALSE");
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.cloud.flink.bigquery.source.BigQueryContinuousReadOptions;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumState;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumerator;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySplitDiscoverer;
+import com.google.cloud.flink.bigquery.source.event.BigQueryRemainderAckEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQuerySplitStreamRequestEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamProgressEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamSplitEvent;
+import com.google.cloud.flink.bigquery.source.reader.BigQuerySourceReader;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import com.google.cloud.flink.bigquery.util.RowRestrictionTranslator;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowAllocators;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.connector.source.ReaderInfo;
+import org.apache.flink.api.connector.source.SourceEvent;
+import org.apache.flink.api.connector.source.SourceReaderContext;
+import org.apache.flink.api.connector.source.mocks.MockSplitEnumeratorContext;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class BigQuerySourceEnumeratorTest {
+
+  @Test
+  public void assignsSplitsOnDemandTest() throws Exception {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(2);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    context.registerReader(new ReaderInfo(1, "host1"));
+    List<BigQuerySourceSplit> splits =
+        Arrays.asList(
+            new BigQuerySourceSplit("streams/0"),
+            new BigQuerySourceSplit("streams/1"),
+            new BigQuerySourceSplit("streams/2"));
+    BigQuerySourceEnumerator enumerator = new BigQuerySourceEnumerator(context, splits);
+    enumerator.start();
+
+    // the fast reader keeps asking and gets the remaining streams
+    enumerator.handleSplitRequest(0, "host0");
+    enumerator.handleSplitRequest(1, "host1");
+    enumerator.handleSplitRequest(0, "host0");
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(3);
+    assertThat(context.getSplitsAssignmentSequence().get(2).assignment().get(0))
+        .containsExactly(splits.get(2));
+    assertThat(enumerator.snapshotState(1L).getRemainingSplits()).isEmpty();
+
+    enumerator.handleSplitRequest(1, "host1");
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(3);
+  }
+
+  @Test
+  public void addSplitsBackTest() throws Exception {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(1);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    BigQuerySourceSplit split = new BigQuerySourceSplit("streams/0");
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(context, Collections.emptyList());
+    enumerator.addSplitsBack(Collections.singletonList(split), 0);
+    assertThat(enumerator.snapshotState(1L).getRemainingSplits()).containsExactly(split);
+
+    enumerator.handleSplitRequest(0, "host0");
+    assertThat(context.getSplitsAssignmentSequence().get(0).assignment().get(0))
+        .containsExactly(split);
+  }
+
+  @Test
+  public void stealsRemainderOfStragglerTest() throws Exception {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(2);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    context.registerReader(new ReaderInfo(1, "host1"));
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(
+            context,
+            Arrays.asList(
+                new BigQuerySourceSplit("streams/0"), new BigQuerySourceSplit("streams/1")));
+    enumerator.handleSplitRequest(0, "host0");
+    enumerator.handleSplitRequest(0, "host0");
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/0", 0.1));
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/1", 0.3));
+
+    // the idle reader makes the enumerator ask for a split of the least advanced stream
+    enumerator.handleSplitRequest(1, "host1");
+    assertThat(context.getSentSourceEvent().get(0)).hasSize(1);
+    BigQuerySplitStreamRequestEvent request =
+        (BigQuerySplitStreamRequestEvent) context.getSentSourceEvent().get(0).get(0);
+    assertThat(request.getSplitId()).isEqualTo("streams/0");
+
+    enumerator.handleSourceEvent(
+        0, new BigQueryStreamSplitEvent("streams/0", "streams/0p", "streams/0r"));
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(3);
+    assertThat(context.getSplitsAssignmentSequence().get(2).assignment().get(1))
+        .containsExactly(new BigQuerySourceSplit("streams/0r"));
+    BigQueryRemainderAckEvent ack =
+        (BigQueryRemainderAckEvent) context.getSentSourceEvent().get(0).get(1);
+    assertThat(ack.getRemainderStream()).isEqualTo("streams/0r");
+  }
+
+  @Test
+  public void fallsBackToNextStragglerTest() throws Exception {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(2);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    context.registerReader(new ReaderInfo(1, "host1"));
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(context, Collections.emptyList());
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/0", 0.1));
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/1", 0.2));
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/2", 0.9));
+
+    enumerator.handleSplitRequest(1, "host1");
+    enumerator.handleSourceEvent(0, BigQueryStreamSplitEvent.notSplit("streams/0"));
+    List<BigQuerySplitStreamRequestEvent> requests = new ArrayList<>();
+    context
+        .getSentSourceEvent()
+        .get(0)
+        .forEach(e -> requests.add((BigQuerySplitStreamRequestEvent) e));
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(1).getSplitId()).isEqualTo("streams/1");
+
+    // streams close to the end are not worth splitting
+    enumerator.handleSourceEvent(0, BigQueryStreamSplitEvent.notSplit("streams/1"));
+    assertThat(context.getSentSourceEvent().get(0)).hasSize(2);
+    assertThat(context.getSplitsAssignmentSequence()).isEmpty();
+  }
+
+  @Test
+  public void noMoreSplitsOnlyOnceStealsResolvedTest() throws Exception {
+    List<Integer> finishedReaders = new ArrayList<>();
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context =
+        new MockSplitEnumeratorContext<BigQuerySourceSplit>(2) {
+          @Override
+          public void signalNoMoreSplits(int subtask) {
+            finishedReaders.add(subtask);
+          }
+        };
+    context.registerReader(new ReaderInfo(0, "host0"));
+    context.registerReader(new ReaderInfo(1, "host1"));
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(
+            context, Collections.singletonList(new BigQuerySourceSplit("streams/0")));
+    enumerator.handleSplitRequest(0, "host0");
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/0", 0.1));
+
+    // the second request of the idle reader waits for the steal made for the first one
+    enumerator.handleSplitRequest(1, "host1");
+    enumerator.handleSplitRequest(1, "host1");
+    assertThat(finishedReaders).isEmpty();
+
+    enumerator.handleSourceEvent(
+        0, new BigQueryStreamSplitEvent("streams/0", "streams/0p", "streams/0r"));
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(2);
+    assertThat(context.getSplitsAssignmentSequence().get(1).assignment().get(1))
+        .containsExactly(new BigQuerySourceSplit("streams/0r"));
+    assertThat(finishedReaders).isEmpty();
+
+    // the waiting request stole the primary stream as well, which ends before it is split
+    enumerator.handleSourceEvent(0, new BigQueryStreamProgressEvent("streams/0", 1.0));
+    enumerator.handleSourceEvent(0, BigQueryStreamSplitEvent.notSplit("streams/0"));
+    assertThat(finishedReaders).containsExactly(1);
+
+    // a finished reader gets no split, nor a remainder of a stream of its own
+    enumerator.handleSourceEvent(1, new BigQueryStreamProgressEvent("streams/0r", 0.1));
+    enumerator.handleSplitRequest(1, "host1");
+    assertThat(context.getSentSourceEvent().get(1)).isNull();
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(2);
+    assertThat(enumerator.snapshotState(1L).getRemainingSplits()).isEmpty();
+  }
+
+  @Test
+  public void continuousReadDiscoversSplitsTest() throws Throwable {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(1);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    List<Optional<String>> rowRestrictions = new ArrayList<>();
+    BigQuerySplitDiscoverer splitDiscoverer = createSplitDiscoverer(rowRestrictions);
+    Instant highWaterMark = Instant.parse("2022-03-01T00:00:00Z");
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(
+            context, Collections.emptyList(), splitDiscoverer, highWaterMark);
+    enumerator.start();
+
+    // a continuous read waits for the next read session instead of ending
+    enumerator.handleSplitRequest(0, "host0");
+    assertThat(context.getSplitsAssignmentSequence()).isEmpty();
+
+    context.runPeriodicCallable(0);
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(1);
+    assertThat(context.getSplitsAssignmentSequence().get(0).assignment().get(0))
+        .containsExactly(new BigQuerySourceSplit("streams/1"));
+    assertThat(rowRestrictions.get(0).get())
+        .startsWith(
+            "(`word_count` > 1) AND (`ts` > TIMESTAMP '2022-03-01 00:00:00.000000 UTC'"
+                + " AND `ts` <= TIMESTAMP '");
+    Instant nextHighWaterMark = enumerator.snapshotState(1L).getHighWaterMark().get();
+    assertThat(nextHighWaterMark).isGreaterThan(highWaterMark);
+
+    // the next session starts where the previous one ended
+    context.runPeriodicCallable(0);
+    BigQuerySourceEnumState state = enumerator.snapshotState(2L);
+    assertThat(state.getRemainingSplits()).containsExactly(new BigQuerySourceSplit("streams/2"));
+    assertThat(rowRestrictions.get(1))
+        .isEqualTo(
+            Optional.of(
+                "(`word_count` > 1) AND "
+                    + RowRestrictionTranslator.timestampRange(
+                        "ts", Optional.of(nextHighWaterMark), state.getHighWaterMark().get())));
+  }
+
+  @Test
+  public void continuousReadBackfillsFirstTest() throws Throwable {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(1);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    List<Optional<String>> rowRestrictions = new ArrayList<>();
+    List<BigQuerySourceSplit> backfill =
+        Arrays.asList(new BigQuerySourceSplit("backfill/0"), new BigQuerySourceSplit("backfill/1"));
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(
+            context,
+            backfill,
+            createSplitDiscoverer(rowRestrictions),
+            Instant.parse("2022-03-01T00:00:00Z"));
+    enumerator.start();
+
+    // no session is created while the backfill is not handed out
+    enumerator.handleSplitRequest(0, "host0");
+    context.runPeriodicCallable(0);
+    assertThat(rowRestrictions).isEmpty();
+    assertThat(enumerator.snapshotState(1L).getHighWaterMark())
+        .isEqualTo(Optional.of(Instant.parse("2022-03-01T00:00:00Z")));
+
+    enumerator.handleSplitRequest(0, "host0");
+    context.runPeriodicCallable(0);
+    assertThat(rowRestrictions).hasSize(1);
+    enumerator.handleSplitRequest(0, "host0");
+    assertThat(context.getSplitsAssignmentSequence()).hasSize(3);
+    assertThat(context.getSplitsAssignmentSequence().get(2).assignment().get(0))
+        .containsExactly(new BigQuerySourceSplit("streams/1"));
+  }
+
+  /** Returns a discoverer of sessions of a single stream, recording their row restrictions. */
+  private static BigQuerySplitDiscoverer createSplitDiscoverer(
+      List<Optional<String>> rowRestrictions) {
+    ReadSessionProvider readSessionProvider =
+        (selectedFields, rowRestriction, maxStreamCount) -> {
+          rowRestrictions.add(rowRestriction);
+          return ReadSession.newBuilder()
+              .addStreams(ReadStream.newBuilder().setName("streams/" + rowRestrictions.size()))
+              .build();
+        };
+    return new BigQuerySplitDiscoverer(
+        readSessionProvider,
+        Collections.singletonList("word"),
+        Collections.singletonList("(`word_count` > 1)"),
+        new BigQueryContinuousReadOptions("ts", Duration.ofMinutes(1), Duration.ZERO));
+  }
+
+  @Test
+  public void restoredRemainderIsReadOnceTest() throws Exception {
+    MockSplitEnumeratorContext<BigQuerySourceSplit> context = new MockSplitEnumeratorContext<>(2);
+    context.registerReader(new ReaderInfo(0, "host0"));
+    context.registerReader(new ReaderInfo(1, "host1"));
+    // restored after subtask 0 handed over three remainders without seeing them acknowledged: the
+    // enumerator still holds streams/0r, assigned streams/1r to subtask 1 already and never got
+    // streams/2r
+    BigQuerySourceEnumerator enumerator =
+        new BigQuerySourceEnumerator(
+            context,
+            Collections.singletonList(new BigQuerySourceSplit("streams/0r")),
+            new HashSet<>(Arrays.asList("streams/0r", "streams/1r")),
+            null,
+            null);
+    SourceReaderContext readerContext = mock(SourceReaderContext.class);
+    when(readerContext.metricGroup()).thenReturn(new UnregisteredMetricsGroup());
+    BigQuerySourceReader reader =
+        new BigQuerySourceReader(
+            () -> mock(DeserializationSchema.class),
+            mock(BigQueryClientFactory.class),
+            4,
+            ArrowAllocators.newChildAllocator("reader", 1024),
+            Long.MAX_VALUE,
+            new Configuration(),
+            readerContext);
+    List<BigQuerySourceSplit> restored =
+        Arrays.asList(
+            new BigQuerySourceSplit("streams/0r", 0L, true),
+            new BigQuerySourceSplit("streams/1r", 0L, true),
+            new BigQuerySourceSplit("streams/2r", 0L, true));
+    reader.addSplits(restored);
+    reader.start();
+
+    // the claimed remainders are neither read nor lost before the enumerator answers
+    assertThat(reader.snapshotState(1L)).containsExactlyElementsIn(restored);
+    ArgumentCaptor<SourceEvent> claims = ArgumentCaptor.forClass(SourceEvent.class);
+    verify(readerContext, times(3)).sendSourceEventToCoordinator(claims.capture());
+    for (SourceEvent claim : claims.getAllValues()) {
+      enumerator.handleSourceEvent(0, claim);
+    }
+    for (SourceEvent answer : context.getSentSourceEvent().get(0)) {
+      reader.handleSourceEvents(answer);
+    }
+
+    assertThat(reader.snapshotState(2L))
+        .containsExactly(
+            new BigQuerySourceSplit("streams/0r"), new BigQuerySourceSplit("streams/2r"));
+    // no other reader gets the remainders the restored reader reads
+    assertThat(enumerator.snapshotState(2L).getRemainingSplits()).isEmpty();
+    enumerator.handleSplitRequest(1, "host1");
+    assertThat(context.getSplitsAssignmentSequence()).isEmpty();
+    // one stream besides the claims, and one in place of the remainder subtask 1 reads
+    verify(readerContext, times(2)).sendSplitRequest();
+    reader.close();
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigquery.connector.common.BigQueryClientFactory;
+import com.google.cloud.flink.bigquery.source.event.BigQuerySplitStreamRequestEvent;
+import com.google.cloud.flink.bigquery.source.event.BigQueryStreamSplitEvent;
+import com.google.cloud.flink.bigquery.source.reader.BigQuerySourceReader;
+import com.google.cloud.flink.bigquery.util.arrow.ArrowAllocators;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.flink.api.connector.source.ReaderOutput;
+import org.apache.flink.api.connector.source.SourceEvent;
+import org.apache.flink.api.connector.source.SourceReaderContext;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.core.io.InputStatus;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class BigQuerySourceReaderTest {
+
+  @Test
+  public void requestsOneSplitPerConcurrentStreamTest() throws Exception {
+    SourceReaderContext context = mock(SourceReaderContext.class);
+    BigQuerySourceReader reader = createReader(context, 3);
+    reader.start();
+    verify(context, times(3)).sendSplitRequest();
+    reader.close();
+  }
+
+  @Test
+  public void endsInputAtLimitTest() throws Exception {
+    SourceReaderContext context = mock(SourceReaderContext.class);
+    when(context.metricGroup()).thenReturn(new UnregisteredMetricsGroup());
+    BigQuerySourceReader reader =
+        createReader(context, 3, ArrowAllocators.newChildAllocator("reader", 1024), 0);
+    reader.start();
+    verify(context, never()).sendSplitRequest();
+    assertThat(reader.pollNext(mock(ReaderOutput.class))).isEqualTo(InputStatus.END_OF_INPUT);
+    reader.close();
+  }
+
+  @Test
+  public void refusesToSplitUnknownStreamTest() throws Exception {
+    SourceReaderContext context = mock(SourceReaderContext.class);
+    BigQuerySourceReader reader = createReader(context, 1);
+    reader.handleSourceEvents(new BigQuerySplitStreamRequestEvent("streams/0"));
+
+    ArgumentCaptor<SourceEvent> event = ArgumentCaptor.forClass(SourceEvent.class);
+    verify(context).sendSourceEventToCoordinator(event.capture());
+    BigQueryStreamSplitEvent splitEvent = (BigQueryStreamSplitEvent) event.getValue();
+    assertThat(splitEvent.getSplitId()).isEqualTo("streams/0");
+    assertThat(splitEvent.isSplit()).isFalse();
+    reader.close();
+  }
+
+  @Test
+  public void reportsAndClosesArrowAllocatorTest() throws Exception {
+    SourceReaderContext context = mock(SourceReaderContext.class);
+    MetricGroup metricGroup = mock(MetricGroup.class);
+    MetricGroup arrowGroup = mock(MetricGroup.class);
+    when(context.metricGroup()).thenReturn(metricGroup);
+    when(metricGroup.addGroup("arrow")).thenReturn(arrowGroup);
+    BufferAllocator allocator = ArrowAllocators.newChildAllocator("reader", 1024);
+    BigQuerySourceReader reader = createReader(context, 1, allocator, Long.MAX_VALUE);
+
+    ArgumentCaptor<Gauge<Long>> allocated = ArgumentCaptor.forClass(Gauge.class);
+    ArgumentCaptor<Gauge<Long>> peak = ArgumentCaptor.forClass(Gauge.class);
+    ArgumentCaptor<Gauge<Long>> limit = ArgumentCaptor.forClass(Gauge.class);
+    verify(arrowGroup).gauge(eq("allocatedBytes"), allocated.capture());
+    verify(arrowGroup).gauge(eq("peakAllocatedBytes"), peak.capture());
+    verify(arrowGroup).gauge(eq("limitBytes"), limit.capture());
+    try (ArrowBuf buffer = allocator.buffer(512)) {
+      assertThat(allocated.getValue().getValue()).isEqualTo(512L);
+      assertThrows(OutOfMemoryException.class, () -> allocator.buffer(1024));
+    }
+    assertThat(allocated.getValue().getValue()).isEqualTo(0L);
+    assertThat(peak.getValue().getValue()).isEqualTo(512L);
+    assertThat(limit.getValue().getValue()).isEqualTo(1024L);
+
+    reader.close();
+    assertThrows(IllegalStateException.class, allocator::assertOpen);
+  }
+
+  private static BigQuerySourceReader createReader(
+      SourceReaderContext context, int maxConcurrentStreams) {
+    when(context.metricGroup()).thenReturn(new UnregisteredMetricsGroup());
+    return createReader(
+        context,
+        maxConcurrentStreams,
+        ArrowAllocators.newChildAllocator("reader", 1024),
+        Long.MAX_VALUE);
+  }
+
+  private static BigQuerySourceReader createReader(
+      SourceReaderContext context,
+      int maxConcurrentStreams,
+      BufferAllocator allocator,
+      long limit) {
+    return new BigQuerySourceReader(
+        () -> {
+          throw new UnsupportedOperationException();
+        },
+        mock(BigQueryClientFactory.class),
+        maxConcurrentStreams,
+        allocator,
+        limit,
+        new Configuration(),
+        context);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumState;
+import com.google.cloud.flink.bigquery.source.enumerator.BigQuerySourceEnumStateSerializer;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplit;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplitSerializer;
+import com.google.cloud.flink.bigquery.source.split.BigQuerySourceSplitState;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import org.junit.Test;
+
+public class BigQuerySourceSplitSerializerTest {
+
+  @Test
+  public void splitRoundTripTest() throws IOException {
+    BigQuerySourceSplitSerializer serializer = BigQuerySourceSplitSerializer.INSTANCE;
+    BigQuerySourceSplit split =
+        new BigQuerySourceSplit("projects/p/locations/us/sessions/s/streams/0", 1024L);
+    BigQuerySourceSplit deserialized =
+        serializer.deserialize(serializer.getVersion(), serializer.serialize(split));
+    assertThat(deserialized).isEqualTo(split);
+    assertThat(deserialized.splitId()).isEqualTo(split.getStreamName());
+    assertThat(deserialized.getOffset()).isEqualTo(1024L);
+  }
+
+  @Test
+  public void unacknowledgedRemainderRoundTripTest() throws IOException {
+    BigQuerySourceSplitSerializer serializer = BigQuerySourceSplitSerializer.INSTANCE;
+    BigQuerySourceSplit split = new BigQuerySourceSplit("streams/0r", 0L, true);
+    BigQuerySourceSplit deserialized =
+        serializer.deserialize(serializer.getVersion(), serializer.serialize(split));
+    assertThat(deserialized.isUnacknowledgedRemainder()).isTrue();
+    assertThat(deserialized).isNotEqualTo(new BigQuerySourceSplit("streams/0r"));
+  }
+
+  @Test
+  public void splitStateOffsetTest() {
+    BigQuerySourceSplitState state =
+        new BigQuerySourceSplitState(new BigQuerySourceSplit("streams/0", 10L));
+    state.incrementOffset();
+    state.incrementOffset();
+    assertThat(state.toBigQuerySourceSplit()).isEqualTo(new BigQuerySourceSplit("streams/0", 12L));
+  }
+
+  @Test
+  public void splitUnknownVersionTest() {
+    BigQuerySourceSplitSerializer serializer = BigQuerySourceSplitSerializer.INSTANCE;
+    assertThrows(IOException.class, () -> serializer.deserialize(-1, new byte[0]));
+  }
+
+  @Test
+  public void enumStateRoundTripTest() throws IOException {
+    BigQuerySourceEnumStateSerializer serializer = BigQuerySourceEnumStateSerializer.INSTANCE;
+    BigQuerySourceEnumState state =
+        new BigQuerySourceEnumState(
+            Arrays.asList(
+                new BigQuerySourceSplit("streams/0"), new BigQuerySourceSplit("streams/1", 7L)));
+    BigQuerySourceEnumState deserialized =
+        serializer.deserialize(serializer.getVersion(), serializer.serialize(state));
+    assertThat(deserialized.getRemainingSplits())
+        .containsExactlyElementsIn(state.getRemainingSplits())
+        .inOrder();
+  }
+
+  @Test
+  public void enumStateHighWaterMarkRoundTripTest() throws IOException {
+    BigQuerySourceEnumStateSerializer serializer = BigQuerySourceEnumStateSerializer.INSTANCE;
+    Instant highWaterMark = Instant.parse("2022-03-01T12:30:00.123456Z");
+    BigQuerySourceEnumState state =
+        new BigQuerySourceEnumState(
+            Collections.singletonList(new BigQuerySourceSplit("streams/0")), highWaterMark);
+    BigQuerySourceEnumState deserialized =
+        serializer.deserialize(serializer.getVersion(), serializer.serialize(state));
+    assertThat(deserialized.getHighWaterMark()).isEqualTo(Optional.of(highWaterMark));
+    assertThat(deserialized.getRemainingSplits()).isEqualTo(state.getRemainingSplits());
+  }
+
+  @Test
+  public void enumStateHandedOverRemaindersRoundTripTest() throws IOException {
+    BigQuerySourceEnumStateSerializer serializer = BigQuerySourceEnumStateSerializer.INSTANCE;
+    BigQuerySourceEnumState state =
+        new BigQuerySourceEnumState(
+            Collections.singletonList(new BigQuerySourceSplit("streams/0r")),
+            new HashSet<>(Arrays.asList("streams/0r", "streams/1r")),
+            null);
+    BigQuerySourceEnumState deserialized =
+        serializer.deserialize(serializer.getVersion(), serializer.serialize(state));
+    assertThat(deserialized.getHandedOverRemainders()).containsExactly("streams/0r", "streams/1r");
+    assertThat(deserialized.getHighWaterMark()).isEqualTo(Optional.empty());
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.flink.bigquery;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.flink.bigquery.util.RowRestrictionTranslator;
+import com.google.common.collect.ImmutableMap;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.expressions.CallExpression;
+import org.apache.flink.table.expressions.FieldReferenceExpression;
+import org.apache.flink.table.expressions.ResolvedExpression;
+import org.apache.flink.table.expressions.ValueLiteralExpression;
+import org.apache.flink.table.functions.BuiltInFunctionDefinitions;
+import org.apache.flink.table.functions.FunctionDefinition;
+import org.apache.flink.table.types.DataType;
+import org.junit.Test;
+
+public class RowRestrictionTranslatorTest {
+
+  private static final Map<String, String> COLUMNS =
+      ImmutableMap.<String, String>builder()
+          .put("name", "name")
+          .put("cnt", "word_count")
+          .put("price", "price")
+          .put("score", "score")
+          .put("day", "day")
+          .put("at", "at")
+          .put("ts", "ts")
+          .put("active", "active")
+          .put("user_id", "payload.user.id")
+          .build();
+
+  private static final FieldReferenceExpression NAME = field("name", DataTypes.STRING());
+  private static final FieldReferenceExpression COUNT = field("cnt", DataTypes.BIGINT());
+  private static final FieldReferenceExpression ACTIVE = field("active", DataTypes.BOOLEAN());
+
+  @Test
+  public void comparisonTest() {
+    assertThat(translate(call(BuiltInFunctionDefinitions.EQUALS, NAME, literal("it's"))))
+        .isEqualTo(Optional.of("(`name` = 'it\\'s')"));
+    assertThat(translate(call(BuiltInFunctionDefinitions.GREATER_THAN, COUNT, literal(100L))))
+        .isEqualTo(Optional.of("(`word_count` > 100)"));
+    // a literal on the left flips the comparison
+    assertThat(translate(call(BuiltInFunctionDefinitions.LESS_THAN, literal(100L), COUNT)))
+        .isEqualTo(Optional.of("(`word_count` > 100)"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.NOT_EQUALS,
+                    field("price", DataTypes.DECIMAL(10, 2)),
+                    literal(new BigDecimal("9.99"), DataTypes.DECIMAL(3, 2).notNull()))))
+        .isEqualTo(Optional.of("(`price` != NUMERIC '9.99')"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    field("price", DataTypes.DECIMAL(10, 2)),
+                    literal(new BigDecimal("1.0000000001"), DataTypes.DECIMAL(11, 10).notNull()))))
+        .isEqualTo(Optional.of("(`price` = BIGNUMERIC '1.0000000001')"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.LESS_THAN_OR_EQUAL,
+                    field("score", DataTypes.DOUBLE()),
+                    literal(0.5))))
+        .isEqualTo(Optional.of("(`score` <= 0.5)"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.GREATER_THAN_OR_EQUAL,
+                    field("day", DataTypes.DATE()),
+                    literal(LocalDate.of(2022, 3, 1)))))
+        .isEqualTo(Optional.of("(`day` >= DATE '2022-03-01')"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    field("at", DataTypes.TIME()),
+                    literal(LocalTime.of(12, 30)))))
+        .isEqualTo(Optional.of("(`at` = TIME '12:30:00.000000')"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.LESS_THAN,
+                    field("ts", DataTypes.TIMESTAMP_WITH_LOCAL_TIME_ZONE(6)),
+                    literal(
+                        Instant.parse("2022-03-01T10:15:30.123Z"),
+                        DataTypes.TIMESTAMP_WITH_LOCAL_TIME_ZONE(3).notNull()))))
+        .isEqualTo(Optional.of("(`ts` < TIMESTAMP '2022-03-01 10:15:30.123000 UTC')"));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    field("user_id", DataTypes.BIGINT()),
+                    literal(7L))))
+        .isEqualTo(Optional.of("(`payload`.`user`.`id` = 7)"));
+  }
+
+  @Test
+  public void predicateTest() {
+    assertThat(translate(call(BuiltInFunctionDefinitions.IS_NULL, NAME)))
+        .isEqualTo(Optional.of("(`name` IS NULL)"));
+    assertThat(translate(call(BuiltInFunctionDefinitions.IS_NOT_FALSE, ACTIVE)))
+        .isEqualTo(Optional.of("(`active` IS NOT FALSE)"));
+    assertThat(translate(ACTIVE)).isEqualTo(Optional.of("`active`"));
+    assertThat(translate(call(BuiltInFunctionDefinitions.IN, COUNT, literal(1L), literal(2L))))
+        .isEqualTo(Optional.of("(`word_count` IN (1, 2))"));
+    assertThat(
+            translate(
+                call(BuiltInFunctionDefinitions.NOT_BETWEEN, COUNT, literal(1L), literal(9L))))
+        .isEqualTo(Optional.of("(`word_count` NOT BETWEEN 1 AND 9)"));
+    assertThat(translate(call(BuiltInFunctionDefinitions.LIKE, NAME, literal("ham%"))))
+        .isEqualTo(Optional.of("(`name` LIKE 'ham%')"));
+  }
+
+  @Test
+  public void junctionTest() {
+    ResolvedExpression isNull = call(BuiltInFunctionDefinitions.IS_NULL, NAME);
+    ResolvedExpression positive = call(BuiltInFunctionDefinitions.GREATER_THAN, COUNT, literal(0L));
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.OR,
+                    isNull,
+                    call(BuiltInFunctionDefinitions.NOT, positive))))
+        .isEqualTo(Optional.of("((`name` IS NULL) OR (NOT (`word_count` > 0)))"));
+    assertThat(translate(call(BuiltInFunctionDefinitions.AND, isNull, positive)))
+        .isEqualTo(Optional.of("((`name` IS NULL) AND (`word_count` > 0))"));
+    // an untranslatable operand leaves the whole junction to Flink
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.OR,
+                    isNull,
+                    call(BuiltInFunctionDefinitions.LIKE, NAME, literal("%let")))))
+        .isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void equalToTest() {
+    assertThat(RowRestrictionTranslator.equalTo("word", "it's", DataTypes.STRING()))
+        .isEqualTo(Optional.of("(`word` = 'it\\'s')"));
+    assertThat(
+            RowRestrictionTranslator.equalTo(
+                "day", LocalDate.of(2022, 3, 1), DataTypes.DATE().notNull()))
+        .isEqualTo(Optional.of("(`day` = DATE '2022-03-01')"));
+    assertThat(
+            RowRestrictionTranslator.equalTo(
+                "ts", LocalDateTime.of(2022, 3, 1, 0, 0), DataTypes.TIMESTAMP(6)))
+        .isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void inTest() {
+    assertThat(
+            RowRestrictionTranslator.in(
+                "word_count", Arrays.asList(7L, 3L), DataTypes.BIGINT().notNull()))
+        .isEqualTo(Optional.of("(`word_count` IN (7, 3))"));
+    assertThat(
+            RowRestrictionTranslator.in(
+                "ts",
+                Collections.singletonList(LocalDateTime.of(2022, 3, 1, 0, 0)),
+                DataTypes.TIMESTAMP(6)))
+        .isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void timestampRangeTest() {
+    Instant atMost = Instant.parse("2022-03-01T12:00:00.000001Z");
+    assertThat(RowRestrictionTranslator.timestampRange("ts", Optional.empty(), atMost))
+        .isEqualTo("(`ts` <= TIMESTAMP '2022-03-01 12:00:00.000001 UTC')");
+    assertThat(
+            RowRestrictionTranslator.timestampRange(
+                "meta.ts", Optional.of(Instant.parse("2022-03-01T11:00:00Z")), atMost))
+        .isEqualTo(
+            "(`meta`.`ts` > TIMESTAMP '2022-03-01 11:00:00.000000 UTC'"
+                + " AND `meta`.`ts` <= TIMESTAMP '2022-03-01 12:00:00.000001 UTC')");
+  }
+
+  @Test
+  public void untranslatableTest() {
+    // BigQuery and Flink escape the wildcards of other patterns differently
+    assertThat(translate(call(BuiltInFunctionDefinitions.LIKE, NAME, literal("h_m%"))))
+        .isEqualTo(Optional.empty());
+    assertThat(translate(call(BuiltInFunctionDefinitions.LIKE, NAME, literal("ham"))))
+        .isEqualTo(Optional.empty());
+    assertThat(
+            translate(call(BuiltInFunctionDefinitions.LIKE, NAME, literal("ham%"), literal("!"))))
+        .isEqualTo(Optional.empty());
+    // the column could be a DATETIME or a TIMESTAMP
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    field("ts", DataTypes.TIMESTAMP(6)),
+                    literal(LocalDateTime.of(2022, 3, 1, 0, 0)))))
+        .isEqualTo(Optional.empty());
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    NAME,
+                    literal(null, DataTypes.STRING().nullable()))))
+        .isEqualTo(Optional.empty());
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.GREATER_THAN,
+                    field("score", DataTypes.DOUBLE()),
+                    literal(Double.NaN))))
+        .isEqualTo(Optional.empty());
+    assertThat(translate(call(BuiltInFunctionDefinitions.EQUALS, NAME, NAME)))
+        .isEqualTo(Optional.empty());
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    field("unknown", DataTypes.STRING()),
+                    literal("x"))))
+        .isEqualTo(Optional.empty());
+    assertThat(
+            translate(
+                call(
+                    BuiltInFunctionDefinitions.EQUALS,
+                    call(BuiltInFunctionDefinitions.UPPER, NAME),
+                    literal("X"))))
+        .isEqualTo(Optional.empty());
+    assertThat(translate(NAME)).isEqualTo(Optional.empty());
+  }
+
+  private static Optional<String> translate(ResolvedExpression filter) {
+    return RowRestrictionTranslator.translate(filter, COLUMNS);
+  }
+
+  private static FieldReferenceExpression field(String name, DataType type) {
+    return new FieldReferenceExpression(name, type, 0, 0);
+  }
+
+  private static ValueLiteralExpression literal(Object value) {
+    return new ValueLiteralExpression(value);
+  }
+
+  private static ValueLiteralExpression literal(Object value, DataType type) {
+    return new ValueLiteralExpression(value, type);
+  }
+
+  private static CallExpression call(FunctionDefinition function, ResolvedExpression... args) {
+    return new CallExpression(function, Arrays.asList(args), DataTypes.BOOLEAN());
+  }
+}